@@ -0,0 +1,432 @@
+package grape.container.skiplist;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * 无锁并发跳表
+ *
+ * 与 {@link SkipListMap} 接口相同，但可以被多个线程同时读写：
+ * <ol>
+ * <li> 插入、删除通过带删除标记的 next 指针(AtomicMarkableReference)实现无锁</li>
+ * <li> get()/containsKey() 只读不写，遇到被标记删除的节点直接跳过，是 wait-free 的</li>
+ * <li> 删除分为两步：先把 value CAS 为 null(逻辑删除，即线性化点)，再从上到下标记各层的 next 指针，
+ * 被标记的节点由之后的查找顺手摘除(物理删除)</li>
+ * <li> 层数使用线程私有的随机数生成</li>
+ * </ol>
+ *
+ * 注意:<br/>
+ * <ol>
+ * <li> 不允许 null 键和 null 值</li>
+ * <li> size() 需要遍历，时间复杂度为 O(n)，并发修改时结果只是一个估计值</li>
+ * <li> 迭代器是弱一致的，不会抛出 {@link ConcurrentModificationException}</li>
+ * </ol>
+ *
+ * 参考资料：<br/>
+ * [1] Herlihy, Shavit. The Art of Multiprocessor Programming. Chapter 14.4 LockFreeSkipList<br/>
+ * [2] Fraser. Practical lock-freedom. 2004<br/>
+ */
+@SuppressWarnings({ "rawtypes", "unchecked"} )
+public class ConcurrentSkipListMap <K extends Comparable<K>, V> extends AbstractMap<K,V> implements ConcurrentMap<K, V> {
+
+	private static final int MAX_LEVEL = SkipListMap.MAX_LEVEL;
+
+	private static class Node <K,V> implements Map.Entry<K, V> {
+		final K key;
+		volatile V value; // 为 null 表示已被逻辑删除
+		final AtomicMarkableReference<Node<K,V> >[] next;
+
+		static final AtomicReferenceFieldUpdater<Node, Object> valueUpdater =
+				AtomicReferenceFieldUpdater.newUpdater(Node.class, Object.class, "value");
+
+		Node(K key, V value, int level) {
+			this.key = key;
+			this.value = value;
+			next = new AtomicMarkableReference[level + 1];
+		}
+
+		int topLevel() {
+			return next.length - 1;
+		}
+
+		boolean casValue(V expect, V update) {
+			return valueUpdater.compareAndSet(this, expect, update);
+		}
+
+		@Override
+		public K getKey() {
+			return key;
+		}
+
+		@Override
+		public V getValue() {
+			return value;
+		}
+
+		@Override
+		public V setValue(V value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o)
+				return true;
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry n = (Map.Entry) o;
+			Object v = value;
+			return key.equals(n.getKey()) && v != null && v.equals(n.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			Object v = value;
+			return key.hashCode() ^ (v == null ? 0 : v.hashCode());
+		}
+	}
+
+	// 头节点，key 视为负无穷；链表以 null 结尾，视为正无穷
+	private final Node<K,V> head;
+
+	public ConcurrentSkipListMap() {
+		head = new Node<K,V>(null, null, MAX_LEVEL);
+		for (int i = 0; i <= MAX_LEVEL; ++i)
+			head.next[i] = new AtomicMarkableReference<Node<K,V> >(null, false);
+	}
+
+	/**
+	 * 查找 key 所在的位置，同时摘除沿途被标记删除的节点
+	 *
+	 * @param preds 可以为null，各层的前向节点
+	 * @param succs 可以为null，各层的后继节点
+	 * @return 第 0 层上 key 所在的节点，未找到则返回 null
+	 */
+	private Node<K,V> find(Comparable<K> key, Node<K,V>[] preds, Node<K,V>[] succs) {
+		boolean[] marked = new boolean[1];
+		retry:
+		while (true) {
+			Node<K,V> pred = head, curr = null;
+			for (int lv = MAX_LEVEL; lv >= 0; --lv) {
+				curr = pred.next[lv].getReference();
+				while (curr != null) {
+					Node<K,V> succ = curr.next[lv].get(marked);
+					while (marked[0]) {
+						// 摘除被标记的节点
+						if (!pred.next[lv].compareAndSet(curr, succ, false, false))
+							continue retry;
+						curr = succ;
+						if (curr == null)
+							break;
+						succ = curr.next[lv].get(marked);
+					}
+					if (curr == null || key.compareTo(curr.key) <= 0)
+						break;
+					pred = curr;
+					curr = succ;
+				}
+				if (preds != null) {
+					preds[lv] = pred;
+					succs[lv] = curr;
+				}
+			}
+			return (curr != null && key.compareTo(curr.key) == 0 ? curr : null);
+		}
+	}
+
+	/**
+	 * 只读查找，跳过被标记删除的节点而不摘除
+	 */
+	private Node<K,V> findNode(Comparable<K> key) {
+		boolean[] marked = new boolean[1];
+		Node<K,V> pred = head, curr = null;
+		for (int lv = MAX_LEVEL; lv >= 0; --lv) {
+			curr = pred.next[lv].getReference();
+			while (curr != null) {
+				Node<K,V> succ = curr.next[lv].get(marked);
+				while (marked[0] && succ != null) {
+					curr = succ;
+					succ = curr.next[lv].get(marked);
+				}
+				if (marked[0]) {
+					curr = null; // 最后一个节点也已被删除
+					break;
+				}
+				int cmp = key.compareTo(curr.key);
+				if (cmp == 0 && lv == 0)
+					return curr;
+				if (cmp <= 0)
+					break;
+				pred = curr;
+				curr = succ;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 从上到下标记节点各层的 next 指针，幂等
+	 */
+	private void markAll(Node<K,V> n) {
+		boolean[] marked = new boolean[1];
+		for (int lv = n.topLevel(); lv >= 0; --lv) {
+			AtomicMarkableReference<Node<K,V> > ref = n.next[lv];
+			Node<K,V> succ = ref.get(marked);
+			while (!marked[0]) {
+				ref.attemptMark(succ, true);
+				succ = ref.get(marked);
+			}
+		}
+	}
+
+	@Override
+	public V get(Object key) {
+		if (key == null)
+			throw new NullPointerException();
+		Node<K,V> n = findNode((Comparable<K>) key);
+		return (n == null ? null : n.value);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public V put(K key, V value) {
+		return doPut(key, value, false);
+	}
+
+	@Override
+	public V putIfAbsent(K key, V value) {
+		return doPut(key, value, true);
+	}
+
+	private V doPut(K key, V value, boolean onlyIfAbsent) {
+		if (key == null || value == null)
+			throw new NullPointerException();
+
+		Node<K,V>[] preds = new Node[MAX_LEVEL + 1], succs = new Node[MAX_LEVEL + 1];
+		while (true) {
+			Node<K,V> n = find(key, preds, succs);
+			if (n != null) {
+				V v = n.value;
+				if (v == null) {
+					// 正在被删除，帮忙标记，下一次查找时会被摘除
+					markAll(n);
+					continue;
+				}
+				if (onlyIfAbsent || n.casValue(v, value))
+					return v;
+				continue;
+			}
+
+			// insert node
+			int top = SkipListMap.randomLevel();
+			n = new Node<K,V>(key, value, top);
+			for (int lv = 0; lv <= top; ++lv)
+				n.next[lv] = new AtomicMarkableReference<Node<K,V> >(succs[lv], false);
+			if (!preds[0].next[0].compareAndSet(succs[0], n, false, false))
+				continue;
+
+			// 第 0 层已经链入，之后逐层链入上层
+			linkUpperLevels(n, preds, succs);
+			return null;
+		}
+	}
+
+	private void linkUpperLevels(Node<K,V> n, Node<K,V>[] preds, Node<K,V>[] succs) {
+		boolean[] marked = new boolean[1];
+		for (int lv = 1; lv <= n.topLevel(); ++lv) {
+			while (true) {
+				Node<K,V> pred = preds[lv], succ = succs[lv];
+				Node<K,V> cur = n.next[lv].get(marked);
+				if (marked[0])
+					return; // 已被删除，不再链入
+				if (cur != succ && !n.next[lv].compareAndSet(cur, succ, false, false))
+					continue;
+				if (pred.next[lv].compareAndSet(succ, n, false, false))
+					break;
+
+				// 重新查找前向节点
+				if (find(n.key, preds, succs) != n)
+					return; // 已被删除
+			}
+		}
+	}
+
+	@Override
+	public V remove(Object key) {
+		return doRemove(key, null);
+	}
+
+	@Override
+	public boolean remove(Object key, Object value) {
+		if (value == null)
+			return false;
+		return doRemove(key, value) != null;
+	}
+
+	/**
+	 * @param expect 为 null 则不检查原有的值
+	 */
+	private V doRemove(Object key, Object expect) {
+		if (key == null)
+			throw new NullPointerException();
+
+		Comparable<K> k = (Comparable<K>) key;
+		while (true) {
+			Node<K,V> n = find(k, null, null);
+			if (n == null)
+				return null;
+			V v = n.value;
+			if (v == null)
+				return null; // 已被其他线程删除
+			if (expect != null && !expect.equals(v))
+				return null;
+			if (n.casValue(v, null)) {
+				// 逻辑删除成功，标记后摘除
+				markAll(n);
+				find(k, null, null);
+				return v;
+			}
+		}
+	}
+
+	@Override
+	public boolean replace(K key, V oldValue, V newValue) {
+		if (key == null || oldValue == null || newValue == null)
+			throw new NullPointerException();
+
+		while (true) {
+			Node<K,V> n = findNode(key);
+			if (n == null)
+				return false;
+			V v = n.value;
+			if (v == null || !oldValue.equals(v))
+				return false;
+			if (n.casValue(v, newValue))
+				return true;
+		}
+	}
+
+	@Override
+	public V replace(K key, V value) {
+		if (key == null || value == null)
+			throw new NullPointerException();
+
+		while (true) {
+			Node<K,V> n = findNode(key);
+			if (n == null)
+				return null;
+			V v = n.value;
+			if (v == null)
+				return null;
+			if (n.casValue(v, value))
+				return v;
+		}
+	}
+
+	@Override
+	public void clear() {
+		for (Node<K,V> n = firstNode(); n != null; n = nextNode(n))
+			doRemove(n.key, null);
+	}
+
+	/**
+	 * 遍历计数，O(n)
+	 */
+	@Override
+	public int size() {
+		int ret = 0;
+		for (Node<K,V> n = firstNode(); n != null; n = nextNode(n))
+			++ret;
+		return ret;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return firstNode() == null;
+	}
+
+	// 第 0 层上第一个未删除的节点
+	private Node<K,V> firstNode() {
+		return skipDeleted(head.next[0].getReference());
+	}
+
+	// 第 0 层上下一个未删除的节点
+	private Node<K,V> nextNode(Node<K,V> n) {
+		return skipDeleted(n.next[0].getReference());
+	}
+
+	private Node<K,V> skipDeleted(Node<K,V> n) {
+		while (n != null && (n.value == null || n.next[0].isMarked()))
+			n = n.next[0].getReference();
+		return n;
+	}
+
+	@Override
+	public Set<Map.Entry<K,V> > entrySet() {
+		return new AbstractSet<Map.Entry<K, V> >() {
+
+			@Override
+			public Iterator<Map.Entry<K, V> > iterator() {
+				return new Iterator<Map.Entry<K,V> >() {
+
+					Node<K,V> current, next = firstNode();
+
+					@Override
+					public boolean hasNext() {
+						return next != null;
+					}
+
+					@Override
+					public Map.Entry<K, V> next() {
+						if (next == null)
+							throw new NoSuchElementException();
+						current = next;
+						next = nextNode(next);
+						return current;
+					}
+
+					@Override
+					public void remove() {
+						if (current == null)
+							throw new IllegalStateException();
+						ConcurrentSkipListMap.this.remove(current.key);
+						current = null;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return ConcurrentSkipListMap.this.size();
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				if (!(o instanceof Map.Entry))
+					return false;
+				Map.Entry e = (Map.Entry) o;
+				Object v = get(e.getKey());
+				return v != null && v.equals(e.getValue());
+			}
+
+			@Override
+			public boolean remove(Object o) {
+				if (!(o instanceof Map.Entry))
+					return false;
+				Map.Entry e = (Map.Entry) o;
+				return ConcurrentSkipListMap.this.remove(e.getKey(), e.getValue());
+			}
+
+			@Override
+			public void clear() {
+				ConcurrentSkipListMap.this.clear();
+			}
+		};
+	}
+}
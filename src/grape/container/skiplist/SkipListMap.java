@@ -1,6 +1,7 @@
 package grape.container.skiplist;
 
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 
 
 /**
@@ -14,14 +15,11 @@ import java.util.*;
 public class SkipListMap <K extends Comparable<K>, V> extends AbstractMap<K,V> implements Map <K, V> {
 
 	// 最大允许的层数(大于0)
-	private static final int MAX_LEVEL = 16;
+	static final int MAX_LEVEL = 16;
 
 	// 升级层数的概率阀值
 //	private static final double P = 0.5;
 
-	// 随机数发生器
-	private static final Random r = new Random();
-
 	private static class Node <K,V> implements Map.Entry<K, V> {
 		private K key;
 		private V value;
@@ -81,8 +79,10 @@ public class SkipListMap <K extends Comparable<K>, V> extends AbstractMap<K,V> i
 	    return Math.min(lvl, MAX_LEVEL);
 	     */
 
+		// 使用线程私有的随机数发生器，避免多线程竞争同一个 Random
+		Random r = ThreadLocalRandom.current();
 		int k = 0;
-		while (k < MAX_LEVEL && r.nextBoolean()) // r = new Random();
+		while (k < MAX_LEVEL && r.nextBoolean())
 			++k;
 		return k;
 	}
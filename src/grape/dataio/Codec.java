@@ -0,0 +1,13 @@
+package grape.dataio;
+
+/**
+ * 对象的编码和解码
+ *
+ * @param <T> 对象类型
+ */
+public interface Codec <T> {
+
+	void write(Output out, T value);
+
+	T read(Input in);
+}
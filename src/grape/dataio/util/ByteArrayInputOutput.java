@@ -1,6 +1,7 @@
 package grape.dataio.util;
 
 import grape.dataio.*;
+import grape.util.objpool.ByteBufferPool;
 
 import java.util.Arrays;
 
@@ -11,17 +12,33 @@ public class ByteArrayInputOutput implements RandomAccessInput, RandomAccessOutp
 	private byte[] _buf;
 	private int _size = 0, _index = 0;
 	private boolean _littleEndian = true;
+	private final ByteBufferPool _pool; // 为 null 表示不使用缓冲区池
 
 	public ByteArrayInputOutput(int initialCapacity) {
-		if (initialCapacity <= 0)
-			throw new IllegalArgumentException();
-		_buf = new byte[initialCapacity];
+		this(initialCapacity, null);
 	}
 
 	public ByteArrayInputOutput() {
 		this(DEFAULT_INIT_CAP);
 	}
 
+	public ByteArrayInputOutput(ByteBufferPool pool) {
+		this(DEFAULT_INIT_CAP, pool);
+	}
+
+	/**
+	 * 使用缓冲区池时，缓冲区从池中申请，扩容时归还旧的缓冲区；
+	 * 用完之后应当调用 {@link #release()} 归还缓冲区
+	 *
+	 * @param pool 缓冲区池，为 null 表示直接分配
+	 */
+	public ByteArrayInputOutput(int initialCapacity, ByteBufferPool pool) {
+		if (initialCapacity <= 0)
+			throw new IllegalArgumentException();
+		_pool = pool;
+		_buf = (pool != null ? pool.allocate(initialCapacity) : new byte[initialCapacity]);
+	}
+
 	public boolean isLittleEndian() {
 		return _littleEndian;
 	}
@@ -107,15 +124,25 @@ public class ByteArrayInputOutput implements RandomAccessInput, RandomAccessOutp
 	}
 
 	private void checkWritePosition(int i) {
+		if (_index + i > _size)
+			_size = _index + i; // 写入的数据之后可以读回
 		if (_index + i < _buf.length)
 			return;
 
 		int newCap = _buf.length * 3 / 2;
 		if (newCap < _index + i)
 			newCap = _index + i;
-		byte[] newBuf = new byte[newCap];
-		System.arraycopy(_buf, 0, newBuf, 0, _size);
-		_buf = newBuf;
+		if (_pool == null) {
+			byte[] newBuf = new byte[newCap];
+			System.arraycopy(_buf, 0, newBuf, 0, _buf.length);
+			_buf = newBuf;
+		} else {
+			// 池中的缓冲区按 2 的幂分级，扩容时实际上会翻倍
+			byte[] newBuf = _pool.allocate(newCap);
+			System.arraycopy(_buf, 0, newBuf, 0, _buf.length);
+			_pool.release(_buf);
+			_buf = newBuf;
+		}
 	}
 
 	@Override
@@ -221,4 +248,17 @@ public class ByteArrayInputOutput implements RandomAccessInput, RandomAccessOutp
 	public byte[] toArray() {
 		return Arrays.copyOf(_buf, _size);
 	}
+
+	/**
+	 * 把缓冲区归还给构造时指定的缓冲区池，之后不能再使用本对象；
+	 * 没有使用缓冲区池时什么也不做
+	 */
+	public void release() {
+		if (_pool == null || _buf == null)
+			return;
+		_pool.release(_buf);
+		_buf = null;
+		_size = 0;
+		_index = 0;
+	}
 }
@@ -2,6 +2,7 @@ package grape.dataio.util;
 
 import grape.dataio.DataConsts;
 import grape.dataio.RandomAccessOutput;
+import grape.util.objpool.ByteBufferPool;
 
 public class FixedByteArrayOutput implements RandomAccessOutput {
 
@@ -9,6 +10,7 @@ public class FixedByteArrayOutput implements RandomAccessOutput {
 	private final int _endIndex;
 	private int _writeIndex;
 	private boolean _littleEndian = true;
+	private ByteBufferPool _pool; // 缓冲区从池中申请时不为 null
 
 	public FixedByteArrayOutput(byte[] buf, int startOffset, int len) {
 		if (startOffset < 0 || len < 0 || startOffset + len > buf.length)
@@ -19,6 +21,14 @@ public class FixedByteArrayOutput implements RandomAccessOutput {
 		_endIndex = startOffset + len;
 	}
 
+	/**
+	 * 从缓冲区池中申请长度为 len 的缓冲区，用完之后应当调用 {@link #release()} 归还
+	 */
+	public FixedByteArrayOutput(ByteBufferPool pool, int len) {
+		this(pool.allocate(len), 0, len);
+		_pool = pool;
+	}
+
 	public FixedByteArrayOutput(byte[] buf, int startOffset) {
 		this(buf, startOffset, buf.length - startOffset);
 	}
@@ -122,4 +132,20 @@ public class FixedByteArrayOutput implements RandomAccessOutput {
 		return _writeIndex;
 	}
 
+	public byte[] buffer() {
+		return _buf;
+	}
+
+	/**
+	 * 把缓冲区归还给构造时指定的缓冲区池，之后不能再使用本对象和 {@link #buffer()}；
+	 * 缓冲区不是从池中申请的时候什么也不做
+	 */
+	public void release() {
+		if (_pool == null)
+			return;
+		_pool.release(_buf);
+		_pool = null;
+		_writeIndex = _endIndex; // 之后的写入都会越界
+	}
+
 }
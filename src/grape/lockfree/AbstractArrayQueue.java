@@ -0,0 +1,79 @@
+package grape.lockfree;
+
+/**
+ * 基于 2 的幂长度环状数组的有界队列骨架<br/>
+ * <br/>
+ * 使用 long 型的单调递增序号，不会像 int 计数器那样在 2^31 次操作后溢出；
+ * 下标通过掩码运算得到，避免了取模运算
+ *
+ * @param <T> 元素类型
+ */
+abstract class AbstractArrayQueue <T> implements BoundedQueue<T> {
+
+	// 最大容量，必须是 2 的幂
+	static final int MAXIMUM_CAPACITY = 1 << 30;
+
+	// 环状缓存
+	final Object[] buffer;
+	final int mask;
+
+	// 消费者序号和生产者序号
+	final PaddedAtomicLong head = new PaddedAtomicLong(0);
+	final PaddedAtomicLong tail = new PaddedAtomicLong(0);
+
+	/**
+	 * @param capacity 容量，会被向上取整为 2 的幂
+	 */
+	AbstractArrayQueue(int capacity) {
+		if (capacity < 1 || capacity > MAXIMUM_CAPACITY)
+			throw new IllegalArgumentException("Illegal capacity " + capacity);
+		int cap = roundUpToPowerOfTwo(capacity < 2 ? 2 : capacity);
+		buffer = new Object[cap];
+		mask = cap - 1;
+	}
+
+	@Override
+	public int size() {
+		// 先读 head 再读 tail，并发时结果只可能偏大，再截断到容量以内
+		long h = head.get();
+		long t = tail.get();
+		long ret = t - h;
+		if (ret < 0)
+			return 0;
+		if (ret > buffer.length)
+			return buffer.length;
+		return (int) ret;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public void clear() {
+		while (size() > 0)
+			pop();
+	}
+
+	@Override
+	public int capacity() {
+		return buffer.length;
+	}
+
+	/**
+	 * Returns the smallest power of two >= its argument
+	 */
+	static int roundUpToPowerOfTwo(int i) {
+		i--; // If input is a power of two, shift its high-order bit right
+
+		// "Smear" the high-order bit all the way to the right
+		i |= i >>>  1;
+		i |= i >>>  2;
+		i |= i >>>  4;
+		i |= i >>>  8;
+		i |= i >>> 16;
+
+		return i + 1;
+	}
+}
@@ -0,0 +1,485 @@
+package grape.lockfree;
+
+import java.util.AbstractQueue;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 以无锁环状队列为底层存储的 {@link BlockingQueue}，可以用于 ThreadPoolExecutor 等 JDK 接口<br/>
+ * <br/>
+ * 入队和出队本身都是无锁的；只有队列满/空需要阻塞时，才会使用锁和条件变量。
+ * 生产者成功入队后，只有在确实有消费者挂起时才去加锁唤醒，反之亦然，
+ * 因此没有线程挂起时，吞吐量与底层的无锁队列相同<br/>
+ * <br/>
+ * 防止丢失唤醒：等待方先登记(volatile 写)再检查队列，通知方先修改队列再检查登记。
+ * 这要求底层队列的 size() 通过 CAS 变化，所以只支持 {@link MpmcArrayQueue} 和
+ * {@link ConcurrentArrayQueue}；{@link SpscArrayQueue} 等使用 lazySet 发布的队列不适用<br/>
+ * <br/>
+ * {@link #peek()} 和遍历都是弱一致的：基于调用时底层队列的一份快照，
+ * 不会抛出 ConcurrentModificationException，也不保证看到之后的修改。
+ * remove(Object) 并不从环中摘除元素，而是登记一个墓碑，消费者出队时跳过它，
+ * 因此被删除的元素在出队之前仍然占用槽位<br/>
+ * <br/>
+ * 注意：不支持 null 元素
+ *
+ * @param <E> 元素类型
+ */
+public class BlockingArrayQueue <E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+	// 挂起之前自旋尝试的次数
+	private static final int SPIN_TRIES = 64;
+
+	private final BoundedQueue<E> queue;
+
+	// 挂起等待的消费者和生产者个数
+	private final AtomicInteger waitingConsumers = new AtomicInteger(0);
+	private final AtomicInteger waitingProducers = new AtomicInteger(0);
+
+	private final ReentrantLock takeLock = new ReentrantLock();
+	private final Condition notEmpty = takeLock.newCondition();
+	private final ReentrantLock putLock = new ReentrantLock();
+	private final Condition notFull = putLock.newCondition();
+
+	// 被 remove(Object) 删除但还留在环中的元素，按对象标识计数，由 removeLock 保护
+	private final IdentityHashMap<Object, Integer> removed = new IdentityHashMap<Object, Integer>();
+	private final ReentrantLock removeLock = new ReentrantLock();
+	// 墓碑个数(包括正在进行的 remove)；为 0 时出队不需要检查墓碑
+	private final AtomicInteger tombstones = new AtomicInteger(0);
+
+	/**
+	 * 使用 {@link MpmcArrayQueue} 作为底层存储
+	 *
+	 * @param capacity 容量，会被向上取整为 2 的幂
+	 */
+	public BlockingArrayQueue(int capacity) {
+		this(new MpmcArrayQueue<E>(capacity));
+	}
+
+	public BlockingArrayQueue(MpmcArrayQueue<E> queue) {
+		this((BoundedQueue<E>) queue);
+	}
+
+	public BlockingArrayQueue(ConcurrentArrayQueue<E> queue) {
+		this((BoundedQueue<E>) queue);
+	}
+
+	private BlockingArrayQueue(BoundedQueue<E> queue) {
+		if (queue == null)
+			throw new NullPointerException();
+		this.queue = queue;
+	}
+
+	@Override
+	public boolean offer(E e) {
+		if (e == null)
+			throw new NullPointerException();
+		if (!queue.push(e))
+			return false;
+		signalNotEmpty();
+		return true;
+	}
+
+	@Override
+	public void put(E e) throws InterruptedException {
+		if (e == null)
+			throw new NullPointerException();
+		if (queue.push(e)) {
+			signalNotEmpty();
+			return;
+		}
+
+		putLock.lockInterruptibly();
+		try {
+			waitingProducers.incrementAndGet();
+			try {
+				while (!queue.push(e)) {
+					if (queue.size() >= queue.capacity())
+						notFull.await();
+					else
+						Thread.yield(); // 消费者已经取走元素但还没有释放槽位
+				}
+			} finally {
+				waitingProducers.decrementAndGet();
+			}
+			cascadeNotFull();
+		} finally {
+			putLock.unlock();
+		}
+		signalNotEmpty();
+	}
+
+	@Override
+	public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+		if (e == null)
+			throw new NullPointerException();
+		if (queue.push(e)) {
+			signalNotEmpty();
+			return true;
+		}
+
+		long nanos = unit.toNanos(timeout);
+		long deadline = System.nanoTime() + nanos;
+		putLock.lockInterruptibly();
+		try {
+			waitingProducers.incrementAndGet();
+			try {
+				while (!queue.push(e)) {
+					if (nanos <= 0)
+						return false;
+					if (queue.size() >= queue.capacity()) {
+						nanos = notFull.awaitNanos(nanos);
+					} else {
+						Thread.yield(); // 消费者已经取走元素但还没有释放槽位
+						nanos = deadline - System.nanoTime();
+					}
+				}
+			} finally {
+				waitingProducers.decrementAndGet();
+			}
+			cascadeNotFull();
+		} finally {
+			putLock.unlock();
+		}
+		signalNotEmpty();
+		return true;
+	}
+
+	@Override
+	public E poll() {
+		E e = dequeue();
+		if (e != null)
+			signalNotFull();
+		return e;
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		E e = spinPoll();
+		if (e != null)
+			return e;
+
+		takeLock.lockInterruptibly();
+		try {
+			waitingConsumers.incrementAndGet();
+			try {
+				while ((e = dequeue()) == null) {
+					if (queue.size() == 0)
+						notEmpty.await();
+					else
+						Thread.yield(); // 生产者已经占用槽位但还没有发布数据
+				}
+			} finally {
+				waitingConsumers.decrementAndGet();
+			}
+			cascadeNotEmpty();
+		} finally {
+			takeLock.unlock();
+		}
+		signalNotFull();
+		return e;
+	}
+
+	@Override
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		E e = spinPoll();
+		if (e != null)
+			return e;
+
+		long nanos = unit.toNanos(timeout);
+		long deadline = System.nanoTime() + nanos;
+		takeLock.lockInterruptibly();
+		try {
+			waitingConsumers.incrementAndGet();
+			try {
+				while ((e = dequeue()) == null) {
+					if (nanos <= 0)
+						return null;
+					if (queue.size() == 0) {
+						nanos = notEmpty.awaitNanos(nanos);
+					} else {
+						Thread.yield(); // 生产者已经占用槽位但还没有发布数据
+						nanos = deadline - System.nanoTime();
+					}
+				}
+			} finally {
+				waitingConsumers.decrementAndGet();
+			}
+			cascadeNotEmpty();
+		} finally {
+			takeLock.unlock();
+		}
+		signalNotFull();
+		return e;
+	}
+
+	// 挂起之前先自旋尝试几次，避免在短暂的空队列上挂起
+	private E spinPoll() {
+		for (int i = 0; i < SPIN_TRIES; ++i) {
+			E e = dequeue();
+			if (e != null) {
+				signalNotFull();
+				return e;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> c, int maxElements) {
+		if (c == null)
+			throw new NullPointerException();
+		if (c == this)
+			throw new IllegalArgumentException();
+
+		int n = 0;
+		E e;
+		while (n < maxElements && (e = dequeue()) != null) {
+			c.add(e);
+			++n;
+		}
+		if (n > 0 && waitingProducers.get() > 0) {
+			putLock.lock();
+			try {
+				if (n == 1)
+					notFull.signal();
+				else
+					notFull.signalAll();
+			} finally {
+				putLock.unlock();
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * 从底层队列出队，跳过已经被 remove(Object) 删除的元素
+	 */
+	private E dequeue() {
+		while (true) {
+			E e = queue.pop();
+			if (e == null || tombstones.get() == 0 || !consumeTombstone(e))
+				return e;
+			signalNotFull(); // 被删除的元素同样释放了槽位
+		}
+	}
+
+	private boolean consumeTombstone(Object e) {
+		removeLock.lock();
+		try {
+			Integer n = removed.get(e);
+			if (n == null)
+				return false;
+			if (n == 1)
+				removed.remove(e);
+			else
+				removed.put(e, n - 1);
+			tombstones.decrementAndGet();
+			return true;
+		} finally {
+			removeLock.unlock();
+		}
+	}
+
+	/**
+	 * 入队之后，只有在有消费者挂起时才加锁唤醒
+	 */
+	private void signalNotEmpty() {
+		if (waitingConsumers.get() > 0) {
+			takeLock.lock();
+			try {
+				notEmpty.signal();
+			} finally {
+				takeLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * 出队之后，只有在有生产者挂起时才加锁唤醒
+	 */
+	private void signalNotFull() {
+		if (waitingProducers.get() > 0) {
+			putLock.lock();
+			try {
+				notFull.signal();
+			} finally {
+				putLock.unlock();
+			}
+		}
+	}
+
+	// 持有 takeLock 时调用：队列仍有数据，继续唤醒下一个消费者
+	private void cascadeNotEmpty() {
+		if (waitingConsumers.get() > 0 && !queue.isEmpty())
+			notEmpty.signal();
+	}
+
+	// 持有 putLock 时调用：队列仍有空位，继续唤醒下一个生产者
+	private void cascadeNotFull() {
+		if (waitingProducers.get() > 0 && queue.size() < queue.capacity())
+			notFull.signal();
+	}
+
+	/**
+	 * 弱一致：返回调用时的队首元素，它可能已经被其他线程取走
+	 */
+	@Override
+	public E peek() {
+		Object[] items = snapshot(1);
+		@SuppressWarnings("unchecked")
+		E e = (items.length == 0 ? null : (E) items[0]);
+		return e;
+	}
+
+	/**
+	 * 弱一致：遍历调用时底层队列的一份快照，按出队顺序排列
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		return new Itr(snapshot(Integer.MAX_VALUE));
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		return removeElement(o, false);
+	}
+
+	/**
+	 * 在快照中找到待删除的元素，登记墓碑<br/>
+	 * <br/>
+	 * 先增加 tombstones 再复制快照：在此之前出队的元素不会出现在快照中；
+	 * 在此之后出队的消费者都会加 removeLock 检查墓碑，
+	 * 因此登记的墓碑一定会被某次出队消耗掉
+	 *
+	 * @param identity true 则按对象标识比较，用于迭代器删除
+	 */
+	private boolean removeElement(Object o, boolean identity) {
+		if (o == null)
+			return false;
+
+		removeLock.lock();
+		try {
+			tombstones.incrementAndGet();
+			Object[] items = rawSnapshot(Integer.MAX_VALUE);
+			// 同一个对象可能多次入队，出队时先遇到的那几次已经被之前的墓碑占用
+			IdentityHashMap<Object, Integer> seen = new IdentityHashMap<Object, Integer>();
+			for (int i = 0; i < items.length; ++i) {
+				Object e = items[i];
+				if (identity ? e != o : !o.equals(e))
+					continue;
+				Integer k = seen.get(e);
+				seen.put(e, k == null ? 1 : k + 1);
+				Integer dead = removed.get(e);
+				if (dead != null && (k == null ? 0 : k) < dead)
+					continue;
+				removed.put(e, dead == null ? 1 : dead + 1);
+				return true;
+			}
+			tombstones.decrementAndGet();
+			return false;
+		} finally {
+			removeLock.unlock();
+		}
+	}
+
+	// 底层队列的快照，去掉已经被删除的元素
+	private Object[] snapshot(int limit) {
+		if (tombstones.get() == 0)
+			return rawSnapshot(limit);
+
+		removeLock.lock();
+		try {
+			Object[] items = rawSnapshot(Integer.MAX_VALUE);
+			IdentityHashMap<Object, Integer> dead = new IdentityHashMap<Object, Integer>(removed);
+			int k = 0;
+			for (int i = 0; i < items.length && k < limit; ++i) {
+				Integer n = dead.get(items[i]);
+				if (n != null) {
+					if (n == 1)
+						dead.remove(items[i]);
+					else
+						dead.put(items[i], n - 1);
+					continue;
+				}
+				items[k++] = items[i];
+			}
+			return Arrays.copyOf(items, k);
+		} finally {
+			removeLock.unlock();
+		}
+	}
+
+	private Object[] rawSnapshot(int limit) {
+		if (queue instanceof MpmcArrayQueue)
+			return ((MpmcArrayQueue<E>) queue).snapshot(limit);
+		return ((ConcurrentArrayQueue<E>) queue).snapshot(limit);
+	}
+
+	private class Itr implements Iterator<E> {
+		private final Object[] items;
+		private int cursor = 0;
+		private Object lastRet = null;
+
+		Itr(Object[] items) {
+			this.items = items;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return cursor < items.length;
+		}
+
+		@Override
+		public E next() {
+			if (cursor >= items.length)
+				throw new NoSuchElementException();
+			lastRet = items[cursor++];
+			@SuppressWarnings("unchecked")
+			E e = (E) lastRet;
+			return e;
+		}
+
+		@Override
+		public void remove() {
+			if (lastRet == null)
+				throw new IllegalStateException();
+			removeElement(lastRet, true);
+			lastRet = null;
+		}
+	}
+
+	@Override
+	public int size() {
+		int ret = queue.size() - tombstones.get();
+		return ret < 0 ? 0 : ret;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public int remainingCapacity() {
+		int ret = queue.capacity() - queue.size();
+		return ret < 0 ? 0 : ret;
+	}
+
+	@Override
+	public String toString() {
+		return "[size=" + size() + ", capacity=" + queue.capacity() + "]";
+	}
+}
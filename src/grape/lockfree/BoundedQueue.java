@@ -0,0 +1,40 @@
+package grape.lockfree;
+
+/**
+ * 有界并发队列<br/>
+ * <br/>
+ * push()/pop() 只在队列满/空时失败；tryPush()/tryPop() 只尝试一次，
+ * 在并发冲突时也会失败
+ *
+ * @param <T> 元素类型
+ */
+public interface BoundedQueue <T> {
+
+	/**
+	 * @return false if queue is full
+	 */
+	boolean push(T e);
+
+	/**
+	 * @return false if queue is full or concurrent failure
+	 */
+	boolean tryPush(T e);
+
+	/**
+	 * @return null if got null element or queue is empty
+	 */
+	T pop();
+
+	/**
+	 * @return null if got null element or queue is empty or concurrent failure
+	 */
+	T tryPop();
+
+	int size();
+
+	boolean isEmpty();
+
+	void clear();
+
+	int capacity();
+}
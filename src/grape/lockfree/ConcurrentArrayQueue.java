@@ -1,56 +1,101 @@
 package grape.lockfree;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * 对生产者和消费者的数量没有限制的有界无锁队列<br/>
+ * <br/>
+ * 如果生产者或者消费者只有一个，
+ * 使用 {@link SpscArrayQueue}、{@link MpscArrayQueue} 会有更高的吞吐量；
+ * 多生产者多消费者的情况可以使用 {@link MpmcArrayQueue}，它的生产者之间不需要互相等待<br/>
+ * <br/>
+ * 阻塞操作 put()/take() 以及生产者等待提交时，使用构造时指定的 {@link WaitStrategy} 等待<br/>
+ * <br/>
+ * 构造时可以开启竞争统计，见 {@link #getStats()}
+ *
  * 参考：
  * http://www.codeproject.com/Articles/153898/Yet-another-implementation-of-a-lock-free-circular
  *
  * @author jingqi
  */
-public class ConcurrentArrayQueue <T> {
+public class ConcurrentArrayQueue <T> implements BoundedQueue<T> {
 
 	// 环状缓存
 	private final Object[] ring;
 	private final AtomicInteger maximumReadIndex = new AtomicInteger(0);
 	private final AtomicInteger readIndex = new AtomicInteger(0);
 	private final AtomicInteger writeIndex = new AtomicInteger(0);
+	private final WaitStrategy waitStrategy;
+	private final ContentionStats stats; // 未开启统计时为 null
+
+	// 默认的等待策略，与原来一样直接让出 CPU
+	private static final WaitStrategy DEFAULT_WAIT_STRATEGY = WaitStrategy.spinThenYield(0);
+
+	// pop0() 在队列为空时的返回值，用于与 null 元素区分
+	private static final Object EMPTY = new Object();
 
 	public ConcurrentArrayQueue(int capacity) {
+		this(capacity, DEFAULT_WAIT_STRATEGY);
+	}
+
+	public ConcurrentArrayQueue(int capacity, WaitStrategy waitStrategy) {
+		this(capacity, waitStrategy, false);
+	}
+
+	/**
+	 * @param recordStats 是否记录竞争统计
+	 */
+	public ConcurrentArrayQueue(int capacity, WaitStrategy waitStrategy, boolean recordStats) {
 		if (capacity < 0)
 			throw new IllegalArgumentException("Illegal capacity " + capacity);
+		if (waitStrategy == null)
+			throw new NullPointerException();
 		ring = new Object[capacity + 1];
+		this.waitStrategy = waitStrategy;
+		stats = (recordStats ? new ContentionStats() : null);
+	}
+
+	/**
+	 * @return 竞争统计，构造时没有开启统计则返回 null
+	 */
+	public ContentionStats getStats() {
+		return stats;
 	}
 
 	/**
 	 * @return false if queue is full
 	 */
+	@Override
 	public boolean push(T e) {
 		int currentReadIndex, currentWriteIndex;
 
-		do {
+		while (true) {
 			currentReadIndex = readIndex.get();
 			currentWriteIndex = writeIndex.get();
 
 			// check if queue is full
 			if (((currentWriteIndex + 1) % ring.length) ==
-					(currentReadIndex % ring.length))
+					(currentReadIndex % ring.length)) {
+				if (stats != null)
+					stats.fullRejected();
 				return false;
-		} while (!writeIndex.compareAndSet(currentWriteIndex, currentWriteIndex + 1));
+			}
+			if (writeIndex.compareAndSet(currentWriteIndex, currentWriteIndex + 1))
+				break;
+			if (stats != null) {
+				stats.casFailure();
+				stats.retry();
+			}
+		}
 
 		// We know now that this index is reserved for us. Use it to save the data
 		ring[currentWriteIndex % ring.length] = e;
 
 		// update the maximum read index after saving the data.
-		// It might fail if there are more than 1 producer threads because this
-        // operation has to be done in the same order as the previous CAS
-		while (!maximumReadIndex.compareAndSet(currentWriteIndex, currentWriteIndex + 1)) {
-            // this is a good place to yield the thread in case there are more
-            // software threads than hardware processors and you have more
-            // than 1 producer thread
-            // have a look at sched_yield() (POSIX.1b)
-			Thread.yield();
-		}
+		commit(currentWriteIndex, 1);
 
 		return true;
 	}
@@ -58,30 +103,29 @@ public class ConcurrentArrayQueue <T> {
 	/**
 	 * @return false if queue is full or concurrent failure
 	 */
+	@Override
 	public boolean tryPush(T e) {
 		int currentReadIndex = readIndex.get();
 		int currentWriteIndex = writeIndex.get();
 
 		// check if queue is full
 		if (((currentWriteIndex + 1) % ring.length) ==
-				(currentReadIndex % ring.length))
+				(currentReadIndex % ring.length)) {
+			if (stats != null)
+				stats.fullRejected();
 			return false;
-		if (!writeIndex.compareAndSet(currentWriteIndex, currentWriteIndex + 1))
+		}
+		if (!writeIndex.compareAndSet(currentWriteIndex, currentWriteIndex + 1)) {
+			if (stats != null)
+				stats.casFailure();
 			return false;
+		}
 
 		// We know now that this index is reserved for us. Use it to save the data
 		ring[currentWriteIndex % ring.length] = e;
 
 		// update the maximum read index after saving the data.
-		// It might fail if there are more than 1 producer threads because this
-        // operation has to be done in the same order as the previous CAS
-		while (!maximumReadIndex.compareAndSet(currentWriteIndex, currentWriteIndex + 1)) {
-            // this is a good place to yield the thread in case there are more
-            // software threads than hardware processors and you have more
-            // than 1 producer thread
-            // have a look at sched_yield() (POSIX.1b)
-			Thread.yield();
-		}
+		commit(currentWriteIndex, 1);
 
 		return true;
 	}
@@ -89,7 +133,20 @@ public class ConcurrentArrayQueue <T> {
 	/**
 	 * @return null if got null element or queue is empty
 	 */
+	@Override
 	public T pop() {
+		Object ret = pop0();
+		if (ret == EMPTY)
+			return null;
+		@SuppressWarnings("unchecked")
+		T e = (T) ret;
+		return e;
+	}
+
+	/**
+	 * @return {@link #EMPTY} if queue is empty
+	 */
+	private Object pop0() {
 		int currentMaximumReadIndex;
 		int currentReadIndex;
 
@@ -100,21 +157,28 @@ public class ConcurrentArrayQueue <T> {
 			// The queue is empty or a producer thread has allocate space in the queue
 			// but is waiting to commit the data into it
 			if ((currentReadIndex % ring.length) ==
-					(currentMaximumReadIndex % ring.length))
-				return null;
+					(currentMaximumReadIndex % ring.length)) {
+				if (stats != null)
+					stats.emptyRejected();
+				return EMPTY;
+			}
 
 			// retrieve the data from the queue
-			@SuppressWarnings("unchecked")
-			T ret = (T) ring[currentReadIndex % ring.length];
+			Object ret = ring[currentReadIndex % ring.length];
 
 			if (readIndex.compareAndSet(currentReadIndex, currentReadIndex + 1))
 				return ret; // 这里没有办法清理残余的引用，可能导致内存泄露
+			if (stats != null) {
+				stats.casFailure();
+				stats.retry();
+			}
 		}
 	}
 
 	/**
 	 * @return null if got null element or queue is empty or concurrent failure
 	 */
+	@Override
 	public T tryPop() {
 		int currentReadIndex = readIndex.get();
 		int currentMaximumReadIndex = maximumReadIndex.get();
@@ -122,8 +186,11 @@ public class ConcurrentArrayQueue <T> {
 		// The queue is empty or a producer thread has allocate space in the queue
 		// but is waiting to commit the data into it
 		if ((currentReadIndex % ring.length) ==
-				(currentMaximumReadIndex % ring.length))
+				(currentMaximumReadIndex % ring.length)) {
+			if (stats != null)
+				stats.emptyRejected();
 			return null;
+		}
 
 		// retrieve the data from the queue
 		@SuppressWarnings("unchecked")
@@ -132,9 +199,293 @@ public class ConcurrentArrayQueue <T> {
 		if (readIndex.compareAndSet(currentReadIndex, currentReadIndex + 1))
 			return ret; // 这里没有办法清理残余的引用，可能导致内存泄露
 
+		if (stats != null)
+			stats.casFailure();
 		return null;
 	}
 
+	/**
+	 * 阻塞直到入队成功
+	 */
+	public void put(T e) throws InterruptedException {
+		int counter = 0;
+		while (!push(e)) {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			if (stats != null)
+				stats.waited();
+			counter = waitStrategy.idle(counter);
+		}
+	}
+
+	/**
+	 * 阻塞直到入队成功或者超时
+	 *
+	 * @return false if timeout
+	 */
+	public boolean put(T e, long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		int counter = 0;
+		while (!push(e)) {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			if (deadline - System.nanoTime() <= 0)
+				return false;
+			if (stats != null)
+				stats.waited();
+			counter = waitStrategy.idle(counter);
+		}
+		return true;
+	}
+
+	/**
+	 * 阻塞直到出队成功
+	 */
+	public T take() throws InterruptedException {
+		int counter = 0;
+		while (true) {
+			Object ret = pop0();
+			if (ret != EMPTY) {
+				@SuppressWarnings("unchecked")
+				T e = (T) ret;
+				return e;
+			}
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			if (stats != null)
+				stats.waited();
+			counter = waitStrategy.idle(counter);
+		}
+	}
+
+	/**
+	 * 阻塞直到出队成功或者超时
+	 *
+	 * @return null if got null element or timeout
+	 */
+	public T take(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		int counter = 0;
+		while (true) {
+			Object ret = pop0();
+			if (ret != EMPTY) {
+				@SuppressWarnings("unchecked")
+				T e = (T) ret;
+				return e;
+			}
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			if (deadline - System.nanoTime() <= 0)
+				return null;
+			if (stats != null)
+				stats.waited();
+			counter = waitStrategy.idle(counter);
+		}
+	}
+
+	/**
+	 * 按照占用槽位的顺序提交数据，更新 maximumReadIndex<br/>
+	 * 有多个生产者时，需要等待之前占用槽位的生产者先提交
+	 */
+	private void commit(int currentWriteIndex, int count) {
+		int counter = 0;
+		while (!maximumReadIndex.compareAndSet(currentWriteIndex, currentWriteIndex + count)) {
+			// 槽位已经被占用，这里不能放弃，也不响应中断
+			if (stats != null)
+				stats.waited();
+			counter = waitStrategy.idle(counter);
+		}
+		if (stats != null)
+			stats.observeSize(size());
+	}
+
+	/**
+	 * 批量入队：用一次 CAS 占用一段连续的槽位，写入后再一次性提交
+	 *
+	 * @return 实际入队的元素个数，队列满时可能小于 to - from
+	 */
+	public int pushAll(T[] src, int from, int to) {
+		if (from < 0 || to > src.length || from > to)
+			throw new IndexOutOfBoundsException("Illegal range [" + from + ", " + to + ")");
+
+		int currentReadIndex, currentWriteIndex, count;
+		while (true) {
+			currentReadIndex = readIndex.get();
+			currentWriteIndex = writeIndex.get();
+
+			// 剩余空间
+			count = capacity() - (currentWriteIndex - currentReadIndex);
+			if (from == to)
+				return 0;
+			if (count <= 0) {
+				if (stats != null)
+					stats.fullRejected();
+				return 0;
+			}
+			if (count > to - from)
+				count = to - from;
+			if (writeIndex.compareAndSet(currentWriteIndex, currentWriteIndex + count))
+				break;
+			if (stats != null) {
+				stats.casFailure();
+				stats.retry();
+			}
+		}
+
+		// 这一段槽位已经被我们占用
+		for (int i = 0; i < count; ++i)
+			ring[(currentWriteIndex + i) % ring.length] = src[from + i];
+
+		// 一次性提交，同样需要与其他生产者保持顺序
+		commit(currentWriteIndex, count);
+
+		return count;
+	}
+
+	/**
+	 * 批量出队：用一次 CAS 取走至多 limit 个元素，依次交给 consumer 处理
+	 *
+	 * @return 实际出队的元素个数
+	 */
+	public int drain(Consumer<? super T> consumer, int limit) {
+		Object[] batch = claim(limit);
+		if (batch == null)
+			return 0;
+		for (int i = 0; i < batch.length; ++i) {
+			@SuppressWarnings("unchecked")
+			T e = (T) batch[i];
+			consumer.accept(e);
+		}
+		return batch.length;
+	}
+
+	/**
+	 * 批量出队：用一次 CAS 取走至多 limit 个元素，放入 c 中
+	 *
+	 * @return 实际出队的元素个数
+	 */
+	public int drainTo(Collection<? super T> c, int limit) {
+		Object[] batch = claim(limit);
+		if (batch == null)
+			return 0;
+		for (int i = 0; i < batch.length; ++i) {
+			@SuppressWarnings("unchecked")
+			T e = (T) batch[i];
+			c.add(e);
+		}
+		return batch.length;
+	}
+
+	/**
+	 * 批量出队：用一次 CAS 取走至多 to - from 个元素，放入 dst[from, to)。
+	 * 只有 dst[from, from + ret) 是取走的元素，其后被重试用过的槽位会被置为 null，
+	 * 不会留下其他消费者取走的元素
+	 *
+	 * @return 实际出队的元素个数 ret
+	 */
+	public int drainTo(T[] dst, int from, int to) {
+		if (from < 0 || to > dst.length || from > to)
+			throw new IndexOutOfBoundsException("Illegal range [" + from + ", " + to + ")");
+		if (from == to)
+			return 0;
+
+		int written = 0; // 之前的尝试写过的槽位个数
+		while (true) {
+			int currentReadIndex = readIndex.get();
+			int currentMaximumReadIndex = maximumReadIndex.get();
+
+			int count = currentMaximumReadIndex - currentReadIndex;
+			if (count <= 0) {
+				if (stats != null)
+					stats.emptyRejected();
+				clear(dst, from, from + written);
+				return 0;
+			}
+			if (count > to - from)
+				count = to - from;
+
+			// 必须在 CAS 之前复制数据，CAS 之后这些槽位可能被生产者覆盖；CAS 失败则重新复制
+			for (int i = 0; i < count; ++i) {
+				@SuppressWarnings("unchecked")
+				T e = (T) ring[(currentReadIndex + i) % ring.length];
+				dst[from + i] = e;
+			}
+			if (count > written)
+				written = count;
+
+			if (readIndex.compareAndSet(currentReadIndex, currentReadIndex + count)) {
+				// 失败的尝试复制的元素已经属于其他消费者
+				clear(dst, from + count, from + written);
+				return count;
+			}
+			if (stats != null) {
+				stats.casFailure();
+				stats.retry();
+			}
+		}
+	}
+
+	private static void clear(Object[] a, int from, int to) {
+		for (int i = from; i < to; ++i)
+			a[i] = null;
+	}
+
+	// 取走一段已提交的数据，队列为空时返回 null
+	private Object[] claim(int limit) {
+		if (limit <= 0)
+			return null;
+
+		while (true) {
+			int currentReadIndex = readIndex.get();
+			int currentMaximumReadIndex = maximumReadIndex.get();
+
+			int count = currentMaximumReadIndex - currentReadIndex;
+			if (count <= 0) {
+				if (stats != null)
+					stats.emptyRejected();
+				return null;
+			}
+			if (count > limit)
+				count = limit;
+
+			// 必须在 CAS 之前复制数据，CAS 之后这些槽位可能被生产者覆盖
+			Object[] ret = new Object[count];
+			for (int i = 0; i < count; ++i)
+				ret[i] = ring[(currentReadIndex + i) % ring.length];
+
+			if (readIndex.compareAndSet(currentReadIndex, currentReadIndex + count))
+				return ret;
+			if (stats != null) {
+				stats.casFailure();
+				stats.retry();
+			}
+		}
+	}
+
+	/**
+	 * 从队首开始复制至多 limit 个已提交的元素，供 {@link BlockingArrayQueue} 遍历使用<br/>
+	 * 弱一致：复制期间被取走的元素会被跳过
+	 */
+	Object[] snapshot(int limit) {
+		int currentReadIndex = readIndex.get();
+		int count = maximumReadIndex.get() - currentReadIndex;
+		if (count > limit)
+			count = limit;
+		if (count <= 0)
+			return new Object[0];
+
+		Object[] ret = new Object[count];
+		int k = 0;
+		for (int i = currentReadIndex; i != currentReadIndex + count; ++i) {
+			Object e = ring[i % ring.length];
+			// readIndex 越过 i 之后槽位可能被生产者覆盖，读到的数据不再可信
+			if (readIndex.get() - i <= 0)
+				ret[k++] = e;
+		}
+		return k == ret.length ? ret : Arrays.copyOf(ret, k);
+	}
+
+	@Override
 	public int size() {
 		int ret = writeIndex.get() - readIndex.get();
 		if (ret < 0)
@@ -142,12 +493,27 @@ public class ConcurrentArrayQueue <T> {
 		return ret;
 	}
 
+	@Override
 	public void clear() {
 		while (size() > 0)
 			pop();
 	}
 
-	public int capactity() {
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public int capacity() {
 		return ring.length - 1;
 	}
+
+	/**
+	 * @deprecated 拼写错误，使用 {@link #capacity()}
+	 */
+	@Deprecated
+	public int capactity() {
+		return capacity();
+	}
 }
@@ -0,0 +1,248 @@
+package grape.lockfree;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于预分配数组的有界并发无锁栈，push()/pop() 不会分配任何对象<br/>
+ * <br/>
+ * 数组中的每个槽位都是一个节点，节点之间用下标链接，组成两个 Treiber 栈：
+ * 保存元素的栈和空闲节点栈。push 从空闲栈中取出一个节点，写入元素后压入元素栈；pop 则反之。
+ * 两个栈顶都是 "版本号 + 下标" 打包而成的 long，每次修改版本号都会加一，避免 CAS 操作的 ABA 问题<br/>
+ * <br/>
+ * 适合用作空闲链表、对象池等需要完全避免垃圾的场合
+ *
+ * 参考资料：<br/>
+ * [1] IBM System/370 Principles of Operation, free-pool manipulation with CDS<br/>
+ * [2] Treiber. Systems Programming: Coping with Parallelism. 1986<br/>
+ *
+ * @param <E> 元素类型
+ */
+public class ConcurrentArrayStack <E> {
+
+	// 空栈使用的下标
+	private static final int NIL = -1;
+
+	private final Object[] items;
+	private final int[] next; // 节点之间的链接，只在节点被独占时修改
+	private final AtomicLong head; // 元素栈顶
+	private final AtomicLong free; // 空闲节点栈顶
+	private final AtomicInteger size = new AtomicInteger(0);
+
+	public ConcurrentArrayStack(int capacity) {
+		if (capacity < 0)
+			throw new IllegalArgumentException("Illegal capacity " + capacity);
+
+		items = new Object[capacity];
+		next = new int[capacity];
+		for (int i = 0; i < capacity; ++i)
+			next[i] = i + 1 < capacity ? i + 1 : NIL;
+		head = new AtomicLong(pack(0, NIL));
+		free = new AtomicLong(pack(0, capacity > 0 ? 0 : NIL));
+	}
+
+	/**
+	 * 压栈
+	 *
+	 * @return false if stack is full
+	 */
+	public boolean push(E item) {
+		int n = popNode(free);
+		if (n == NIL)
+			return false;
+
+		items[n] = item; // 节点已被独占，之后的 CAS 保证可见性
+		pushNode(head, n);
+
+		// increase size
+		size.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * 从栈中弹出
+	 *
+	 * @return null if emtpy
+	 */
+	public E pop() {
+		int n = popNode(head);
+		if (n == NIL)
+			return null;
+
+		// decrease size
+		size.decrementAndGet();
+
+		@SuppressWarnings("unchecked")
+		E ret = (E) items[n];
+		items[n] = null; // 清理残余的引用
+		pushNode(free, n);
+		return ret;
+	}
+
+	/**
+	 * 批量压栈：用一次 CAS 取出一串空闲节点，写入元素后再用一次 CAS 压入元素栈<br/>
+	 * 设实际压入的个数为 count，压入的是 src[from, from + count)，src[from + count - 1] 成为新的栈顶；
+	 * 全部压入时即 src[to - 1]
+	 *
+	 * @return 实际压入的元素个数 count，栈满时可能小于 to - from
+	 */
+	public int pushAll(E[] src, int from, int to) {
+		if (from < 0 || to > src.length || from > to)
+			throw new IndexOutOfBoundsException("Illegal range [" + from + ", " + to + ")");
+		if (from == to)
+			return 0;
+
+		long run = popNodes(free, to - from);
+		int count = stamp(run);
+		if (count == 0)
+			return 0;
+
+		// 这一串节点已被独占；按链的顺序从后往前写入，使 src[from + count - 1] 在栈顶
+		int first = index(run), last = first;
+		for (int i = 0; ; ++i) {
+			items[last] = src[from + count - 1 - i];
+			if (i == count - 1)
+				break;
+			last = next[last];
+		}
+		pushNodes(head, first, last);
+
+		// increase size
+		size.addAndGet(count);
+		return count;
+	}
+
+	/**
+	 * 批量弹出：用一次 CAS 从栈顶取下一串节点，依次放入 dst[from, to)，
+	 * 再用一次 CAS 把节点还给空闲栈
+	 *
+	 * @return 实际弹出的元素个数
+	 */
+	public int popAll(E[] dst, int from, int to) {
+		if (from < 0 || to > dst.length || from > to)
+			throw new IndexOutOfBoundsException("Illegal range [" + from + ", " + to + ")");
+		if (from == to)
+			return 0;
+
+		long run = popNodes(head, to - from);
+		int count = stamp(run);
+		if (count == 0)
+			return 0;
+
+		// decrease size
+		size.addAndGet(-count);
+
+		int first = index(run), last = first;
+		for (int i = 0; ; ++i) {
+			@SuppressWarnings("unchecked")
+			E e = (E) items[last];
+			dst[from + i] = e;
+			items[last] = null; // 清理残余的引用
+			if (i == count - 1)
+				break;
+			last = next[last];
+		}
+		pushNodes(free, first, last);
+		return count;
+	}
+
+	public void clear() {
+		while (size() > 0)
+			pop();
+	}
+
+	/**
+	 * 返回栈顶元素，但是并不弹出元素
+	 */
+	public E top() {
+		int n = index(head.get());
+		if (n == NIL)
+			return null;
+		@SuppressWarnings("unchecked")
+		E ret = (E) items[n];
+		return ret;
+	}
+
+	public int size() {
+		return size.get();
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public int capacity() {
+		return items.length;
+	}
+
+	private int popNode(AtomicLong top) {
+		while (true) {
+			long oldTop = top.get();
+			int n = index(oldTop);
+			if (n == NIL)
+				return NIL;
+			// 如果 n 在此期间被其他线程弹出并再次压入，版本号会改变，CAS 失败
+			long newTop = pack(stamp(oldTop) + 1, next[n]);
+			if (top.compareAndSet(oldTop, newTop))
+				return n;
+		}
+	}
+
+	private void pushNode(AtomicLong top, int n) {
+		pushNodes(top, n, n);
+	}
+
+	/**
+	 * 从栈顶取下至多 max 个相连的节点
+	 *
+	 * @return 打包的 "个数 + 第一个节点的下标"，个数为 0 表示栈为空
+	 */
+	private long popNodes(AtomicLong top, int max) {
+		while (true) {
+			long oldTop = top.get();
+			int first = index(oldTop);
+			if (first == NIL)
+				return pack(0, NIL);
+
+			// 沿着链向下走；如果链在此期间被修改，栈顶的版本号一定会改变，CAS 失败。
+			// next[] 中只会写入 NIL 或者合法的下标，即使读到过时的链也不会越界；
+			// 走的步数不超过 max，链上出现环也能结束
+			int last = first, count = 1;
+			while (count < max) {
+				int n = next[last];
+				if (n == NIL)
+					break;
+				last = n;
+				++count;
+			}
+			int rest = next[last];
+
+			if (top.compareAndSet(oldTop, pack(stamp(oldTop) + 1, rest)))
+				return pack(count, first);
+		}
+	}
+
+	/**
+	 * 把已独占的一串节点 [first, last] 压入栈中，first 成为栈顶
+	 */
+	private void pushNodes(AtomicLong top, int first, int last) {
+		while (true) {
+			long oldTop = top.get();
+			next[last] = index(oldTop);
+			if (top.compareAndSet(oldTop, pack(stamp(oldTop) + 1, first)))
+				return;
+		}
+	}
+
+	private static long pack(int stamp, int index) {
+		return ((long) stamp << 32) | (index & 0xFFFFFFFFL);
+	}
+
+	private static int stamp(long top) {
+		return (int) (top >>> 32);
+	}
+
+	private static int index(long top) {
+		return (int) top;
+	}
+}
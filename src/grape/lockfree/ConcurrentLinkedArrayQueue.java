@@ -0,0 +1,361 @@
+package grape.lockfree;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 由定长数组段链接而成的无界并发无锁队列，可以替代 {@link ConcurrentLinkedQueue}<br/>
+ * <br/>
+ * {@link ConcurrentLinkedQueue} 每次 push 都要新建一个节点和一个 AtomicReference，
+ * 这里每 segmentSize 个元素才新建一个段节点，段内的数组在被消费完后回收复用<br/>
+ * <br/>
+ * 算法:<br/>
+ * <ol>
+ * <li> 生产者用 fetch-and-add 在全局的 producerIndex 上占用位置，然后找到(必要时追加)对应的段写入元素，
+ * 生产者之间不会因为 CAS 失败而重试</li>
+ * <li> 消费者在 consumerIndex 上 CAS，只有确认元素已经写入后才占用位置</li>
+ * <li> 段节点本身从不复用，因此沿 next 指针遍历不存在 ABA 问题；只有段内的数组会被回收，
+ * 回收时该段的所有位置都已被消费，不会再有生产者写入，持有旧引用的消费者其 CAS 必然失败</li>
+ * </ol>
+ *
+ * 注意:<br/>
+ * <ol>
+ * <li> 与 {@link ConcurrentArrayQueue} 一样，如果生产者已经占用了位置但还没有写入数据，pop() 返回 null</li>
+ * <li> 已经出队的元素在整个段被消费完之前不会被清理，因此最多残留 segmentSize 个引用</li>
+ * </ol>
+ *
+ * 参考资料：<br/>
+ * [1] Morrison, Afek. Fast Concurrent Queues for x86 Processors (LCRQ). PPoPP 2013<br/>
+ * [2] JCTools MpmcUnboundedXaddArrayQueue<br/>
+ *
+ * @param <E> 元素类型
+ */
+public class ConcurrentLinkedArrayQueue <E> {
+
+	private static class Segment {
+		// 段的序号，第 index 个段存放 [index * segmentSize, (index + 1) * segmentSize) 位置的元素
+		final long index;
+		final AtomicReferenceArray<Object> items;
+		final AtomicReference<Segment> next = new AtomicReference<Segment>();
+
+		Segment(long index, AtomicReferenceArray<Object> items) {
+			this.index = index;
+			this.items = items;
+		}
+	}
+
+	// 默认段长度
+	private static final int DEFAULT_SEGMENT_SIZE = 256;
+
+	// 回收数组池的大小
+	private static final int POOL_SIZE = 4;
+
+	// 用于表示 null 元素
+	private static final Object NULL = new Object();
+
+	private final int segmentShift, segmentMask;
+
+	private final PaddedAtomicLong producerIndex = new PaddedAtomicLong(0);
+	private final PaddedAtomicLong consumerIndex = new PaddedAtomicLong(0);
+	private final AtomicReference<Segment> producerSegment; // 只是提示，可能落后
+	private final AtomicReference<Segment> consumerSegment;
+
+	// 回收的数组
+	private final AtomicReferenceArray<AtomicReferenceArray<Object> > pool =
+			new AtomicReferenceArray<AtomicReferenceArray<Object> >(POOL_SIZE);
+
+	public ConcurrentLinkedArrayQueue() {
+		this(DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * @param segmentSize 段长度，会被向上取整为 2 的幂
+	 */
+	public ConcurrentLinkedArrayQueue(int segmentSize) {
+		if (segmentSize < 1 || segmentSize > AbstractArrayQueue.MAXIMUM_CAPACITY)
+			throw new IllegalArgumentException("Illegal segment size " + segmentSize);
+		int size = AbstractArrayQueue.roundUpToPowerOfTwo(segmentSize < 2 ? 2 : segmentSize);
+		segmentShift = Integer.numberOfTrailingZeros(size);
+		segmentMask = size - 1;
+
+		Segment first = new Segment(0, new AtomicReferenceArray<Object>(size));
+		producerSegment = new AtomicReference<Segment>(first);
+		consumerSegment = new AtomicReference<Segment>(first);
+	}
+
+	/**
+	 * push to tail
+	 */
+	public void push(E item) {
+		long p = producerIndex.getAndIncrement();
+		Segment s = producerSegment(p >> segmentShift);
+		s.items.lazySet((int) p & segmentMask, item == null ? NULL : item);
+	}
+
+	/**
+	 * try to push to tail
+	 *
+	 * @return 总是 true，fetch-and-add 不会发生并发失败
+	 */
+	public boolean tryPush(E item) {
+		push(item);
+		return true;
+	}
+
+	/**
+	 * 批量推入队尾：用一次 fetch-and-add 占用一段连续的位置
+	 */
+	public void pushAll(E[] src, int from, int to) {
+		if (from < 0 || to > src.length || from > to)
+			throw new IndexOutOfBoundsException("Illegal range [" + from + ", " + to + ")");
+		if (from == to)
+			return;
+
+		long p = producerIndex.getAndAdd(to - from);
+		Segment s = null;
+		for (int i = from; i < to; ++i, ++p) {
+			long k = p >> segmentShift;
+			if (s == null || s.index != k)
+				s = producerSegment(k);
+			s.items.lazySet((int) p & segmentMask, src[i] == null ? NULL : src[i]);
+		}
+	}
+
+	/**
+	 * pop from head
+	 *
+	 * @return null if got null element or queue is empty or a producer is writing the head element
+	 */
+	public E pop() {
+		while (true) {
+			long c = consumerIndex.get();
+			Segment s = consumerSegment(c >> segmentShift);
+			if (s == null)
+				return null; // empty queue or producer is appending segment
+			if (s.index != c >> segmentShift)
+				continue; // c 已经过时
+			Object e = s.items.get((int) c & segmentMask);
+			if (e == null) {
+				if (isHead(c))
+					return null; // empty queue or producer is writing
+				continue; // c 已经过时，数组可能已被回收清空
+			}
+			if (consumerIndex.compareAndSet(c, c + 1))
+				return unwrap(e);
+		}
+	}
+
+	/**
+	 * try to pop from head
+	 *
+	 * @return null if got null element or queue is empty or concurrent failure
+	 */
+	public E tryPop() {
+		while (true) {
+			long c = consumerIndex.get();
+			Segment s = consumerSegment(c >> segmentShift);
+			if (s == null)
+				return null;
+			if (s.index != c >> segmentShift)
+				continue; // c 已经过时
+			Object e = s.items.get((int) c & segmentMask);
+			if (e == null) {
+				if (isHead(c))
+					return null;
+				continue; // c 已经过时，不算并发失败
+			}
+			if (!consumerIndex.compareAndSet(c, c + 1))
+				return null;
+			return unwrap(e);
+		}
+	}
+
+	/**
+	 * 批量从队首弹出：用一次 CAS 取走同一个段内至多 limit 个元素，依次交给 consumer 处理
+	 *
+	 * @return 实际弹出的元素个数
+	 */
+	public int drain(Consumer<? super E> consumer, int limit) {
+		if (limit <= 0)
+			return 0;
+
+		while (true) {
+			long c = consumerIndex.get();
+			Segment s = consumerSegment(c >> segmentShift);
+			if (s == null)
+				return 0;
+			if (s.index != c >> segmentShift)
+				continue; // c 已经过时
+
+			// 必须在 CAS 之前复制数据，CAS 之后这个段可能被回收
+			int off = (int) c & segmentMask;
+			int count = segmentMask + 1 - off;
+			if (count > limit)
+				count = limit;
+			Object[] batch = new Object[count];
+			for (int i = 0; i < count; ++i) {
+				batch[i] = s.items.get(off + i);
+				if (batch[i] == null) {
+					count = i;
+					break;
+				}
+			}
+			if (count == 0) {
+				if (isHead(c))
+					return 0;
+				continue; // c 已经过时，数组可能已被回收清空
+			}
+
+			if (consumerIndex.compareAndSet(c, c + count)) {
+				for (int i = 0; i < count; ++i)
+					consumer.accept(unwrap(batch[i]));
+				return count;
+			}
+		}
+	}
+
+	/**
+	 * 批量从队首弹出：用一次 CAS 取走同一个段内至多 limit 个元素，放入 c 中
+	 *
+	 * @return 实际弹出的元素个数
+	 */
+	public int drainTo(final Collection<? super E> c, int limit) {
+		return drain(new Consumer<E>() {
+			@Override
+			public void accept(E e) {
+				c.add(e);
+			}
+		}, limit);
+	}
+
+	public void clear() {
+		while (size() > 0)
+			pop();
+	}
+
+	/**
+	 * get head
+	 */
+	public E top() {
+		while (true) {
+			long c = consumerIndex.get();
+			long k = c >> segmentShift;
+			Segment s = consumerSegment.get();
+			while (s != null && s.index < k)
+				s = s.next.get();
+			if (s == null)
+				return null;
+			if (s.index != k)
+				continue; // c 已经过时
+
+			Object e = s.items.get((int) c & segmentMask);
+			if (e == null) {
+				if (isHead(c))
+					return null;
+				continue; // c 已经过时
+			}
+			if (consumerIndex.get() == c) // 确认数组没有被回收
+				return unwrap(e);
+		}
+	}
+
+	public int size() {
+		// 先读 consumerIndex 再读 producerIndex，并发时结果只可能偏大
+		long c = consumerIndex.get();
+		long ret = producerIndex.get() - c;
+		if (ret < 0)
+			return 0;
+		if (ret > Integer.MAX_VALUE)
+			return Integer.MAX_VALUE;
+		return (int) ret;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * 在位置 c 读到空槽位后调用：只有 c 仍是当前的消费者序号时，空槽位才说明队列为空
+	 * (producerIndex 不大于 c)或者生产者正在写入；否则 c 已经过时，
+	 * 槽位可能是被其他消费者回收数组时清空的，调用者应该重试
+	 */
+	private boolean isHead(long c) {
+		return consumerIndex.get() == c;
+	}
+
+	@SuppressWarnings("unchecked")
+	private E unwrap(Object e) {
+		return e == NULL ? null : (E) e;
+	}
+
+	/**
+	 * 找到序号为 k 的段，必要时追加新段
+	 */
+	private Segment producerSegment(long k) {
+		Segment s = producerSegment.get();
+		if (s.index == k)
+			return s;
+
+		// 提示已经越过了 k。此时第 k 段还有未写入的位置，消费者不可能越过它
+		Segment cur = (s.index > k ? consumerSegment.get() : s);
+		while (cur.index < k) {
+			Segment next = cur.next.get();
+			if (next == null) {
+				Segment n = new Segment(cur.index + 1, allocItems());
+				if (cur.next.compareAndSet(null, n)) {
+					next = n;
+				} else {
+					releaseItems(n.items); // 从未发布，可以直接回收
+					next = cur.next.get();
+				}
+			}
+			cur = next;
+		}
+
+		// 推进提示
+		s = producerSegment.get();
+		if (s.index < cur.index)
+			producerSegment.compareAndSet(s, cur);
+		return cur;
+	}
+
+	/**
+	 * 找到序号为 k 的段，并推进 consumerSegment；越过的段已经被完全消费，回收其数组
+	 *
+	 * @return null if the segment has not been appended yet;
+	 * 		序号大于 k 的段，说明调用者的 consumerIndex 已经过时
+	 */
+	private Segment consumerSegment(long k) {
+		while (true) {
+			Segment s = consumerSegment.get();
+			if (s.index >= k)
+				return s;
+			Segment next = s.next.get();
+			if (next == null)
+				return null;
+			if (consumerSegment.compareAndSet(s, next))
+				releaseItems(s.items);
+		}
+	}
+
+	private AtomicReferenceArray<Object> allocItems() {
+		for (int i = 0; i < POOL_SIZE; ++i) {
+			AtomicReferenceArray<Object> items = pool.get(i);
+			if (items != null && pool.compareAndSet(i, items, null))
+				return items;
+		}
+		return new AtomicReferenceArray<Object>(segmentMask + 1);
+	}
+
+	private void releaseItems(AtomicReferenceArray<Object> items) {
+		// 清理残余的引用
+		for (int i = 0, len = items.length(); i < len; ++i)
+			items.lazySet(i, null);
+		for (int i = 0; i < POOL_SIZE; ++i) {
+			if (pool.get(i) == null && pool.compareAndSet(i, null, items))
+				return;
+		}
+		// 池已满，丢弃
+	}
+}
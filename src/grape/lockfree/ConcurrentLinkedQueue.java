@@ -1,5 +1,6 @@
 package grape.lockfree;
 
+import java.util.Collection;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -12,6 +13,8 @@ import java.util.concurrent.atomic.AtomicReference;
  * <li> 没有使用 <b>消隐(Shavit And Touitou)</b> 策略增加吞吐量，不适合作为高性能服务器关键节点</li>
  * </ol>
  *
+ * 构造时可以开启竞争统计，见 {@link #getStats()}；队列无界，不会有满队列拒绝
+ *
  * 参考资料：<br/>
  * [1] http://www.ibm.com/developerworks/cn/java/j-jtp04186/<br/>
  * [2] 钱立兵，陈波，晏涛，徐云，孟金涛，刘涛. 多线程并发访问无锁队列的算法研究[J]. 先进技术研究通报，2009，3(8)：50 - 55<br/>
@@ -32,6 +35,25 @@ public class ConcurrentLinkedQueue <E> {
 	private final AtomicInteger size = new AtomicInteger(0);
 	private final AtomicReference<Node<E> > head = new AtomicReference<Node<E> >(new Node<E>(null));
 	private final AtomicReference<Node<E> > tail = new AtomicReference<Node<E> >(head.get());
+	private final ContentionStats stats; // 未开启统计时为 null
+
+	public ConcurrentLinkedQueue() {
+		this(false);
+	}
+
+	/**
+	 * @param recordStats 是否记录竞争统计
+	 */
+	public ConcurrentLinkedQueue(boolean recordStats) {
+		stats = (recordStats ? new ContentionStats() : null);
+	}
+
+	/**
+	 * @return 竞争统计，构造时没有开启统计则返回 null
+	 */
+	public ContentionStats getStats() {
+		return stats;
+	}
 
 	/**
 	 * push to tail
@@ -46,13 +68,19 @@ public class ConcurrentLinkedQueue <E> {
 					if (curTail.next.compareAndSet(null, newNode)) {
 						tail.compareAndSet(curTail, newNode); // 这一步如果失败，会在 * 步骤中修复
 						// increase size
-						size.incrementAndGet();
+						int n = size.incrementAndGet();
+						if (stats != null)
+							stats.observeSize(n);
 						return;
 					}
+					if (stats != null)
+						stats.casFailure();
 				} else {
 					tail.compareAndSet(curTail, residue); // *
 				}
 			}
+			if (stats != null)
+				stats.retry();
 		}
 	}
 
@@ -70,9 +98,13 @@ public class ConcurrentLinkedQueue <E> {
 				if (curTail.next.compareAndSet(null, newNode)) {
 					tail.compareAndSet(curTail, newNode); // 这一步如果失败，会在 * 步骤中修复
 					// increase size
-					size.incrementAndGet();
+					int n = size.incrementAndGet();
+					if (stats != null)
+						stats.observeSize(n);
 					return true;
 				}
+				if (stats != null)
+					stats.casFailure();
 			} else {
 				tail.compareAndSet(curTail, residue); // *
 			}
@@ -92,8 +124,11 @@ public class ConcurrentLinkedQueue <E> {
 			Node<E> nextNode = headNode.next.get();
 			if (headNode == head.get()) {
 				if (headNode == tailNode) { // empty queue or tail falling behind
-					if (nextNode == null)
+					if (nextNode == null) {
+						if (stats != null)
+							stats.emptyRejected();
 						return null;
+					}
 					tail.compareAndSet(tailNode, nextNode); // tail failling behind, advance it
 				} else {
 					if (head.compareAndSet(headNode, nextNode)) {
@@ -104,8 +139,12 @@ public class ConcurrentLinkedQueue <E> {
 						nextNode.item = null; // nextNode 作为新的 dummy 节点
 						return ret;
 					}
+					if (stats != null)
+						stats.casFailure();
 				}
 			}
+			if (stats != null)
+				stats.retry();
 		}
 	}
 
@@ -120,8 +159,11 @@ public class ConcurrentLinkedQueue <E> {
 		Node<E> nextNode = headNode.next.get();
 		if (headNode == head.get()) {
 			if (headNode == tailNode) { // empty queue or tail falling behind
-				if (nextNode == null)
+				if (nextNode == null) {
+					if (stats != null)
+						stats.emptyRejected();
 					return null;
+				}
 				tail.compareAndSet(tailNode, nextNode); // tail failling behind, advance it
 			} else {
 				if (head.compareAndSet(headNode, nextNode)) {
@@ -132,11 +174,129 @@ public class ConcurrentLinkedQueue <E> {
 					nextNode.item = null; // nextNode 作为新的 dummy 节点
 					return ret;
 				}
+				if (stats != null)
+					stats.casFailure();
 			}
 		}
 		return null;
 	}
 
+	/**
+	 * 批量推入队尾：先在本地把节点串成链，再用一次 CAS 挂到队尾
+	 */
+	public void pushAll(E[] src, int from, int to) {
+		if (from < 0 || to > src.length || from > to)
+			throw new IndexOutOfBoundsException("Illegal range [" + from + ", " + to + ")");
+		if (from == to)
+			return;
+
+		Node<E> first = new Node<E>(src[from]), last = first;
+		for (int i = from + 1; i < to; ++i) {
+			Node<E> n = new Node<E>(src[i]);
+			last.next.lazySet(n); // 链尚未发布，之后的 CAS 保证可见性
+			last = n;
+		}
+
+		while (true) {
+			Node<E> curTail = tail.get();
+			Node<E> residue = curTail.next.get();
+			if (curTail == tail.get()) {
+				if (residue == null) {
+					if (curTail.next.compareAndSet(null, first)) {
+						tail.compareAndSet(curTail, last); // 这一步如果失败，会在 * 步骤中逐个节点修复
+						// increase size
+						int n = size.addAndGet(to - from);
+						if (stats != null)
+							stats.observeSize(n);
+						return;
+					}
+					if (stats != null)
+						stats.casFailure();
+				} else {
+					tail.compareAndSet(curTail, residue); // *
+				}
+			}
+			if (stats != null)
+				stats.retry();
+		}
+	}
+
+	/**
+	 * 批量从队首弹出：用一次 CAS 取走至多 limit 个元素，依次交给 consumer 处理
+	 *
+	 * @return 实际弹出的元素个数
+	 */
+	public int drain(Consumer<? super E> consumer, int limit) {
+		if (limit <= 0)
+			return 0;
+
+		while (true) {
+			Node<E> headNode = head.get();
+			Node<E> tailNode = tail.get();
+			Node<E> nextNode = headNode.next.get();
+			if (headNode != head.get()) {
+				if (stats != null)
+					stats.retry();
+				continue;
+			}
+			if (headNode == tailNode) { // empty queue or tail falling behind
+				if (nextNode == null) {
+					if (stats != null)
+						stats.emptyRejected();
+					return 0;
+				}
+				tail.compareAndSet(tailNode, nextNode); // tail failling behind, advance it
+				if (stats != null)
+					stats.retry();
+				continue;
+			}
+
+			// 向后查找新的 head，但是不越过 tail，否则 tail 会落后于 head
+			Node<E> last = nextNode;
+			int count = 1;
+			while (count < limit && last != tailNode) {
+				Node<E> n = last.next.get();
+				if (n == null)
+					break;
+				last = n;
+				++count;
+			}
+
+			if (head.compareAndSet(headNode, last)) {
+				// decrease size
+				size.addAndGet(-count);
+
+				// [nextNode, last] 已经归我们所有
+				for (Node<E> n = nextNode; ; n = n.next.get()) {
+					E item = n.item;
+					n.item = null; // last 作为新的 dummy 节点
+					consumer.accept(item);
+					if (n == last)
+						break;
+				}
+				return count;
+			}
+			if (stats != null) {
+				stats.casFailure();
+				stats.retry();
+			}
+		}
+	}
+
+	/**
+	 * 批量从队首弹出：用一次 CAS 取走至多 limit 个元素，放入 c 中
+	 *
+	 * @return 实际弹出的元素个数
+	 */
+	public int drainTo(final Collection<? super E> c, int limit) {
+		return drain(new Consumer<E>() {
+			@Override
+			public void accept(E e) {
+				c.add(e);
+			}
+		}, limit);
+	}
+
 	public void clear() {
 		while (size() > 0)
 			pop();
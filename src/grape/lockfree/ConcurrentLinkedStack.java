@@ -1,7 +1,9 @@
 package grape.lockfree;
 
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * 使用 Treiber 算法的并发无锁栈<br/>
@@ -9,12 +11,20 @@ import java.util.concurrent.atomic.AtomicReference;
  * 注意:<br/>
  * <ol>
  * <li> 这里并没有处理 CAS 操作的 ABA 问题，但是并不影响正确性</li>
- * <li> 没有使用 <b>消隐(Shavit And Touitou)</b> 策略增加吞吐量，不适合作为高性能服务器关键节点</li>
+ * <li> 默认没有使用 <b>消隐(Shavit And Touitou)</b> 策略；在高并发的关键节点上，
+ * 应当通过 {@link #ConcurrentLinkedStack(int)} 开启消隐</li>
  * </ol>
  *
+ * 消隐(elimination backoff): 在 head 上 CAS 失败的 push 和 pop 不立即重试，而是到一个随机的交换槽中碰面，
+ * push 把节点放入槽中等待片刻，pop 从槽中直接取走节点，双方都不再需要访问 head。
+ * 这样竞争越激烈，被消隐的操作越多，吞吐量随线程数增长而不是在 head 上崩溃<br/>
+ * <br/>
+ * 构造时可以开启竞争统计，见 {@link #getStats()}
+ *
  * 参考资料：<br/>
  * [1] http://www.ibm.com/developerworks/cn/java/j-jtp04186/<br/>
  * [2] 钱立兵，陈波，晏涛，徐云，孟金涛，刘涛. 多线程并发访问无锁队列的算法研究[J]. 先进技术研究通报，2009，3(8)：50 - 55<br/>
+ * [3] Hendler, Shavit, Yerushalmi. A Scalable Lock-free Stack Algorithm. SPAA 2004<br/>
  *
  * @author jingqi
  */
@@ -29,23 +39,103 @@ public class ConcurrentLinkedStack <E> {
 		}
 	}
 
+	// push 在交换槽中等待 pop 的自旋次数
+	private static final int ELIMINATION_SPINS = 128;
+
 	private final AtomicInteger size = new AtomicInteger(0);
 	private AtomicReference<Node<E> > head = new AtomicReference<Node<E> >();
 
+	// 消隐用的交换槽，为 null 表示没有开启消隐
+	private final AtomicReferenceArray<Node<E> > eliminationSlots;
+
+	private final ContentionStats stats; // 未开启统计时为 null
+
+	public ConcurrentLinkedStack() {
+		this(0, false);
+	}
+
+	/**
+	 * @param eliminationWidth 消隐交换槽的个数，0 表示不使用消隐；一般取并发线程数的一半左右
+	 */
+	public ConcurrentLinkedStack(int eliminationWidth) {
+		this(eliminationWidth, false);
+	}
+
+	/**
+	 * @param eliminationWidth 消隐交换槽的个数，0 表示不使用消隐
+	 * @param recordStats 是否记录竞争统计
+	 */
+	public ConcurrentLinkedStack(int eliminationWidth, boolean recordStats) {
+		if (eliminationWidth < 0)
+			throw new IllegalArgumentException("Illegal elimination width " + eliminationWidth);
+		eliminationSlots = (eliminationWidth == 0 ? null :
+			new AtomicReferenceArray<Node<E> >(eliminationWidth));
+		stats = (recordStats ? new ContentionStats() : null);
+	}
+
+	/**
+	 * @return 竞争统计，构造时没有开启统计则返回 null
+	 */
+	public ContentionStats getStats() {
+		return stats;
+	}
+
 	/**
 	 * 压栈
 	 */
 	public void push(E item) {
 		Node<E> newHead = new Node<E>(item);
 		Node<E> oldHead;
-		do {
+		while (true) {
 			// fetch value
 			oldHead = head.get();
 			newHead.next = oldHead;
-		} while (!head.compareAndSet(oldHead, newHead)); // CAS
+			if (head.compareAndSet(oldHead, newHead)) // CAS
+				break;
+			if (stats != null)
+				stats.casFailure();
+			if (eliminationSlots != null && eliminatePush(newHead))
+				return; // 与一个 pop 相互抵消，size 不变
+			if (stats != null)
+				stats.retry();
+		}
 
 		// increase size
-		size.incrementAndGet();
+		int n = size.incrementAndGet();
+		if (stats != null)
+			stats.observeSize(n);
+	}
+
+	/**
+	 * 把节点放入随机的交换槽，等待 pop 取走
+	 *
+	 * @return true if exchanged with a pop
+	 */
+	private boolean eliminatePush(Node<E> n) {
+		int slot = ThreadLocalRandom.current().nextInt(eliminationSlots.length());
+		if (!eliminationSlots.compareAndSet(slot, null, n))
+			return false; // 槽已被其他 push 占用
+
+		for (int i = 0; i < ELIMINATION_SPINS; ++i) {
+			if (eliminationSlots.get(slot) != n)
+				return true; // 被 pop 取走
+		}
+
+		// 撤回，如果撤回失败说明刚好被 pop 取走
+		return !eliminationSlots.compareAndSet(slot, n, null);
+	}
+
+	/**
+	 * 从随机的交换槽中取走一个正在等待的 push 的节点
+	 *
+	 * @return null if no push is waiting
+	 */
+	private Node<E> eliminatePop() {
+		int slot = ThreadLocalRandom.current().nextInt(eliminationSlots.length());
+		Node<E> n = eliminationSlots.get(slot);
+		if (n != null && eliminationSlots.compareAndSet(slot, n, null))
+			return n;
+		return null;
 	}
 
 	/**
@@ -55,13 +145,27 @@ public class ConcurrentLinkedStack <E> {
 	 */
 	public E pop() {
 		Node<E> oldHead, newHead;
-		do {
+		while (true) {
 			// fetch value
 			oldHead = head.get();
-			if (oldHead == null)
+			if (oldHead == null) {
+				if (stats != null)
+					stats.emptyRejected();
 				return null;
+			}
 			newHead = oldHead.next;
-		} while (!head.compareAndSet(oldHead, newHead)); // CAS
+			if (head.compareAndSet(oldHead, newHead)) // CAS
+				break;
+			if (stats != null)
+				stats.casFailure();
+			if (eliminationSlots != null) {
+				Node<E> n = eliminatePop();
+				if (n != null)
+					return n.item; // 与一个 push 相互抵消，size 不变
+			}
+			if (stats != null)
+				stats.retry();
+		}
 
 		// decrease size
 		size.decrementAndGet();
@@ -0,0 +1,11 @@
+package grape.lockfree;
+
+/**
+ * 批量出队时用于接收元素的回调
+ *
+ * @param <T> 元素类型
+ */
+public interface Consumer <T> {
+
+	void accept(T e);
+}
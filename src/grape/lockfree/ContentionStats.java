@@ -0,0 +1,130 @@
+package grape.lockfree;
+
+/**
+ * 无锁容器的竞争与占用统计<br/>
+ * <br/>
+ * 计数器按线程分条存放(见 {@link StripedCounters})，
+ * 因此多个线程同时计数时不会互相竞争；读取时汇总为一个不可变的 {@link Snapshot}<br/>
+ * <br/>
+ * 统计是可选的：容器只有在构造时开启统计才会创建本对象，
+ * 否则只多出一次对 final 字段的 null 判断
+ */
+public class ContentionStats {
+
+	/**
+	 * 统计快照
+	 */
+	public static class Snapshot {
+
+		private final long casFailures, retries, waits, fullRejections, emptyRejections;
+		private final int peakSize;
+
+		Snapshot(long casFailures, long retries, long waits, long fullRejections,
+				long emptyRejections, int peakSize) {
+			this.casFailures = casFailures;
+			this.retries = retries;
+			this.waits = waits;
+			this.fullRejections = fullRejections;
+			this.emptyRejections = emptyRejections;
+			this.peakSize = peakSize;
+		}
+
+		/**
+		 * 失败的 CAS 操作次数
+		 */
+		public long getCasFailures() {
+			return casFailures;
+		}
+
+		/**
+		 * 操作因并发冲突而重试的次数
+		 */
+		public long getRetries() {
+			return retries;
+		}
+
+		/**
+		 * 等待的次数(自旋、让出 CPU 或者挂起)，例如生产者等待提交 maximumReadIndex
+		 */
+		public long getWaits() {
+			return waits;
+		}
+
+		/**
+		 * 因为容器已满而被拒绝的入队次数
+		 */
+		public long getFullRejections() {
+			return fullRejections;
+		}
+
+		/**
+		 * 因为容器为空而返回 null 的出队次数
+		 */
+		public long getEmptyRejections() {
+			return emptyRejections;
+		}
+
+		/**
+		 * 观察到的最大元素个数
+		 */
+		public int getPeakSize() {
+			return peakSize;
+		}
+
+		@Override
+		public String toString() {
+			return "casFailures=" + casFailures + ", retries=" + retries + ", waits=" + waits +
+					", fullRejections=" + fullRejections + ", emptyRejections=" + emptyRejections +
+					", peakSize=" + peakSize;
+		}
+	}
+
+	// 每个条带中各计数器的位置
+	private static final int CAS_FAILURES = 0, RETRIES = 1, WAITS = 2,
+			FULL_REJECTIONS = 3, EMPTY_REJECTIONS = 4, PEAK_SIZE = 5;
+
+	private final StripedCounters counters = new StripedCounters(PEAK_SIZE + 1);
+
+	void casFailure() {
+		counters.increment(CAS_FAILURES);
+	}
+
+	void retry() {
+		counters.increment(RETRIES);
+	}
+
+	void waited() {
+		counters.increment(WAITS);
+	}
+
+	void fullRejected() {
+		counters.increment(FULL_REJECTIONS);
+	}
+
+	void emptyRejected() {
+		counters.increment(EMPTY_REJECTIONS);
+	}
+
+	/**
+	 * 记录观察到的元素个数，更新本条带的峰值
+	 */
+	void observeSize(int size) {
+		counters.updateMax(PEAK_SIZE, size);
+	}
+
+	/**
+	 * 汇总所有条带
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(counters.sum(CAS_FAILURES), counters.sum(RETRIES), counters.sum(WAITS),
+				counters.sum(FULL_REJECTIONS), counters.sum(EMPTY_REJECTIONS),
+				(int) counters.max(PEAK_SIZE));
+	}
+
+	/**
+	 * 清零所有计数器，并发计数时清零结果不精确
+	 */
+	public void reset() {
+		counters.reset();
+	}
+}
@@ -0,0 +1,167 @@
+package grape.lockfree;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 元素类型为 int 的多生产者多消费者有界无锁队列<br/>
+ * <br/>
+ * 算法与 {@link MpmcArrayQueue} 相同，但是元素直接存放在 int[] 中，入队出队都不需要装箱。
+ * 由于 int 没有 null，出队接口有两种形式：
+ * <ul>
+ * <li> {@link #pop(int)} 在队列为空时返回调用者指定的哨兵值</li>
+ * <li> {@link #drain(int[], int, int)} 返回实际取出的个数，
+ * 取值范围内没有可用的哨兵值时，可以用 drain(buf, 0, 1) == 1 判断是否取到了元素</li>
+ * </ul>
+ */
+public class IntConcurrentArrayQueue {
+
+	// 环状缓存
+	private final int[] buffer;
+	private final int mask;
+
+	// 槽位序号戳：等于 t 表示可写入第 t 个元素，等于 t + 1 表示第 t 个元素可读
+	private final AtomicLongArray sequences;
+
+	// 消费者序号和生产者序号
+	private final PaddedAtomicLong head = new PaddedAtomicLong(0);
+	private final PaddedAtomicLong tail = new PaddedAtomicLong(0);
+
+	/**
+	 * @param capacity 容量，会被向上取整为 2 的幂
+	 */
+	public IntConcurrentArrayQueue(int capacity) {
+		if (capacity < 1 || capacity > AbstractArrayQueue.MAXIMUM_CAPACITY)
+			throw new IllegalArgumentException("Illegal capacity " + capacity);
+		int cap = AbstractArrayQueue.roundUpToPowerOfTwo(capacity < 2 ? 2 : capacity);
+		buffer = new int[cap];
+		mask = cap - 1;
+		sequences = new AtomicLongArray(cap);
+		for (int i = 0; i < cap; ++i)
+			sequences.lazySet(i, i);
+	}
+
+	/**
+	 * @return false if queue is full
+	 */
+	public boolean push(int e) {
+		while (true) {
+			long t = tail.get();
+			int index = (int) t & mask;
+			long diff = sequences.get(index) - t;
+			if (diff == 0) {
+				if (tail.compareAndSet(t, t + 1)) {
+					buffer[index] = e;
+					sequences.lazySet(index, t + 1); // 发布
+					return true;
+				}
+			} else if (diff < 0) {
+				return false; // 队列已满
+			}
+			// diff > 0: 其他生产者抢先了，重试
+		}
+	}
+
+	/**
+	 * @return false if queue is full or concurrent failure
+	 */
+	public boolean tryPush(int e) {
+		long t = tail.get();
+		int index = (int) t & mask;
+		if (sequences.get(index) != t)
+			return false;
+		if (!tail.compareAndSet(t, t + 1))
+			return false;
+		buffer[index] = e;
+		sequences.lazySet(index, t + 1);
+		return true;
+	}
+
+	/**
+	 * @param emptyValue 队列为空时的返回值
+	 * @return 队首元素，队列为空时返回 emptyValue
+	 */
+	public int pop(int emptyValue) {
+		while (true) {
+			long h = head.get();
+			int index = (int) h & mask;
+			long diff = sequences.get(index) - (h + 1);
+			if (diff == 0) {
+				if (head.compareAndSet(h, h + 1))
+					return take(h, index);
+			} else if (diff < 0) {
+				// 队列为空，或者生产者已经占用了槽位但还没有提交数据
+				return emptyValue;
+			}
+			// diff > 0: 其他消费者抢先了，重试
+		}
+	}
+
+	/**
+	 * @param emptyValue 队列为空或者并发冲突时的返回值
+	 */
+	public int tryPop(int emptyValue) {
+		long h = head.get();
+		int index = (int) h & mask;
+		if (sequences.get(index) != h + 1)
+			return emptyValue;
+		if (!head.compareAndSet(h, h + 1))
+			return emptyValue;
+		return take(h, index);
+	}
+
+	/**
+	 * 依次出队，放入 dst[from, to)
+	 *
+	 * @return 实际出队的元素个数，队列为空时返回 0
+	 */
+	public int drain(int[] dst, int from, int to) {
+		if (from < 0 || to > dst.length || from > to)
+			throw new IndexOutOfBoundsException("Illegal range [" + from + ", " + to + ")");
+
+		int count = 0;
+		while (from + count < to) {
+			long h = head.get();
+			int index = (int) h & mask;
+			long diff = sequences.get(index) - (h + 1);
+			if (diff == 0) {
+				if (head.compareAndSet(h, h + 1))
+					dst[from + count++] = take(h, index);
+			} else if (diff < 0) {
+				break; // 队列为空
+			}
+		}
+		return count;
+	}
+
+	// 取出数据并把槽位留给下一圈的生产者
+	private int take(long h, int index) {
+		int ret = buffer[index];
+		sequences.lazySet(index, h + buffer.length);
+		return ret;
+	}
+
+	public int size() {
+		// 先读 head 再读 tail，并发时结果只可能偏大，再截断到容量以内
+		long h = head.get();
+		long t = tail.get();
+		long ret = t - h;
+		if (ret < 0)
+			return 0;
+		if (ret > buffer.length)
+			return buffer.length;
+		return (int) ret;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public void clear() {
+		int[] tmp = new int[64];
+		while (drain(tmp, 0, tmp.length) > 0) {}
+	}
+
+	public int capacity() {
+		return buffer.length;
+	}
+}
@@ -0,0 +1,129 @@
+package grape.lockfree;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 多生产者多消费者(MPMC)的有界无锁队列<br/>
+ * <br/>
+ * 每个槽位带有一个序号戳(sequence stamp)，生产者和消费者各自只在一个计数器上 CAS，
+ * 不需要像 {@link ConcurrentArrayQueue} 那样让生产者按顺序提交 maximumReadIndex，
+ * 因而生产者之间不会互相等待
+ *
+ * 参考：
+ * http://www.1024cores.net/home/lock-free-algorithms/queues/bounded-mpmc-queue
+ *
+ * @param <T> 元素类型
+ */
+public class MpmcArrayQueue <T> extends AbstractArrayQueue<T> {
+
+	// 槽位序号戳：等于 t 表示可写入第 t 个元素，等于 t + 1 表示第 t 个元素可读
+	private final AtomicLongArray sequences;
+
+	/**
+	 * @param capacity 容量，会被向上取整为 2 的幂
+	 */
+	public MpmcArrayQueue(int capacity) {
+		super(capacity);
+		sequences = new AtomicLongArray(buffer.length);
+		for (int i = 0; i < buffer.length; ++i)
+			sequences.lazySet(i, i);
+	}
+
+	@Override
+	public boolean push(T e) {
+		while (true) {
+			long t = tail.get();
+			int index = (int) t & mask;
+			long diff = sequences.get(index) - t;
+			if (diff == 0) {
+				if (tail.compareAndSet(t, t + 1)) {
+					buffer[index] = e;
+					sequences.lazySet(index, t + 1); // 发布
+					return true;
+				}
+			} else if (diff < 0) {
+				return false; // 队列已满
+			}
+			// diff > 0: 其他生产者抢先了，重试
+		}
+	}
+
+	@Override
+	public boolean tryPush(T e) {
+		long t = tail.get();
+		int index = (int) t & mask;
+		if (sequences.get(index) != t)
+			return false;
+		if (!tail.compareAndSet(t, t + 1))
+			return false;
+		buffer[index] = e;
+		sequences.lazySet(index, t + 1);
+		return true;
+	}
+
+	@Override
+	public T pop() {
+		while (true) {
+			long h = head.get();
+			int index = (int) h & mask;
+			long diff = sequences.get(index) - (h + 1);
+			if (diff == 0) {
+				if (head.compareAndSet(h, h + 1))
+					return take(h, index);
+			} else if (diff < 0) {
+				// 队列为空，或者生产者已经占用了槽位但还没有提交数据
+				return null;
+			}
+			// diff > 0: 其他消费者抢先了，重试
+		}
+	}
+
+	@Override
+	public T tryPop() {
+		long h = head.get();
+		int index = (int) h & mask;
+		if (sequences.get(index) != h + 1)
+			return null;
+		if (!head.compareAndSet(h, h + 1))
+			return null;
+		return take(h, index);
+	}
+
+	/**
+	 * 从队首开始复制至多 limit 个已发布的元素，供 {@link BlockingArrayQueue} 遍历使用<br/>
+	 * 弱一致：复制期间被取走的元素以及还未发布的槽位都会被跳过
+	 */
+	Object[] snapshot(int limit) {
+		long h = head.get();
+		long n = tail.get() - h;
+		if (n > buffer.length)
+			n = buffer.length;
+		if (n > limit)
+			n = limit;
+		if (n <= 0)
+			return new Object[0];
+
+		Object[] ret = new Object[(int) n];
+		int k = 0;
+		for (long i = h; i < h + n; ++i) {
+			int index = (int) i & mask;
+			if (sequences.get(index) != i + 1)
+				continue; // 还未发布，或者已经被取走
+			Object e = buffer[index];
+			// 序号戳没有变化，说明读到的数据仍然在队列中
+			if (e != null && sequences.get(index) == i + 1)
+				ret[k++] = e;
+		}
+		return k == ret.length ? ret : Arrays.copyOf(ret, k);
+	}
+
+	// 取出数据并把槽位留给下一圈的生产者
+	private T take(long h, int index) {
+		@SuppressWarnings("unchecked")
+		T ret = (T) buffer[index];
+		buffer[index] = null; // 清理残余的引用
+		sequences.lazySet(index, h + buffer.length);
+		return ret;
+	}
+}
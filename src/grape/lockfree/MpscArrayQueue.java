@@ -0,0 +1,85 @@
+package grape.lockfree;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 多生产者单消费者(MPSC)的有界无锁队列<br/>
+ * <br/>
+ * 生产者的算法与 {@link MpmcArrayQueue} 相同；消费者只有一个，因此出队不需要 CAS<br/>
+ * <br/>
+ * 注意: pop()/tryPop()/clear() 只能在同一个消费者线程中调用
+ *
+ * @param <T> 元素类型
+ */
+public class MpscArrayQueue <T> extends AbstractArrayQueue<T> {
+
+	// 槽位序号戳：等于 t 表示可写入第 t 个元素，等于 t + 1 表示第 t 个元素可读
+	private final AtomicLongArray sequences;
+
+	/**
+	 * @param capacity 容量，会被向上取整为 2 的幂
+	 */
+	public MpscArrayQueue(int capacity) {
+		super(capacity);
+		sequences = new AtomicLongArray(buffer.length);
+		for (int i = 0; i < buffer.length; ++i)
+			sequences.lazySet(i, i);
+	}
+
+	@Override
+	public boolean push(T e) {
+		while (true) {
+			long t = tail.get();
+			int index = (int) t & mask;
+			long diff = sequences.get(index) - t;
+			if (diff == 0) {
+				if (tail.compareAndSet(t, t + 1)) {
+					buffer[index] = e;
+					sequences.lazySet(index, t + 1); // 发布
+					return true;
+				}
+			} else if (diff < 0) {
+				return false; // 队列已满
+			}
+		}
+	}
+
+	@Override
+	public boolean tryPush(T e) {
+		long t = tail.get();
+		int index = (int) t & mask;
+		if (sequences.get(index) != t)
+			return false;
+		if (!tail.compareAndSet(t, t + 1))
+			return false;
+		buffer[index] = e;
+		sequences.lazySet(index, t + 1);
+		return true;
+	}
+
+	/**
+	 * 只能在消费者线程中调用
+	 */
+	@Override
+	public T pop() {
+		long h = head.get();
+		int index = (int) h & mask;
+		if (sequences.get(index) != h + 1)
+			return null; // 队列为空，或者生产者还没有提交数据
+
+		@SuppressWarnings("unchecked")
+		T ret = (T) buffer[index];
+		buffer[index] = null; // 清理残余的引用
+		sequences.lazySet(index, h + buffer.length);
+		head.lazySet(h + 1);
+		return ret;
+	}
+
+	/**
+	 * 单消费者不存在并发冲突，等同于 {@link #pop()}
+	 */
+	@Override
+	public T tryPop() {
+		return pop();
+	}
+}
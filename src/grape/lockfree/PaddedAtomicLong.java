@@ -0,0 +1,22 @@
+package grape.lockfree;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 填充到独占缓存行的 {@link AtomicLong}，避免生产者和消费者的计数器之间的伪共享(false sharing)
+ */
+@SuppressWarnings("serial")
+class PaddedAtomicLong extends AtomicLong {
+
+	/**
+	 * 拥有者线程私有的缓存值(例如生产者缓存的消费者序号)，只能由拥有者线程读写
+	 */
+	long cached;
+
+	// 填充字段，使得相邻对象的热点数据不会落在同一缓存行上
+	long p1, p2, p3, p4, p5, p6;
+
+	PaddedAtomicLong(long initialValue) {
+		super(initialValue);
+	}
+}
@@ -0,0 +1,76 @@
+package grape.lockfree;
+
+/**
+ * 单生产者单消费者(SPSC)的有界无锁队列<br/>
+ * <br/>
+ * 生产者和消费者各自独占一个计数器，不需要任何 CAS 操作和槽位序号戳；
+ * 双方各自缓存对方的计数器，只有在缓存值显示队列满/空时才重新读取，减少缓存行的来回传递<br/>
+ * <br/>
+ * 注意: push()/tryPush() 只能在同一个生产者线程中调用，
+ * pop()/tryPop()/clear() 只能在同一个消费者线程中调用
+ *
+ * 参考：
+ * Lamport's circular buffer; FastFlow SPSC queue
+ *
+ * @param <T> 元素类型
+ */
+public class SpscArrayQueue <T> extends AbstractArrayQueue<T> {
+
+	/**
+	 * @param capacity 容量，会被向上取整为 2 的幂
+	 */
+	public SpscArrayQueue(int capacity) {
+		super(capacity);
+	}
+
+	/**
+	 * 只能在生产者线程中调用
+	 */
+	@Override
+	public boolean push(T e) {
+		long t = tail.get();
+		if (t - tail.cached >= buffer.length) {
+			tail.cached = head.get(); // 生产者缓存的消费者序号
+			if (t - tail.cached >= buffer.length)
+				return false; // 队列已满
+		}
+		buffer[(int) t & mask] = e;
+		tail.lazySet(t + 1); // 发布
+		return true;
+	}
+
+	/**
+	 * 单生产者不存在并发冲突，等同于 {@link #push(Object)}
+	 */
+	@Override
+	public boolean tryPush(T e) {
+		return push(e);
+	}
+
+	/**
+	 * 只能在消费者线程中调用
+	 */
+	@Override
+	public T pop() {
+		long h = head.get();
+		if (h >= head.cached) {
+			head.cached = tail.get(); // 消费者缓存的生产者序号
+			if (h >= head.cached)
+				return null; // 队列为空
+		}
+		int index = (int) h & mask;
+		@SuppressWarnings("unchecked")
+		T ret = (T) buffer[index];
+		buffer[index] = null; // 清理残余的引用
+		head.lazySet(h + 1);
+		return ret;
+	}
+
+	/**
+	 * 单消费者不存在并发冲突，等同于 {@link #pop()}
+	 */
+	@Override
+	public T tryPop() {
+		return pop();
+	}
+}
@@ -0,0 +1,101 @@
+package grape.lockfree;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按线程分条(striped)存放的一组 long 计数器，供各种统计类使用<br/>
+ * <br/>
+ * 每个条带存放一整组计数器，并按缓存行对齐，多个线程同时计数时不会互相竞争；
+ * 线程按 id 的散列选择条带。读取时把所有条带汇总，与并发的计数之间没有原子性
+ */
+public class StripedCounters {
+
+	// 最大条带数
+	private static final int MAX_STRIPES = 64;
+
+	// 一个缓存行能放下的 long 个数
+	private static final int LONGS_PER_CACHE_LINE = 8;
+
+	private final AtomicLongArray counters;
+	private final int stripeShift, stripeMask;
+
+	/**
+	 * @param counters 每个条带中的计数器个数
+	 */
+	public StripedCounters(int counters) {
+		if (counters < 1)
+			throw new IllegalArgumentException("Illegal counters " + counters);
+		int width = AbstractArrayQueue.roundUpToPowerOfTwo(
+				counters < LONGS_PER_CACHE_LINE ? LONGS_PER_CACHE_LINE : counters);
+		int n = Runtime.getRuntime().availableProcessors() * 2;
+		int stripes = AbstractArrayQueue.roundUpToPowerOfTwo(n < MAX_STRIPES ? n : MAX_STRIPES);
+		stripeShift = Integer.numberOfTrailingZeros(width);
+		stripeMask = stripes - 1;
+		this.counters = new AtomicLongArray(stripes << stripeShift);
+	}
+
+	/**
+	 * 当前线程所在条带的起始位置；一次记录多个计数器时可以只计算一次
+	 */
+	public int stripe() {
+		long id = Thread.currentThread().getId();
+		int h = (int) (id ^ (id >>> 32));
+		h ^= (h >>> 16);
+		return (h & stripeMask) << stripeShift;
+	}
+
+	public void increment(int counter) {
+		counters.getAndIncrement(stripe() + counter);
+	}
+
+	public void add(int counter, long delta) {
+		counters.getAndAdd(stripe() + counter, delta);
+	}
+
+	/**
+	 * @param stripe {@link #stripe()} 的返回值
+	 */
+	public void add(int stripe, int counter, long delta) {
+		counters.getAndAdd(stripe + counter, delta);
+	}
+
+	/**
+	 * 把当前线程条带中的计数器更新为它与 value 的较大值，用于记录峰值
+	 */
+	public void updateMax(int counter, long value) {
+		int i = stripe() + counter;
+		long cur;
+		while (value > (cur = counters.get(i))) {
+			if (counters.compareAndSet(i, cur, value))
+				return;
+		}
+	}
+
+	/**
+	 * 所有条带中该计数器的和
+	 */
+	public long sum(int counter) {
+		long ret = 0;
+		for (int base = 0, len = counters.length(); base < len; base += 1 << stripeShift)
+			ret += counters.get(base + counter);
+		return ret;
+	}
+
+	/**
+	 * 所有条带中该计数器的最大值，与 {@link #updateMax(int, long)} 配合使用
+	 */
+	public long max(int counter) {
+		long ret = 0;
+		for (int base = 0, len = counters.length(); base < len; base += 1 << stripeShift)
+			ret = Math.max(ret, counters.get(base + counter));
+		return ret;
+	}
+
+	/**
+	 * 清零所有计数器
+	 */
+	public void reset() {
+		for (int i = 0, len = counters.length(); i < len; ++i)
+			counters.set(i, 0);
+	}
+}
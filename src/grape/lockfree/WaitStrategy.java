@@ -0,0 +1,111 @@
+package grape.lockfree;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 等待策略，决定线程在队列满/空等条件不满足时如何等待<br/>
+ * <br/>
+ * 调用方在每次条件不满足时调用 {@link #idle(int)}，并把返回值作为下一次调用的参数；
+ * 一旦取得进展，计数器应当重置为 0。策略本身是无状态的，可以被多个线程、多个队列共享<br/>
+ * <br/>
+ * <ul>
+ * <li>{@link #busySpin()} 延迟最低，但一直占用 CPU，只适合线程数不超过核数的关键路径</li>
+ * <li>{@link #spinThenYield(int)} 先自旋再让出 CPU</li>
+ * <li>{@link #spinThenPark(int, int, long)} 先自旋，再让出 CPU，最后用 {@link LockSupport} 挂起</li>
+ * <li>{@link #timedPark(long, long)} 不自旋，直接以指数退避的时长挂起，适合后台队列；
+ * 由于不持有监视器锁，也适合虚拟线程(挂起时会让出载体线程)</li>
+ * </ul>
+ */
+public abstract class WaitStrategy {
+
+	/**
+	 * 等待一次
+	 *
+	 * @param counter 已经连续等待的次数，初始为 0
+	 * @return 下一次调用时使用的 counter
+	 */
+	public abstract int idle(int counter);
+
+	public static WaitStrategy busySpin() {
+		return BUSY_SPIN;
+	}
+
+	public static WaitStrategy spinThenYield(int spins) {
+		return new SpinThenPark(spins, 0, 0);
+	}
+
+	public static WaitStrategy spinThenPark(int spins, int yields, long parkNanos) {
+		return new SpinThenPark(spins, yields, parkNanos);
+	}
+
+	public static WaitStrategy timedPark(long minParkNanos, long maxParkNanos) {
+		return new TimedPark(minParkNanos, maxParkNanos);
+	}
+
+	private static final WaitStrategy BUSY_SPIN = new WaitStrategy() {
+		@Override
+		public int idle(int counter) {
+			return counter;
+		}
+	};
+
+	private static class SpinThenPark extends WaitStrategy {
+
+		private final int spins, yields;
+		private final long parkNanos;
+
+		/**
+		 * @param parkNanos 为 0 表示不挂起，一直让出 CPU
+		 */
+		SpinThenPark(int spins, int yields, long parkNanos) {
+			if (spins < 0 || yields < 0 || parkNanos < 0)
+				throw new IllegalArgumentException();
+			this.spins = spins;
+			this.yields = yields;
+			this.parkNanos = parkNanos;
+		}
+
+		@Override
+		public int idle(int counter) {
+			if (counter < spins)
+				return counter + 1; // 自旋
+
+			if (counter - spins < yields) {
+				Thread.yield();
+				return counter + 1;
+			}
+
+			// parkNanos 为 0 时一直让出 CPU
+			if (parkNanos > 0)
+				LockSupport.parkNanos(parkNanos);
+			else
+				Thread.yield();
+			return counter; // 不再增长，避免溢出
+		}
+	}
+
+	private static class TimedPark extends WaitStrategy {
+
+		// 指数退避的最大位移，避免 long 溢出
+		private static final int MAX_SHIFT = 30;
+
+		private final long minParkNanos, maxParkNanos;
+
+		TimedPark(long minParkNanos, long maxParkNanos) {
+			if (minParkNanos <= 0 || maxParkNanos < minParkNanos)
+				throw new IllegalArgumentException();
+			this.minParkNanos = minParkNanos;
+			this.maxParkNanos = maxParkNanos;
+		}
+
+		@Override
+		public int idle(int counter) {
+			int shift = counter < 0 ? 0 : (counter < MAX_SHIFT ? counter : MAX_SHIFT);
+			long nanos = minParkNanos << shift;
+			if (nanos > maxParkNanos || nanos <= 0)
+				nanos = maxParkNanos;
+			LockSupport.parkNanos(nanos);
+			return nanos == maxParkNanos ? counter : counter + 1;
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package grape.lockfree;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Chase-Lev 工作窃取双端队列<br/>
+ * <br/>
+ * 拥有者线程在底部 push()/pop()，表现为栈(LIFO)；其他线程在顶部 steal()，表现为队列(FIFO)。
+ * 拥有者的操作只有在队列中只剩一个元素时才需要 CAS；数组不够时由拥有者扩容<br/>
+ * <br/>
+ * 注意:<br/>
+ * <ol>
+ * <li> push()/pop() 只能在同一个拥有者线程中调用，steal() 可以在任意线程中调用</li>
+ * <li> 不允许 null 元素，null 用于表示队列为空或者窃取失败</li>
+ * <li> 被窃取的元素的引用会残留在数组中，直到该位置被再次写入</li>
+ * </ol>
+ *
+ * 参考资料：<br/>
+ * [1] Chase, Lev. Dynamic Circular Work-Stealing Deque. SPAA 2005<br/>
+ * [2] Lê, Pop, Cohen, Zappa Nardelli. Correct and Efficient Work-Stealing for Weak Memory Models. PPoPP 2013<br/>
+ *
+ * @param <E> 元素类型
+ */
+public class WorkStealingDeque <E> {
+
+	// 默认初始容量，必须是 2 的幂
+	private static final int DEFAULT_INITIAL_CAPACITY = 32;
+
+	// 窃取端
+	private final PaddedAtomicLong top = new PaddedAtomicLong(0);
+	// 拥有者端，只有拥有者写入
+	private final PaddedAtomicLong bottom = new PaddedAtomicLong(0);
+	private volatile AtomicReferenceArray<E> array;
+
+	public WorkStealingDeque() {
+		this(DEFAULT_INITIAL_CAPACITY);
+	}
+
+	/**
+	 * @param initialCapacity 初始容量，会被向上取整为 2 的幂
+	 */
+	public WorkStealingDeque(int initialCapacity) {
+		if (initialCapacity < 1 || initialCapacity > AbstractArrayQueue.MAXIMUM_CAPACITY)
+			throw new IllegalArgumentException("Illegal capacity " + initialCapacity);
+		array = new AtomicReferenceArray<E>(AbstractArrayQueue.roundUpToPowerOfTwo(initialCapacity));
+	}
+
+	/**
+	 * 压入底部，只能在拥有者线程中调用
+	 */
+	public void push(E e) {
+		if (e == null)
+			throw new NullPointerException();
+
+		long b = bottom.get();
+		long t = top.get();
+		AtomicReferenceArray<E> a = array;
+		if (b - t >= a.length())
+			a = grow(a, t, b);
+		a.lazySet((int) b & (a.length() - 1), e);
+		bottom.lazySet(b + 1); // 发布
+	}
+
+	/**
+	 * 从底部弹出，只能在拥有者线程中调用
+	 *
+	 * @return null if empty
+	 */
+	public E pop() {
+		long b = bottom.get() - 1;
+		AtomicReferenceArray<E> a = array;
+		bottom.set(b); // volatile 写，保证与之后读取 top 的顺序
+		long t = top.get();
+		if (t > b) {
+			// 空队列
+			bottom.lazySet(b + 1);
+			return null;
+		}
+
+		int index = (int) b & (a.length() - 1);
+		E ret = a.get(index);
+		if (t == b) {
+			// 最后一个元素，与窃取者竞争
+			if (!top.compareAndSet(t, t + 1))
+				ret = null; // 被窃取了
+			bottom.lazySet(b + 1);
+		}
+		if (ret != null)
+			a.lazySet(index, null); // 清理残余的引用，窃取者不会再访问这个位置
+		return ret;
+	}
+
+	/**
+	 * 从顶部窃取，可以在任意线程中调用
+	 *
+	 * @return null if empty or concurrent failure
+	 */
+	public E steal() {
+		long t = top.get();
+		long b = bottom.get();
+		if (t >= b)
+			return null;
+
+		AtomicReferenceArray<E> a = array;
+		E ret = a.get((int) t & (a.length() - 1));
+		if (!top.compareAndSet(t, t + 1))
+			return null; // 与拥有者或其他窃取者竞争失败
+		return ret;
+	}
+
+	public int size() {
+		long ret = bottom.get() - top.get();
+		if (ret < 0)
+			return 0;
+		return (int) ret;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	// 扩容为两倍，旧数组保持不变，正在窃取的线程仍然可以从中读取
+	private AtomicReferenceArray<E> grow(AtomicReferenceArray<E> a, long t, long b) {
+		if (a.length() >= AbstractArrayQueue.MAXIMUM_CAPACITY)
+			throw new IllegalStateException("Deque too large");
+
+		AtomicReferenceArray<E> na = new AtomicReferenceArray<E>(a.length() * 2);
+		for (long i = t; i < b; ++i)
+			na.lazySet((int) i & (na.length() - 1), a.get((int) i & (a.length() - 1)));
+		array = na;
+		return na;
+	}
+}
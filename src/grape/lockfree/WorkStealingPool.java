@@ -0,0 +1,238 @@
+package grape.lockfree;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 基于 {@link WorkStealingDeque} 的 fork-join 风格线程池，适合大量细粒度的任务<br/>
+ * <br/>
+ * 每个工作线程拥有一个工作窃取队列：在工作线程中 fork() 的任务压入自己的队列，
+ * 外部提交的任务进入共享的提交队列；工作线程先处理自己的队列，然后是提交队列，最后随机窃取其他线程的任务。
+ * join() 在等待期间会执行其他任务，而不是阻塞工作线程<br/>
+ * <br/>
+ * 用法:<br/>
+ * <code>
+ * class Fib extends WorkStealingPool.Task { ... compute() { f1.fork(); f2.compute(); f1.join(); ... } }<br/>
+ * pool.invoke(new Fib(30));
+ * </code>
+ */
+public class WorkStealingPool implements Executor {
+
+	/**
+	 * 可以 fork()/join() 的任务
+	 */
+	public static abstract class Task implements Runnable {
+
+		// 外部线程 join() 时使用的等待策略
+		private static final WaitStrategy EXTERNAL_WAIT_STRATEGY = WaitStrategy.timedPark(1000, 1000000);
+
+		private volatile boolean done = false;
+		private Throwable exception;
+
+		/**
+		 * 任务的执行体
+		 */
+		protected abstract void compute();
+
+		/**
+		 * 把任务压入当前工作线程的队列，只能在工作线程中调用
+		 */
+		public final void fork() {
+			Thread t = Thread.currentThread();
+			if (!(t instanceof Worker))
+				throw new IllegalStateException("fork() outside of WorkStealingPool");
+			((Worker) t).deque.push(this);
+		}
+
+		/**
+		 * 等待任务完成；在工作线程中等待时会帮忙执行其他任务
+		 *
+		 * @throws RuntimeException 任务执行时抛出的异常
+		 */
+		public final void join() {
+			Thread t = Thread.currentThread();
+			if (t instanceof Worker) {
+				Worker w = (Worker) t;
+				int counter = 0;
+				while (!done) {
+					Task task = w.findTask();
+					if (task != null) {
+						task.run();
+						counter = 0;
+					} else {
+						counter = w.pool.waitStrategy.idle(counter);
+					}
+				}
+			} else {
+				int counter = 0;
+				while (!done)
+					counter = EXTERNAL_WAIT_STRATEGY.idle(counter);
+			}
+			reportException();
+		}
+
+		public final boolean isDone() {
+			return done;
+		}
+
+		/**
+		 * 执行任务，由线程池调用
+		 */
+		@Override
+		public final void run() {
+			try {
+				compute();
+			} catch (Throwable e) {
+				exception = e;
+			}
+			done = true;
+		}
+
+		private void reportException() {
+			Throwable e = exception;
+			if (e == null)
+				return;
+			if (e instanceof RuntimeException)
+				throw (RuntimeException) e;
+			if (e instanceof Error)
+				throw (Error) e;
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static class Worker extends Thread {
+
+		final WorkStealingPool pool;
+		final WorkStealingDeque<Task> deque = new WorkStealingDeque<Task>();
+
+		Worker(WorkStealingPool pool, int id) {
+			super("WorkStealingPool-worker-" + id);
+			this.pool = pool;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			int counter = 0;
+			while (!pool.shutdown) {
+				Task task = findTask();
+				if (task != null) {
+					task.run();
+					counter = 0;
+				} else {
+					counter = pool.waitStrategy.idle(counter);
+				}
+			}
+		}
+
+		// 依次从自己的队列、提交队列、其他线程的队列中获取任务
+		Task findTask() {
+			Task ret = deque.pop();
+			if (ret != null)
+				return ret;
+			ret = pool.submissions.pop();
+			if (ret != null)
+				return ret;
+
+			Worker[] ws = pool.workers;
+			if (ws.length < 2)
+				return null;
+			int start = ThreadLocalRandom.current().nextInt(ws.length);
+			for (int i = 0; i < ws.length; ++i) {
+				Worker victim = ws[(start + i) % ws.length];
+				if (victim == this)
+					continue;
+				ret = victim.deque.steal();
+				if (ret != null)
+					return ret;
+			}
+			return null;
+		}
+	}
+
+	private final Worker[] workers;
+	private final ConcurrentLinkedArrayQueue<Task> submissions = new ConcurrentLinkedArrayQueue<Task>();
+	private final WaitStrategy waitStrategy;
+	private volatile boolean shutdown = false;
+
+	public WorkStealingPool() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public WorkStealingPool(int parallelism) {
+		this(parallelism, WaitStrategy.spinThenPark(64, 16, 100000));
+	}
+
+	/**
+	 * @param waitStrategy 空闲的工作线程使用的等待策略
+	 */
+	public WorkStealingPool(int parallelism, WaitStrategy waitStrategy) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Illegal parallelism " + parallelism);
+		if (waitStrategy == null)
+			throw new NullPointerException();
+
+		this.waitStrategy = waitStrategy;
+		workers = new Worker[parallelism];
+		for (int i = 0; i < parallelism; ++i)
+			workers[i] = new Worker(this, i);
+		for (int i = 0; i < parallelism; ++i)
+			workers[i].start();
+	}
+
+	/**
+	 * 提交任务
+	 */
+	public void submit(Task task) {
+		if (task == null)
+			throw new NullPointerException();
+		if (shutdown)
+			throw new IllegalStateException("Pool is shutdown");
+
+		Thread t = Thread.currentThread();
+		if (t instanceof Worker && ((Worker) t).pool == this)
+			((Worker) t).deque.push(task);
+		else
+			submissions.push(task);
+	}
+
+	/**
+	 * 提交任务并等待其完成
+	 */
+	public void invoke(Task task) {
+		Thread t = Thread.currentThread();
+		if (t instanceof Worker && ((Worker) t).pool == this) {
+			task.run();
+			task.reportException();
+		} else {
+			submit(task);
+			task.join();
+		}
+	}
+
+	/**
+	 * 以 {@link Executor} 的方式提交任务，任务抛出的异常会被忽略
+	 */
+	@Override
+	public void execute(final Runnable command) {
+		if (command == null)
+			throw new NullPointerException();
+		submit(new Task() {
+			@Override
+			protected void compute() {
+				command.run();
+			}
+		});
+	}
+
+	public int getParallelism() {
+		return workers.length;
+	}
+
+	/**
+	 * 停止工作线程，尚未执行的任务将被丢弃
+	 */
+	public void shutdown() {
+		shutdown = true;
+	}
+}
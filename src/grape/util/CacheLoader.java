@@ -0,0 +1,25 @@
+package grape.util;
+
+/**
+ * 缓存未命中时加载数据，见 {@link MRUCache#get(Object, CacheLoader)}
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public abstract class CacheLoader <K,V> {
+
+	/**
+	 * 加载数据，在调用线程或者指定的 Executor 中执行，执行时不持有缓存的锁<br/>
+	 * 不能在这里递归地加载同一个 key，否则抛出 IllegalStateException
+	 *
+	 * @return 不能为 null
+	 */
+	public abstract V load(K key) throws Exception;
+
+	/**
+	 * 加载的数据放入缓存时被挤出的数据，相当于 {@link MRUCache#put(Object, Object)} 的返回值，
+	 * 可以覆盖本方法把它放回对象池；默认直接丢弃。在加载线程中调用，调用时不持有缓存的锁
+	 */
+	public void evicted(V value) {
+	}
+}
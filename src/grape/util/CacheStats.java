@@ -0,0 +1,269 @@
+package grape.util;
+
+import grape.lockfree.StripedCounters;
+
+/**
+ * 缓存的统计<br/>
+ * <br/>
+ * 计数器按线程分条存放(见 {@link StripedCounters})，{@link ConcurrentMRUCache} 的各段共享一份统计时不会在计数器上互相竞争；
+ * 读取时汇总为一个不可变的 {@link Snapshot}。两个快照相减得到一段时间内的统计，
+ * 可以据此观察最近一段时间的命中率，调整容量<br/>
+ * <br/>
+ * 淘汰年龄(淘汰时距离最后一次写入的时间)和加载时间另外记录为直方图，
+ * 第 i 个格子统计 [{@link #bucketLowerBound(int)}, {@link #bucketUpperBound(int)}) 纳秒内的次数，
+ * 格子的边界从 1 微秒开始按 4 倍递增
+ */
+public class CacheStats {
+
+	/**
+	 * 统计快照
+	 */
+	public static class Snapshot {
+
+		private final long[] counters; // 一个条带的布局
+
+		Snapshot(long[] counters) {
+			this.counters = counters;
+		}
+
+		/**
+		 * 命中的次数
+		 */
+		public long getHits() {
+			return counters[HITS];
+		}
+
+		/**
+		 * 未命中的次数
+		 */
+		public long getMisses() {
+			return counters[MISSES];
+		}
+
+		/**
+		 * 查询的次数
+		 */
+		public long getRequests() {
+			return counters[HITS] + counters[MISSES];
+		}
+
+		/**
+		 * 命中率，没有查询过时返回 0
+		 */
+		public double getHitRatio() {
+			long requests = getRequests();
+			return requests == 0 ? 0 : (double) counters[HITS] / requests;
+		}
+
+		/**
+		 * 添加和更新的次数
+		 */
+		public long getPuts() {
+			return counters[PUTS];
+		}
+
+		/**
+		 * 因为容量、权重或者准入策略被淘汰的数据个数，不包括过期的数据
+		 */
+		public long getEvictions() {
+			return counters[EVICTIONS];
+		}
+
+		/**
+		 * 过期被删除的数据个数
+		 */
+		public long getExpirations() {
+			return counters[EXPIRATIONS];
+		}
+
+		/**
+		 * 显式删除的数据个数
+		 */
+		public long getRemoves() {
+			return counters[REMOVES];
+		}
+
+		/**
+		 * 被淘汰的数据的平均年龄，纳秒；没有淘汰过时返回 0
+		 */
+		public double getAverageEvictionAge() {
+			long n = 0; // 年龄已知的淘汰次数
+			for (int i = 0; i < HISTOGRAM_BUCKETS; ++i)
+				n += counters[EVICTION_AGE_HISTOGRAM + i];
+			return n == 0 ? 0 : (double) counters[EVICTION_AGE] / n;
+		}
+
+		/**
+		 * 淘汰年龄的直方图
+		 */
+		public long[] getEvictionAgeHistogram() {
+			return histogram(EVICTION_AGE_HISTOGRAM);
+		}
+
+		/**
+		 * 加载成功的次数
+		 */
+		public long getLoadSuccesses() {
+			return counters[LOAD_SUCCESSES];
+		}
+
+		/**
+		 * 加载失败的次数
+		 */
+		public long getLoadFailures() {
+			return counters[LOAD_FAILURES];
+		}
+
+		/**
+		 * 加载的总时间，纳秒
+		 */
+		public long getTotalLoadTime() {
+			return counters[LOAD_TIME];
+		}
+
+		/**
+		 * 平均每次加载的时间，纳秒；没有加载过时返回 0
+		 */
+		public double getAverageLoadPenalty() {
+			long n = counters[LOAD_SUCCESSES] + counters[LOAD_FAILURES];
+			return n == 0 ? 0 : (double) counters[LOAD_TIME] / n;
+		}
+
+		/**
+		 * 加载时间的直方图
+		 */
+		public long[] getLoadTimeHistogram() {
+			return histogram(LOAD_TIME_HISTOGRAM);
+		}
+
+		private long[] histogram(int offset) {
+			long[] ret = new long[HISTOGRAM_BUCKETS];
+			System.arraycopy(counters, offset, ret, 0, HISTOGRAM_BUCKETS);
+			return ret;
+		}
+
+		/**
+		 * 两个快照之间的统计，即最近一段时间的统计
+		 *
+		 * @param earlier 较早的快照
+		 */
+		public Snapshot minus(Snapshot earlier) {
+			long[] c = new long[counters.length];
+			for (int i = 0; i < c.length; ++i)
+				c[i] = Math.max(0, counters[i] - earlier.counters[i]);
+			return new Snapshot(c);
+		}
+
+		/**
+		 * 从较早的快照到这个快照之间的命中率
+		 */
+		public double hitRatioSince(Snapshot earlier) {
+			return minus(earlier).getHitRatio();
+		}
+
+		@Override
+		public String toString() {
+			return "hits=" + getHits() + ", misses=" + getMisses() + ", hitRatio=" + getHitRatio() +
+					", puts=" + getPuts() + ", evictions=" + getEvictions() +
+					", expirations=" + getExpirations() + ", removes=" + getRemoves() +
+					", loadSuccesses=" + getLoadSuccesses() + ", loadFailures=" + getLoadFailures() +
+					", averageLoadPenalty=" + getAverageLoadPenalty();
+		}
+	}
+
+	/**
+	 * 直方图的格子数
+	 */
+	public static final int HISTOGRAM_BUCKETS = 16;
+
+	// 第一个格子的上界：1024 纳秒
+	private static final int FIRST_BUCKET_SHIFT = 10;
+
+	// 每个条带中各计数器的位置
+	private static final int HITS = 0, MISSES = 1, PUTS = 2, EVICTIONS = 3, EXPIRATIONS = 4,
+			REMOVES = 5, EVICTION_AGE = 6, LOAD_SUCCESSES = 7, LOAD_FAILURES = 8, LOAD_TIME = 9,
+			EVICTION_AGE_HISTOGRAM = 16, LOAD_TIME_HISTOGRAM = EVICTION_AGE_HISTOGRAM + HISTOGRAM_BUCKETS,
+			COUNTERS = LOAD_TIME_HISTOGRAM + HISTOGRAM_BUCKETS;
+
+	private final StripedCounters counters = new StripedCounters(COUNTERS);
+
+	/**
+	 * 第 i 个直方图格子的下界，纳秒
+	 */
+	public static long bucketLowerBound(int i) {
+		return i == 0 ? 0 : 1L << (FIRST_BUCKET_SHIFT + 2 * (i - 1));
+	}
+
+	/**
+	 * 第 i 个直方图格子的上界(不包括)，纳秒；最后一个格子没有上界
+	 */
+	public static long bucketUpperBound(int i) {
+		return i == HISTOGRAM_BUCKETS - 1 ? Long.MAX_VALUE : 1L << (FIRST_BUCKET_SHIFT + 2 * i);
+	}
+
+	private static int bucketOf(long nanos) {
+		if (nanos <= 0)
+			return 0;
+		int bits = 64 - Long.numberOfLeadingZeros(nanos >>> FIRST_BUCKET_SHIFT);
+		return Math.min((bits + 1) >>> 1, HISTOGRAM_BUCKETS - 1);
+	}
+
+	void hit() {
+		counters.increment(HITS);
+	}
+
+	void miss() {
+		counters.increment(MISSES);
+	}
+
+	void put() {
+		counters.increment(PUTS);
+	}
+
+	void removed() {
+		counters.increment(REMOVES);
+	}
+
+	void expired() {
+		counters.increment(EXPIRATIONS);
+	}
+
+	/**
+	 * @param age 距离最后一次写入的时间，纳秒；负数表示未知(写入时还没有开启统计)
+	 */
+	void evicted(long age) {
+		int stripe = counters.stripe();
+		counters.add(stripe, EVICTIONS, 1);
+		if (age < 0)
+			return;
+		counters.add(stripe, EVICTION_AGE, age);
+		counters.add(stripe, EVICTION_AGE_HISTOGRAM + bucketOf(age), 1);
+	}
+
+	/**
+	 * @param nanos 加载所用的时间
+	 */
+	void loaded(boolean success, long nanos) {
+		int stripe = counters.stripe();
+		counters.add(stripe, success ? LOAD_SUCCESSES : LOAD_FAILURES, 1);
+		counters.add(stripe, LOAD_TIME, Math.max(nanos, 0));
+		counters.add(stripe, LOAD_TIME_HISTOGRAM + bucketOf(nanos), 1);
+	}
+
+	/**
+	 * 汇总各条带，得到统计快照
+	 */
+	public Snapshot snapshot() {
+		long[] c = new long[COUNTERS];
+		for (int i = 0; i < COUNTERS; ++i)
+			c[i] = counters.sum(i);
+		return new Snapshot(c);
+	}
+
+	/**
+	 * 清零所有计数器，与并发的记录之间没有原子性
+	 */
+	public void reset() {
+		counters.reset();
+	}
+}
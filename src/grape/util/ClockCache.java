@@ -0,0 +1,191 @@
+package grape.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * CLOCK(second-chance) 淘汰的缓存，命中时不加锁<br/>
+ * <br/>
+ * {@link MRUCache} 每次命中都要在监视器内调整链表，只读的访问也会写共享的内存。
+ * 这里的数据放在一个环形数组中，命中时只设置数据的访问标记(已设置时不再写)，不移动任何东西；
+ * 需要淘汰时，指针沿着环转动，清除遇到的访问标记，淘汰第一个没有访问标记的数据。
+ * 只有插入新数据和删除时需要加锁，读多写少时 get() 之间没有锁竞争，也很少有缓存行的来回迁移<br/>
+ * <br/>
+ * 淘汰顺序是 LRU 的近似；更新已有数据的值也不需要加锁。
+ * 数据被淘汰或删除时，其值被原子地替换为 {@link #DEAD}：
+ * 与之并发的无锁更新要么先完成(新值交给淘汰方返回)，要么看到 DEAD 后改走加锁的插入，
+ * 因此不会丢失写入的值
+ *
+ * 参考资料：<br/>
+ * [1] Corbató. A Paging Experiment with the Multics System. 1968<br/>
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public class ClockCache <K,V> {
+
+	// 值保存在父类中，可以 CAS
+	@SuppressWarnings("serial")
+	private static class Entry <K> extends AtomicReference<Object> {
+		final K key;
+		volatile boolean referenced = false;
+		final int slot;
+
+		Entry(K k, Object v, int slot) {
+			super(v);
+			key = k;
+			this.slot = slot;
+		}
+	}
+
+	// 已被淘汰或删除的数据的值
+	private static final Object DEAD = new Object();
+
+	// 默认容量
+	private static final int DEFAULT_CAPACITY = 50;
+
+	private final ConcurrentHashMap<K, Entry<K> > map;
+	private final Entry<K>[] ring;
+	private final int[] freeSlots; // 空闲槽位栈，只在加锁时访问
+	private int freeCount;
+	private int hand = 0; // 只在加锁时访问
+
+	public ClockCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public ClockCache(int cap) {
+		if (cap < 1)
+			throw new IllegalArgumentException();
+
+		map = new ConcurrentHashMap<K, Entry<K> >(cap * 4 / 3 + 1);
+		ring = (Entry<K>[]) new Entry[cap];
+		freeSlots = new int[cap];
+		resetFreeSlots();
+	}
+
+	private void resetFreeSlots() {
+		freeCount = ring.length;
+		for (int i = 0; i < freeCount; ++i)
+			freeSlots[i] = freeCount - 1 - i;
+	}
+
+	/**
+	 * 从缓存中获取值，不加锁
+	 *
+	 * @return null if miss
+	 * 		Non-null if hit
+	 */
+	public V get(K k) {
+		Entry<K> e = map.get(k);
+		if (e == null)
+			return null;
+		Object v = e.get();
+		if (v == DEAD)
+			return null; // 刚刚被淘汰
+		if (!e.referenced)
+			e.referenced = true;
+		@SuppressWarnings("unchecked")
+		V ret = (V) v;
+		return ret;
+	}
+
+	/**
+	 * 添加；更新已有数据时不加锁
+	 *
+	 * @return 被替换或者丢弃的数据(不一定是与 k 对应的原有数据)，可与对象池结合起来使用
+	 */
+	public V put(K k, V v) {
+		if (v == null)
+			return remove(k);
+
+		Entry<K> e = map.get(k);
+		if (e != null) {
+			Object old = update(e, v);
+			if (old != DEAD)
+				return cast(old);
+			// 与淘汰或删除并发，数据已经不在缓存中，改走加锁的插入
+		}
+
+		synchronized (this) {
+			e = map.get(k);
+			if (e != null)
+				return cast(update(e, v)); // 加锁时 map 中的数据不会是 DEAD
+
+			V ret = null;
+			int slot;
+			if (freeCount > 0) {
+				slot = freeSlots[--freeCount];
+			} else {
+				// 转动指针，给有访问标记的数据第二次机会
+				while (true) {
+					Entry<K> victim = ring[hand];
+					if (victim.referenced) {
+						victim.referenced = false;
+						hand = (hand + 1 == ring.length ? 0 : hand + 1);
+						continue;
+					}
+					map.remove(victim.key);
+					ret = cast(victim.getAndSet(DEAD));
+					slot = hand;
+					hand = (hand + 1 == ring.length ? 0 : hand + 1);
+					break;
+				}
+			}
+
+			e = new Entry<K>(k, v, slot);
+			ring[slot] = e;
+			map.put(k, e);
+			return ret;
+		}
+	}
+
+	/**
+	 * @return 原来的值；数据已被淘汰或删除时返回 {@link #DEAD}，不写入
+	 */
+	private Object update(Entry<K> e, V v) {
+		while (true) {
+			Object old = e.get();
+			if (old == DEAD)
+				return DEAD;
+			if (e.compareAndSet(old, v)) {
+				if (!e.referenced)
+					e.referenced = true;
+				return old;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private V cast(Object v) {
+		return (V) v;
+	}
+
+	public synchronized V remove(K k) {
+		Entry<K> e = map.remove(k);
+		if (e == null)
+			return null;
+		ring[e.slot] = null;
+		freeSlots[freeCount++] = e.slot;
+		return cast(e.getAndSet(DEAD));
+	}
+
+	public synchronized void clear() {
+		map.clear();
+		for (int i = 0; i < ring.length; ++i) {
+			if (ring[i] != null)
+				ring[i].set(DEAD); // 让并发的无锁更新改走加锁的插入
+			ring[i] = null;
+		}
+		resetFreeSlots();
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	public int getCapacity() {
+		return ring.length;
+	}
+}
@@ -0,0 +1,184 @@
+package grape.util;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * 分段加锁的并发 most recently used cache<br/>
+ * <br/>
+ * 按照 key 的哈希值把数据划分到多个段中，每个段是一个独立加锁的 {@link MRUCache}，
+ * 有自己的最近使用链表和一份容量。不同段上的操作互不阻塞，
+ * 因此吞吐量可以随着 CPU 个数增长，而不是全部串行在一个监视器上<br/>
+ * <br/>
+ * 淘汰只在段内进行：每个段满了以后淘汰本段最久未使用的数据，
+ * 所以整体上是近似的 LRU；段数越多，越接近平均分布
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public class ConcurrentMRUCache <K,V> {
+
+	// 默认容量
+	private static final int DEFAULT_CAPACITY = 50;
+
+	// 最大段数
+	private static final int MAX_SEGMENTS = 1 << 16;
+
+	private final MRUCache<K,V>[] segments;
+	private final int segmentShift;
+	private int capacity;
+	private volatile CacheStats stats;
+
+	public ConcurrentMRUCache(int cap) {
+		this(cap, Runtime.getRuntime().availableProcessors() * 4);
+	}
+
+	public ConcurrentMRUCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param cap 总容量，平均分配到各个段中
+	 * @param concurrencyLevel 预计的并发线程数，段数为不小于它的 2 的幂，且不超过容量
+	 */
+	public ConcurrentMRUCache(int cap, int concurrencyLevel) {
+		this(cap, concurrencyLevel, false);
+	}
+
+	/**
+	 * @param admission 各段是否使用 W-TinyLFU 准入策略，见 {@link MRUCache}
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public ConcurrentMRUCache(int cap, int concurrencyLevel, boolean admission) {
+		if (cap < 1 || concurrencyLevel < 1)
+			throw new IllegalArgumentException();
+
+		int level = Math.min(Math.min(concurrencyLevel, cap), MAX_SEGMENTS);
+		int n = 1, shift = 0;
+		while (n < level) {
+			n <<= 1;
+			++shift;
+		}
+		if (n > cap) { // 保证每个段的容量至少为 1
+			n >>= 1;
+			--shift;
+		}
+
+		segments = new MRUCache[n];
+		segmentShift = 32 - shift;
+		capacity = cap;
+		for (int i = 0; i < n; ++i)
+			segments[i] = new MRUCache<K,V>(segmentCapacity(cap, i), admission);
+	}
+
+	// 把容量平均分到各段，余数分给前面的段
+	private int segmentCapacity(int cap, int i) {
+		return cap / segments.length + (i < cap % segments.length ? 1 : 0);
+	}
+
+	private MRUCache<K,V> segmentFor(Object k) {
+		if (segments.length == 1)
+			return segments[0];
+		int h = (k == null ? 0 : k.hashCode());
+		// 用乘法散列打散，取高位作为段号
+		h *= 0x9E3779B9;
+		return segments[h >>> segmentShift];
+	}
+
+	/**
+	 * 从缓存中获取值
+	 *
+	 * @return null if miss
+	 * 		Non-null if hit
+	 */
+	public V get(K k) {
+		return segmentFor(k).get(k);
+	}
+
+	/**
+	 * 从缓存中获取值，未命中时加载，见 {@link MRUCache#get(Object, CacheLoader)}
+	 *
+	 * @throws ExecutionException 加载失败，包装了 loader 抛出的异常
+	 */
+	public V get(K k, CacheLoader<? super K, V> loader) throws ExecutionException {
+		return segmentFor(k).get(k, loader);
+	}
+
+	/**
+	 * 异步版本的 {@link #get(Object, CacheLoader)}，见 {@link MRUCache#getAsync(Object, CacheLoader, Executor)}
+	 */
+	public Future<V> getAsync(K k, CacheLoader<? super K, V> loader, Executor executor) {
+		return segmentFor(k).getAsync(k, loader, executor);
+	}
+
+	/**
+	 * 添加
+	 *
+	 * @return 被替换或者丢弃的数据(不一定是与 k 对应的原有数据)，可与对象池结合起来使用
+	 */
+	public V put(K k, V v) {
+		return segmentFor(k).put(k, v);
+	}
+
+	public V remove(K k) {
+		return segmentFor(k).remove(k);
+	}
+
+	public void clear() {
+		for (MRUCache<K,V> s : segments)
+			s.clear();
+	}
+
+	/**
+	 * 各段数据个数之和，并发修改时只是一个近似值
+	 */
+	public int size() {
+		int ret = 0;
+		for (MRUCache<K,V> s : segments)
+			ret += s.size();
+		return ret;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * 重新分配各段的容量；与 {@link MRUCache#setCapacity(int)} 一样，不会立即淘汰数据
+	 */
+	public synchronized void setCapacity(int cap) {
+		if (cap < segments.length)
+			throw new IllegalArgumentException();
+		capacity = cap;
+		for (int i = 0; i < segments.length; ++i)
+			segments[i].setCapacity(segmentCapacity(cap, i));
+	}
+
+	/**
+	 * 开启统计，各段共享一份统计
+	 */
+	public synchronized void recordStats() {
+		if (stats != null)
+			return;
+		CacheStats s = new CacheStats();
+		for (MRUCache<K,V> seg : segments)
+			seg.recordStats(s);
+		stats = s;
+	}
+
+	/**
+	 * @return 统计快照，没有开启统计时返回 null
+	 */
+	public CacheStats.Snapshot getStats() {
+		CacheStats s = stats;
+		return s == null ? null : s.snapshot();
+	}
+
+	/**
+	 * 段数
+	 */
+	public int getSegmentCount() {
+		return segments.length;
+	}
+}
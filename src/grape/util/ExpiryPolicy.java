@@ -0,0 +1,105 @@
+package grape.util;
+
+import grape.util.MRUCache.TimedNode;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MRUCache} 的过期策略：写入后或者最后一次访问后经过一段时间过期，由分层时间轮调度<br/>
+ * <br/>
+ * 定时器不是节点本身，而是挂在 {@link TimedNode} 上的一个小对象，
+ * 因此没有开启过期的缓存，其节点不带任何定时器字段<br/>
+ * <br/>
+ * 不是线程安全的，由使用者加锁
+ */
+class ExpiryPolicy {
+
+	/**
+	 * 节点的定时器
+	 */
+	static class NodeTimer extends TimerWheel.Timer {
+		final TimedNode<?,?> node;
+
+		NodeTimer(TimedNode<?,?> node) {
+			this.node = node;
+		}
+	}
+
+	private final TimerWheel wheel = new TimerWheel();
+	private final long expireAfterWriteNanos, expireAfterAccessNanos; // 0 表示不按该条件过期
+
+	private ExpiryPolicy(long expireAfterWriteNanos, long expireAfterAccessNanos) {
+		this.expireAfterWriteNanos = expireAfterWriteNanos;
+		this.expireAfterAccessNanos = expireAfterAccessNanos;
+	}
+
+	/**
+	 * @param expireAfterWrite 写入后经过多长时间过期，0 表示不按写入时间过期
+	 * @param expireAfterAccess 最后一次读写后经过多长时间过期，0 表示不按访问时间过期
+	 * @return 两个时长都为 0 时返回 null，即不过期
+	 */
+	static ExpiryPolicy create(long expireAfterWrite, long expireAfterAccess, TimeUnit unit) {
+		long w = toNanos(expireAfterWrite, unit), a = toNanos(expireAfterAccess, unit);
+		if (w == 0 && a == 0)
+			return null;
+		return new ExpiryPolicy(w, a);
+	}
+
+	// 时长上限为 2^62 纳秒(约 146 年)，用减法比较时间时不会溢出
+	private static long toNanos(long duration, TimeUnit unit) {
+		if (duration < 0)
+			throw new IllegalArgumentException("Negative duration " + duration);
+		return Math.min(unit.toNanos(duration), 1L << 62);
+	}
+
+	/**
+	 * 写入后重新计算到期时间，调用前需要先更新 writeTime
+	 */
+	void scheduleWrite(TimedNode<?,?> n, long now) {
+		if (n.timer == null)
+			n.timer = new NodeTimer(n);
+		n.timer.time = expirationTime(n, now);
+		wheel.reschedule(n.timer);
+	}
+
+	/**
+	 * 读取后重新计算到期时间，只有按访问时间过期时才需要
+	 */
+	void scheduleAccess(TimedNode<?,?> n, long now) {
+		if (expireAfterAccessNanos == 0)
+			return;
+		n.timer.time = expirationTime(n, now);
+		wheel.reschedule(n.timer);
+	}
+
+	private long expirationTime(TimedNode<?,?> n, long now) {
+		if (expireAfterAccessNanos == 0)
+			return n.writeTime + expireAfterWriteNanos;
+		long ret = now + expireAfterAccessNanos;
+		if (expireAfterWriteNanos > 0 && n.writeTime + expireAfterWriteNanos - ret < 0)
+			ret = n.writeTime + expireAfterWriteNanos;
+		return ret;
+	}
+
+	boolean isExpired(TimedNode<?,?> n, long now) {
+		return n.timer.time - now <= 0;
+	}
+
+	void deschedule(TimedNode<?,?> n) {
+		if (n.timer != null)
+			wheel.deschedule(n.timer);
+	}
+
+	/**
+	 * 推进时间轮
+	 *
+	 * @return 到期的定时器组成的单链表(通过 timerNext 链接)
+	 */
+	NodeTimer advance(long now) {
+		return (NodeTimer) wheel.advance(now);
+	}
+
+	void clear() {
+		wheel.clear();
+	}
+}
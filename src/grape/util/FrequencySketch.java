@@ -0,0 +1,112 @@
+package grape.util;
+
+/**
+ * 估计访问频率的 count-min sketch，用于 W-TinyLFU 的准入判断<br/>
+ * <br/>
+ * 每个 long 中存放 16 个 4 位计数器，计数上限为 15。一个元素在 4 行中各对应一个计数器，
+ * 频率取其中的最小值。每增加 10 倍于容量次计数，所有计数器减半(老化)，
+ * 使得过去的热点数据逐渐冷却
+ *
+ * 参考资料：<br/>
+ * [1] Einziger, Friedman, Manes. TinyLFU: A Highly Efficient Cache Admission Policy. 2017<br/>
+ */
+class FrequencySketch {
+
+	private static final long[] SEEDS = {
+		0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+	};
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	private long[] table;
+	private int tableMask;
+	private int sampleSize;
+	private int additions;
+
+	/**
+	 * @param maximumSize 缓存的容量
+	 */
+	FrequencySketch(int maximumSize) {
+		ensureCapacity(maximumSize);
+	}
+
+	/**
+	 * 按照新的容量扩大计数表，扩大时丢弃已有的计数
+	 */
+	void ensureCapacity(int maximumSize) {
+		int size = Math.max(maximumSize, 1);
+		int n = 1;
+		while (n < size && n < (1 << 30))
+			n <<= 1;
+		sampleSize = (size <= Integer.MAX_VALUE / 10 ? size * 10 : Integer.MAX_VALUE);
+		if (table != null && table.length >= n)
+			return;
+		table = new long[n];
+		tableMask = n - 1;
+		additions = 0;
+	}
+
+	/**
+	 * 估计的访问频率，范围 [0, 15]
+	 */
+	int frequency(Object e) {
+		int hash = spread(e == null ? 0 : e.hashCode());
+		int start = (hash & 3) << 2;
+		int freq = Integer.MAX_VALUE;
+		for (int i = 0; i < 4; ++i) {
+			int index = indexOf(hash, i);
+			int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xFL);
+			freq = Math.min(freq, count);
+		}
+		return freq;
+	}
+
+	/**
+	 * 记录一次访问
+	 */
+	void increment(Object e) {
+		int hash = spread(e == null ? 0 : e.hashCode());
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; ++i)
+			added |= incrementAt(indexOf(hash, i), start + i);
+
+		if (added && ++additions >= sampleSize)
+			reset();
+	}
+
+	void clear() {
+		for (int i = 0; i < table.length; ++i)
+			table[i] = 0;
+		additions = 0;
+	}
+
+	// 第 i 行中计数器所在的 long，j 为计数器在 long 中的位置
+	private boolean incrementAt(int i, int j) {
+		int offset = j << 2;
+		long mask = (0xFL << offset);
+		if ((table[i] & mask) != mask) {
+			table[i] += (1L << offset);
+			return true;
+		}
+		return false;
+	}
+
+	// 所有计数器减半
+	private void reset() {
+		for (int i = 0; i < table.length; ++i)
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		additions >>>= 1;
+	}
+
+	private int indexOf(int item, int i) {
+		long hash = (item + SEEDS[i]) * SEEDS[i];
+		hash += (hash >>> 32);
+		return ((int) hash) & tableMask;
+	}
+
+	private static int spread(int x) {
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+}
@@ -0,0 +1,207 @@
+package grape.util;
+
+import java.util.Arrays;
+
+/**
+ * key 类型为 int 的 LRU cache，语义与纯 LRU 模式的 {@link MRUCache} 相同<br/>
+ * <br/>
+ * 没有每个数据的节点对象：key、value 和前后链接按槽位存放在平行数组中，
+ * 槽位之间用下标组成最近使用链表；索引是线性探测的开放地址哈希表，存放槽位下标，
+ * 删除时向前移动后续的元素，不留墓碑。所有数组在构造时分配，put()/get() 不分配任何对象，
+ * 每个数据的额外开销约为 4 个 int(两个链接和两个索引位置)加上 key 本身<br/>
+ * <br/>
+ * 容量在构造时固定
+ *
+ * @param <V> Value type
+ */
+public class IntLruCache <V> {
+
+	private static final int MAXIMUM_CAPACITY = 1 << 29;
+
+	private final int[] keys;
+	private final Object[] values;
+	private final int[] prev, next; // 最近使用链表，下标 capacity 处为哨兵，next 为 MRU，prev 为 LRU；空闲槽位用 next 链接
+	private final int[] index; // 开放地址索引，存放槽位下标 + 1，0 表示空位
+	private final int indexMask;
+	private final int sentinel;
+	private int free; // 空闲槽位链表
+	private int size = 0;
+
+	public IntLruCache(int cap) {
+		if (cap < 1 || cap > MAXIMUM_CAPACITY)
+			throw new IllegalArgumentException("Illegal capacity " + cap);
+
+		keys = new int[cap];
+		values = new Object[cap];
+		prev = new int[cap + 1];
+		next = new int[cap + 1];
+		sentinel = cap;
+
+		// 负载因子不超过 1/2
+		int n = 2;
+		while (n < cap * 2)
+			n <<= 1;
+		index = new int[n];
+		indexMask = n - 1;
+
+		resetLinks();
+	}
+
+	private void resetLinks() {
+		prev[sentinel] = sentinel;
+		next[sentinel] = sentinel;
+		for (int i = 0; i < sentinel; ++i)
+			next[i] = i + 1 < sentinel ? i + 1 : -1;
+		free = 0;
+	}
+
+	/**
+	 * 从缓存中获取值
+	 *
+	 * @return null if miss
+	 * 		Non-null if hit
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized V get(int k) {
+		int slot = index[find(k)] - 1;
+		if (slot < 0)
+			return null;
+
+		// hit, then move the slot to head
+		unlink(slot);
+		pushHead(slot);
+		return (V) values[slot];
+	}
+
+	public synchronized boolean containsKey(int k) {
+		return index[find(k)] != 0;
+	}
+
+	/**
+	 * 添加
+	 *
+	 * @return 被替换或者丢弃的数据(不一定是与 k 对应的原有数据)，可与对象池结合起来使用
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized V put(int k, V v) {
+		if (v == null)
+			return remove(k);
+
+		int pos = find(k);
+		int slot = index[pos] - 1;
+		if (slot >= 0) {
+			// 更新 cache
+			V ret = (V) values[slot];
+			values[slot] = v;
+			unlink(slot);
+			pushHead(slot);
+			return ret;
+		}
+
+		V ret = null;
+		if (free >= 0) {
+			slot = free;
+			free = next[slot];
+			++size;
+		} else {
+			// 复用最久未使用的槽位
+			slot = prev[sentinel];
+			ret = (V) values[slot];
+			unlink(slot);
+			deleteIndex(find(keys[slot]));
+			pos = find(k); // 删除后索引中的位置可能移动
+		}
+
+		keys[slot] = k;
+		values[slot] = v;
+		index[pos] = slot + 1;
+		pushHead(slot);
+		return ret;
+	}
+
+	@SuppressWarnings("unchecked")
+	public synchronized V remove(int k) {
+		int pos = find(k);
+		int slot = index[pos] - 1;
+		if (slot < 0)
+			return null;
+
+		deleteIndex(pos);
+		unlink(slot);
+		V ret = (V) values[slot];
+		values[slot] = null;
+		next[slot] = free;
+		free = slot;
+		--size;
+		return ret;
+	}
+
+	public synchronized void clear() {
+		Arrays.fill(values, null);
+		Arrays.fill(index, 0);
+		resetLinks();
+		size = 0;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	public int getCapacity() {
+		return sentinel;
+	}
+
+	/**
+	 * @return key 在索引中的位置，不存在时为应该插入的空位
+	 */
+	private int find(int k) {
+		int i = hash(k) & indexMask;
+		while (true) {
+			int s = index[i];
+			if (s == 0 || keys[s - 1] == k)
+				return i;
+			i = (i + 1) & indexMask;
+		}
+	}
+
+	/**
+	 * 删除索引中的位置，把后续探测链上的元素向前移动填补空位
+	 */
+	private void deleteIndex(int hole) {
+		int i = hole;
+		while (true) {
+			i = (i + 1) & indexMask;
+			int s = index[i];
+			if (s == 0)
+				break;
+			int ideal = hash(keys[s - 1]) & indexMask;
+			// ideal 不在 (hole, i] 之间时，元素可以移动到 hole
+			if (((i - ideal) & indexMask) >= ((i - hole) & indexMask)) {
+				index[hole] = s;
+				hole = i;
+			}
+		}
+		index[hole] = 0;
+	}
+
+	private void unlink(int slot) {
+		next[prev[slot]] = next[slot];
+		prev[next[slot]] = prev[slot];
+	}
+
+	private void pushHead(int slot) {
+		int h = next[sentinel];
+		next[slot] = h;
+		prev[slot] = sentinel;
+		prev[h] = slot;
+		next[sentinel] = slot;
+	}
+
+	private static int hash(int v) {
+		// hash
+		int h = v;
+		// secondary hash
+		h ^= (h >>> 20) ^ (h >>> 12);
+		return h ^ (h >>> 7) ^ (h >>> 4);
+	}
+}
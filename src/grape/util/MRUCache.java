@@ -1,10 +1,48 @@
 package grape.util;
 
+import grape.dataio.Codec;
+import grape.dataio.Input;
+import grape.dataio.Output;
+
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
- * most recently used cache
+ * most recently used cache<br/>
+ * <br/>
+ * 默认使用纯 LRU 淘汰。可以在构造时开启 W-TinyLFU 准入策略，避免一次全表扫描就把热点数据全部挤出：
+ * <ul>
+ * <li> 新数据先进入一个小的窗口 LRU(默认占容量的 1%)</li>
+ * <li> 被挤出窗口的数据作为候选，只有估计的访问频率高于主区域的淘汰对象时才能进入主区域，否则被丢弃</li>
+ * <li> 主区域分为 probation 和 protected 两段，probation 中的数据再次命中后升级到 protected(占主区域的 80%)</li>
+ * <li> 访问频率由带周期老化的 count-min sketch 估计</li>
+ * </ul>
+ * 也可以用 {@link Weigher} 按总权重限制大小(例如按字节数)：每次添加后从最久未使用的数据开始淘汰，
+ * 直到总权重不超过上限；权重模式下使用纯 LRU 淘汰，数据个数默认不限制<br/>
+ * <br/>
+ * 可以设置写入后或者最后一次访问后经过一段时间过期。过期时间由分层时间轮调度，
+ * 每次操作缓存时顺便推进时间轮并删除到期的数据，不需要后台线程，分摊代价为 O(1)；
+ * 过期的数据不再占用容量，也不会被 get() 返回<br/>
+ * <br/>
+ * get(k, loader) 在未命中时加载数据：同一个 key 上并发的未命中只会触发一次加载，其他线程等待这次加载的结果；
+ * 加载时不持有缓存的锁，加载失败时异常传给所有等待者，并且不会被缓存<br/>
+ * <br/>
+ * 调用 recordStats() 开启统计后，可以用 getStats() 取得命中、淘汰、加载等统计的快照<br/>
+ * <br/>
+ * writeTo() 按照从热到冷的顺序把数据写到 {@link Output} 中，重启后用 readFrom() 读回，
+ * 恢复原来的最近使用顺序，避免冷启动<br/>
+ * <br/>
+ * 纯 LRU 模式下还可以在强引用层之后加一个软引用层：从 LRU 端淘汰的数据移入软引用层，
+ * 命中时再提升回来；内存紧张时由 GC 回收软引用层中的数据，不需要精确地估计容量
  *
  * @author jingqi
  *
@@ -13,7 +51,10 @@ import java.util.Map;
  */
 public class MRUCache <K,V> {
 
-	private static class Node <K,V> {
+	/**
+	 * 纯 LRU 模式下的节点，不带任何其他模式的字段
+	 */
+	static class Node <K,V> {
 		K key;
 		V value;
 		Node<K,V> pre, next;
@@ -24,26 +65,185 @@ public class MRUCache <K,V> {
 		}
 	}
 
+	/**
+	 * 记录写入时间的节点：开启过期，或者写入时已经开启统计(用于计算淘汰年龄)
+	 */
+	static class TimedNode <K,V> extends Node<K,V> {
+		long writeTime;
+		ExpiryPolicy.NodeTimer timer; // 未开启过期时为 null
+
+		TimedNode(K k, V v) {
+			super(k, v);
+		}
+	}
+
+	/**
+	 * W-TinyLFU 模式下的节点
+	 */
+	static class RegionNode <K,V> extends TimedNode<K,V> {
+		int region = TinyLfuRegions.WINDOW;
+
+		RegionNode(K k, V v) {
+			super(k, v);
+		}
+	}
+
+	/**
+	 * 权重模式下的节点
+	 */
+	static class WeightedNode <K,V> extends TimedNode<K,V> {
+		int weight;
+
+		WeightedNode(K k, V v) {
+			super(k, v);
+		}
+	}
+
 	// 默认容量
 	private static final int DEFAULT_CAPACITY = 50;
 
+	// 默认窗口占容量的百分比
+	private static final int DEFAULT_WINDOW_PERCENT = 1;
+
 	private final Map<K, Node<K, V> > map;
-	private final Node<K, V> list; // 所有node组成环形链表，head为MRU，tail为LRU
+	private final Node<K, V> list; // 所有node组成环形链表，head为MRU，tail为LRU；W-TinyLFU 模式下为窗口
 	private int capacity;
 
+	// W-TinyLFU 模式，纯 LRU 模式下为 null
+	private final TinyLfuRegions<K,V> regions;
+
+	// 权重模式，其他模式下 weigher 为 null
+	private final Weigher<? super K, ? super V> weigher;
+	private long maxWeight;
+	private long totalWeight = 0;
+
+	// 过期模式，未开启时为 null
+	private final ExpiryPolicy expiry;
+
+	// 软引用层，未开启时为 null
+	private final SoftTier<K,V> soft;
+
+	// 统计，未开启时为 null
+	private volatile CacheStats stats;
+
+	// 快照的格式
+	private static final int SNAPSHOT_MAGIC = 0x4D525543; // "MRUC"
+	private static final int SNAPSHOT_VERSION = 1;
+
+	// 正在加载的 key
+	private final Map<K, LoadTask> loading;
+
 	public MRUCache(int cap) {
-		if (cap < 1)
+		this(cap, false);
+	}
+
+	public MRUCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param admission 是否使用 W-TinyLFU 准入策略
+	 */
+	public MRUCache(int cap, boolean admission) {
+		this(cap, admission, DEFAULT_WINDOW_PERCENT);
+	}
+
+	/**
+	 * @param admission 是否使用 W-TinyLFU 准入策略
+	 * @param windowPercent W-TinyLFU 模式下窗口占容量的百分比，范围 [1, 100]
+	 */
+	public MRUCache(int cap, boolean admission, int windowPercent) {
+		this(cap, admission ? new TinyLfuRegions<K,V>(cap, windowPercent) : null,
+				Long.MAX_VALUE, null, null, null);
+		if (windowPercent < 1 || windowPercent > 100)
+			throw new IllegalArgumentException();
+	}
+
+	/**
+	 * 开启过期的 LRU cache
+	 *
+	 * @param expireAfterWrite 写入后经过多长时间过期，0 表示不按写入时间过期
+	 * @param expireAfterAccess 最后一次读写后经过多长时间过期，0 表示不按访问时间过期
+	 */
+	public MRUCache(int cap, long expireAfterWrite, long expireAfterAccess, TimeUnit unit) {
+		this(cap, false, expireAfterWrite, expireAfterAccess, unit);
+	}
+
+	/**
+	 * @param admission 是否使用 W-TinyLFU 准入策略
+	 * @param expireAfterWrite 写入后经过多长时间过期，0 表示不按写入时间过期
+	 * @param expireAfterAccess 最后一次读写后经过多长时间过期，0 表示不按访问时间过期
+	 */
+	public MRUCache(int cap, boolean admission, long expireAfterWrite, long expireAfterAccess,
+			TimeUnit unit) {
+		this(cap, admission ? new TinyLfuRegions<K,V>(cap, DEFAULT_WINDOW_PERCENT) : null,
+				Long.MAX_VALUE, null, ExpiryPolicy.create(expireAfterWrite, expireAfterAccess, unit), null);
+	}
+
+	/**
+	 * 按总权重限制大小，使用纯 LRU 淘汰
+	 *
+	 * @param maxWeight 总权重的上限
+	 * @param weigher 计算每个数据的权重
+	 */
+	public MRUCache(long maxWeight, Weigher<? super K, ? super V> weigher) {
+		this(maxWeight, weigher, 0, 0, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * 按总权重限制大小并开启过期
+	 *
+	 * @param expireAfterWrite 写入后经过多长时间过期，0 表示不按写入时间过期
+	 * @param expireAfterAccess 最后一次读写后经过多长时间过期，0 表示不按访问时间过期
+	 */
+	public MRUCache(long maxWeight, Weigher<? super K, ? super V> weigher,
+			long expireAfterWrite, long expireAfterAccess, TimeUnit unit) {
+		this(Integer.MAX_VALUE, null, maxWeight, weigher,
+				ExpiryPolicy.create(expireAfterWrite, expireAfterAccess, unit), null);
+		if (weigher == null)
+			throw new NullPointerException();
+	}
+
+	/**
+	 * 带软引用层的 LRU cache
+	 *
+	 * @param cap 强引用层的容量
+	 * @param softCapacity 软引用层的容量，0 表示不使用软引用层
+	 */
+	public MRUCache(int cap, int softCapacity) {
+		this(cap, null, Long.MAX_VALUE, null, null,
+				softCapacity > 0 ? new SoftTier<K,V>(softCapacity) : null);
+		if (softCapacity < 0)
+			throw new IllegalArgumentException();
+	}
+
+	/**
+	 * @param regions W-TinyLFU 模式的区域，纯 LRU 模式下为 null
+	 * @param weigher 权重模式下计算权重，其他模式下为 null
+	 * @param expiry 过期策略，不过期时为 null
+	 * @param soft 软引用层，不使用时为 null
+	 */
+	private MRUCache(int cap, TinyLfuRegions<K,V> regions, long maxWeight,
+			Weigher<? super K, ? super V> weigher, ExpiryPolicy expiry, SoftTier<K,V> soft) {
+		if (cap < 1 || maxWeight < 0)
 			throw new IllegalArgumentException();
 
 		capacity = cap;
 		map = new HashMap<K, Node<K,V> >();
-		list = new Node<K,V>(null, null); // 哨兵节点 NIL
-		list.pre = list;
-		list.next = list;
+		loading = new HashMap<K, LoadTask>();
+		this.regions = regions;
+		list = (regions != null ? regions.window : MRUCache.<K,V>newList()); // 哨兵节点 NIL
+		this.expiry = expiry;
+		this.soft = soft;
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
 	}
 
-	public MRUCache() {
-		this(DEFAULT_CAPACITY);
+	static <K,V> Node<K,V> newList() {
+		Node<K,V> ret = new Node<K,V>(null, null);
+		ret.pre = ret;
+		ret.next = ret;
+		return ret;
 	}
 
 	/**
@@ -53,94 +253,769 @@ public class MRUCache <K,V> {
 	 * 		Non-null if hit
 	 */
 	public synchronized V get(K k) {
+		long now = expireEntries();
+		if (regions != null)
+			regions.recordAccess(k);
+
+		CacheStats s = stats;
 		Node<K, V> n = map.get(k);
-		if (n == null)
+		if (n == null) {
+			V v = (soft != null ? promote(k, now) : null);
+			if (s != null) {
+				if (v != null)
+					s.hit();
+				else
+					s.miss();
+			}
+			return v;
+		}
+		if (isExpired(n, now)) {
+			removeExpired(n);
+			if (s != null)
+				s.miss();
 			return null;
+		}
 
 		// hit, then move the node to head
-		removeNode(n);
-		pushHead(n);
+		touch(n);
+		scheduleAccess(n, now);
+		if (s != null)
+			s.hit();
 
 		return n.value;
 	}
 
+	/**
+	 * 从缓存中获取值，未命中时用 loader 加载并放入缓存
+	 *
+	 * @throws ExecutionException 加载失败，包装了 loader 抛出的异常
+	 * @throws IllegalStateException 在 loader 中递归地加载同一个 key
+	 */
+	public V get(K k, CacheLoader<? super K, V> loader) throws ExecutionException {
+		LoadTask task;
+		boolean owner = false;
+		synchronized (this) {
+			V v = get(k);
+			if (v != null)
+				return v;
+			task = loading.get(k);
+			if (task == null) {
+				task = new LoadTask(k, loader);
+				loading.put(k, task);
+				owner = true;
+			} else {
+				checkRecursive(task, k);
+			}
+		}
+
+		// 在锁外加载
+		if (owner)
+			task.run();
+		return getUninterruptibly(task);
+	}
+
+	/**
+	 * 异步版本的 {@link #get(Object, CacheLoader)}，未命中时在 executor 中加载
+	 *
+	 * @return 命中时返回已完成的 Future；同一个 key 上并发的调用返回同一个 Future。
+	 * 		取消会影响所有等待这次加载的调用者
+	 */
+	public Future<V> getAsync(K k, CacheLoader<? super K, V> loader, Executor executor) {
+		LoadTask task;
+		synchronized (this) {
+			V v = get(k);
+			if (v != null) {
+				FutureTask<V> ret = new FutureTask<V>(NOOP, v);
+				ret.run();
+				return ret;
+			}
+			task = loading.get(k);
+			if (task != null) {
+				checkRecursive(task, k);
+				return task;
+			}
+			task = new LoadTask(k, loader);
+			loading.put(k, task);
+		}
+
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			task.cancel(false);
+			throw e;
+		}
+		return task;
+	}
+
+	private static final Runnable NOOP = new Runnable() {
+		@Override
+		public void run() {
+		}
+	};
+
+	// loader 中递归地加载同一个 key 会等待它自己，永远不会结束
+	private void checkRecursive(LoadTask task, K k) {
+		if (task.runner == Thread.currentThread())
+			throw new IllegalStateException("Recursive load of key " + k);
+	}
+
+	private static <V> V getUninterruptibly(Future<V> f) throws ExecutionException {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return f.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * 一次加载。加载成功后先放入缓存再唤醒等待者；
+	 * 无论成功、失败还是被取消，结束后都从 loading 中移除<br/>
+	 * 加载期间同一个 key 被 put()/remove()/clear() 时，这次加载从 loading 中被移除，
+	 * 加载的结果只交给等待者，不再放入缓存，以免覆盖更新的数据
+	 */
+	private class LoadTask extends FutureTask<V> {
+
+		private final K key;
+		private final CacheLoader<? super K, V> loader;
+		volatile Thread runner; // 正在执行加载的线程
+
+		LoadTask(final K k, final CacheLoader<? super K, V> loader) {
+			super(new Callable<V>() {
+				@Override
+				public V call() throws Exception {
+					CacheStats s = stats;
+					long start = (s != null ? currentTimeNanos() : 0);
+					V v = null;
+					try {
+						v = loader.load(k);
+						if (v == null)
+							throw new NullPointerException("Loader returned null for key " + k);
+					} finally {
+						if (s != null)
+							s.loaded(v != null, currentTimeNanos() - start);
+					}
+					return v;
+				}
+			});
+			key = k;
+			this.loader = loader;
+		}
+
+		@Override
+		public void run() {
+			runner = Thread.currentThread();
+			try {
+				super.run();
+			} finally {
+				runner = null;
+			}
+		}
+
+		@Override
+		protected void set(V v) {
+			V evicted = null;
+			try {
+				synchronized (MRUCache.this) {
+					// 加载期间没有被 put()/remove() 取代时才放入缓存
+					if (loading.get(key) == this)
+						evicted = putValue(key, v);
+				}
+			} catch (Throwable t) {
+				// 放入缓存失败(例如权重为负数)，等待者得到这个异常，done() 中注销这次加载
+				setException(t);
+				return;
+			}
+			super.set(v);
+			if (evicted != null)
+				loader.evicted(evicted);
+		}
+
+		@Override
+		protected void done() {
+			synchronized (MRUCache.this) {
+				if (loading.get(key) == this)
+					loading.remove(key);
+			}
+		}
+	}
+
 	/**
 	 * 添加
 	 *
-	 * @return 被替换或者丢弃的数据(不一定是与 k 对应的原有数据)，可与对象池结合起来使用
+	 * @return 被替换或者丢弃的数据(不一定是与 k 对应的原有数据)，可与对象池结合起来使用；
+	 * 		W-TinyLFU 模式下也可能是没有被准入的数据
 	 */
 	public synchronized V put(K k, V v) {
 		if (v == null)
 			return remove(k);
+		loading.remove(k); // 正在进行的加载不再放入结果
+		return putValue(k, v);
+	}
+
+	private V putValue(K k, V v) {
+		long now = expireEntries();
+		if (regions != null)
+			regions.recordAccess(k);
+		if (stats != null)
+			stats.put();
 
 		// 更新 cache
 		Node<K, V> n = map.get(k);
 		if (n != null) {
+			int w = (weigher != null ? weigh(k, v) : 0); // 先计算权重，失败时不修改缓存
 			V ret = n.value;
 			n.value = v;
 			// hit, then move the node to head
-			removeNode(n);
-			pushHead(n);
+			touch(n);
+			scheduleWrite(n, now);
+			if (weigher != null) {
+				WeightedNode<K,V> wn = (WeightedNode<K,V>) n;
+				totalWeight += w - wn.weight;
+				wn.weight = w;
+				V evicted = evictByWeight(now);
+				if (evicted != null)
+					ret = evicted;
+			}
 			return ret;
 		}
 
+		if (weigher != null) {
+			WeightedNode<K,V> wn = new WeightedNode<K,V>(k, v);
+			wn.weight = weigh(k, v);
+			map.put(k, wn);
+			pushHead(list, wn);
+			totalWeight += wn.weight;
+			scheduleWrite(wn, now);
+			return evictByWeight(now);
+		}
+
+		if (regions != null) {
+			// 新数据先进入窗口
+			RegionNode<K,V> rn = new RegionNode<K,V>(k, v);
+			map.put(k, rn);
+			regions.add(rn);
+			scheduleWrite(rn, now);
+			return evict(now);
+		}
+
+		V replaced = (soft != null ? soft.remove(k) : null);
+		V ret = insertLru(k, v, now);
+		return ret != null ? ret : replaced;
+	}
+
+	/**
+	 * 纯 LRU 模式下插入新数据
+	 *
+	 * @return 完全离开缓存的数据
+	 */
+	private V insertLru(K k, V v, long now) {
 		// 删除超出 capacity 的数据
 		V ret = null;
+		Node<K,V> n = null;
 		for (int i = map.size(); i >= capacity; --i) {
 			n = map.remove(list.pre.key); // remove tail
 			if (n == null)
 				break; // 容错
 			removeNode(n);
-			ret = n.value;
+			unschedule(n);
+			V dropped;
+			if (soft != null) {
+				// 移入软引用层的数据没有离开缓存，软引用层丢弃数据时才算淘汰，年龄未知
+				dropped = soft.demote(n.key, n.value);
+				if (dropped != null && stats != null)
+					stats.evicted(-1);
+			} else {
+				recordEviction(n, now);
+				dropped = n.value;
+			}
+			if (dropped != null)
+				ret = dropped;
 		}
 
-		// 复用节点，插入数据
-		if (n != null) {
+		// 复用节点，插入数据；开启统计后需要记录写入时间的节点
+		if (n != null && (stats == null || n instanceof TimedNode)) {
 			n.key = k;
 			n.value = v;
 		} else {
-			n = new Node<K,V>(k,v);
+			n = newNode(k, v);
 		}
 		map.put(k, n);
-		pushHead(n);
+		pushHead(list, n);
+		scheduleWrite(n, now);
 		return ret;
 	}
 
+	// 纯 LRU 模式下的新节点，只有需要记录写入时间时才使用带时间的节点
+	private Node<K,V> newNode(K k, V v) {
+		if (expiry != null || stats != null)
+			return new TimedNode<K,V>(k, v);
+		return new Node<K,V>(k, v);
+	}
+
+	/**
+	 * @return 被删除的数据，已过期的数据返回 null
+	 */
 	public synchronized V remove(K k) {
+		loading.remove(k); // 正在进行的加载不再放入结果
+		long now = expireEntries();
 		Node<K, V> n = map.remove(k);
 		if (n == null)
+			return soft != null ? removeSoft(k) : null;
+		detach(n);
+		if (weigher != null)
+			totalWeight -= ((WeightedNode<K,V>) n).weight;
+		unschedule(n);
+		if (isExpired(n, now)) {
+			if (stats != null)
+				stats.expired();
 			return null;
-		removeNode(n);
+		}
+		if (stats != null)
+			stats.removed();
 		return n.value;
 	}
 
 	public synchronized void clear() {
+		loading.clear();
 		map.clear();
 		list.pre = list;
 		list.next = list;
+		totalWeight = 0;
+		if (regions != null)
+			regions.clear();
+		if (expiry != null)
+			expiry.clear();
+		if (soft != null)
+			soft.clear();
+	}
+
+	/**
+	 * 把数据按照从热到冷的顺序写出：纯 LRU 和权重模式下为从 MRU 到 LRU 的顺序；
+	 * W-TinyLFU 模式下依次为 protected、窗口和 probation 中的数据。
+	 * 持有锁的时间只用于复制引用，编码和写出都在锁外进行；过期的数据不会被写出
+	 *
+	 * @return 写出的数据个数
+	 */
+	public int writeTo(Output out, Codec<? super K> keyCodec, Codec<? super V> valueCodec) {
+		List<K> ks;
+		List<V> vs;
+		synchronized (this) {
+			long now = expireEntries();
+			ks = new ArrayList<K>(map.size());
+			vs = new ArrayList<V>(map.size());
+			if (regions != null) {
+				collect(regions.protectedList, now, ks, vs);
+				collect(list, now, ks, vs);
+				collect(regions.probation, now, ks, vs);
+			} else {
+				collect(list, now, ks, vs);
+			}
+		}
+
+		int n = ks.size();
+		out.writeInt(SNAPSHOT_MAGIC);
+		out.writeInt(SNAPSHOT_VERSION);
+		out.writeInt(n);
+		for (int i = 0; i < n; ++i) {
+			keyCodec.write(out, ks.get(i));
+			valueCodec.write(out, vs.get(i));
+		}
+		return n;
+	}
+
+	private void collect(Node<K,V> head, long now, List<K> ks, List<V> vs) {
+		for (Node<K,V> n = head.next; n != head; n = n.next) {
+			if (isExpired(n, now))
+				continue;
+			ks.add(n.key);
+			vs.add(n.value);
+		}
+	}
+
+	/**
+	 * 读入 {@link #writeTo(Output, Codec, Codec)} 写出的数据。每个数据解码后单独加锁放入，
+	 * 放在已有数据之后(即比它们更冷)，读入期间缓存可以正常使用；已经存在的 key 保留现有的值。
+	 * 缓存满了以后停止读取，剩余的数据不再解码。过期模式下，读入的数据从现在开始计算过期时间
+	 *
+	 * @return 放入缓存的数据个数
+	 */
+	public int readFrom(Input in, Codec<? extends K> keyCodec, Codec<? extends V> valueCodec) {
+		if (in.readInt() != SNAPSHOT_MAGIC)
+			throw new IllegalArgumentException("Not a cache snapshot");
+		int version = in.readInt();
+		if (version != SNAPSHOT_VERSION)
+			throw new IllegalArgumentException("Unsupported cache snapshot version " + version);
+
+		int n = in.readInt(), ret = 0;
+		for (int i = 0; i < n; ++i) {
+			K k = keyCodec.read(in);
+			V v = valueCodec.read(in);
+			int r = restore(k, v);
+			if (r < 0)
+				break;
+			ret += r;
+		}
+		return ret;
+	}
+
+	/**
+	 * 在 executor 中异步地读入快照，缓存可以在读入期间直接使用，热数据逐渐就位
+	 *
+	 * @return 放入缓存的数据个数
+	 * @see #readFrom(Input, Codec, Codec)
+	 */
+	public Future<Integer> readFromAsync(final Input in, final Codec<? extends K> keyCodec,
+			final Codec<? extends V> valueCodec, Executor executor) {
+		FutureTask<Integer> task = new FutureTask<Integer>(new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				return readFrom(in, keyCodec, valueCodec);
+			}
+		});
+		executor.execute(task);
+		return task;
+	}
+
+	/**
+	 * 数据个数；过期模式下可能包括刚刚到期、还没有被删除的数据
+	 */
+	public synchronized int size() {
+		expireEntries();
+		return map.size();
+	}
+
+	/**
+	 * 推进时间轮并删除到期的数据。每次操作缓存时都会自动进行，
+	 * 长时间没有操作的缓存可以定期调用，以便及时释放内存
+	 */
+	public synchronized void cleanUp() {
+		expireEntries();
+	}
+
+	/**
+	 * 是否开启过期
+	 */
+	public boolean isExpiring() {
+		return expiry != null;
 	}
 
 	public int getCapacity() {
 		return capacity;
 	}
 
-	public void setCapacity(int cap) {
+	public synchronized void setCapacity(int cap) {
 		if (cap < 1)
 			throw new IllegalArgumentException();
 		capacity = cap;
+		if (regions != null)
+			regions.setCapacity(cap);
+	}
+
+	/**
+	 * 是否按总权重限制大小
+	 */
+	public boolean isWeighted() {
+		return weigher != null;
+	}
+
+	/**
+	 * 当前的总权重，非权重模式下为 0
+	 */
+	public synchronized long getWeight() {
+		return totalWeight;
+	}
+
+	public synchronized long getMaxWeight() {
+		return maxWeight;
+	}
+
+	/**
+	 * 修改总权重的上限；与 {@link #setCapacity(int)} 不同，超出的数据会立即被淘汰，
+	 * 以便及时释放内存
+	 */
+	public synchronized void setMaxWeight(long maxWeight) {
+		if (weigher == null)
+			throw new IllegalStateException("Not a weighted cache");
+		if (maxWeight < 0)
+			throw new IllegalArgumentException();
+		this.maxWeight = maxWeight;
+		evictByWeight(expireEntries());
+	}
+
+	/**
+	 * 软引用层中的数据个数，可能包括已被 GC 回收、还没有清理的数据
+	 */
+	public synchronized int softSize() {
+		return soft == null ? 0 : soft.size();
+	}
+
+	/**
+	 * 从软引用层提升回强引用层的次数
+	 */
+	public synchronized long getSoftPromotions() {
+		return soft == null ? 0 : soft.promotions();
+	}
+
+	/**
+	 * 软引用层中被 GC 回收的数据个数
+	 */
+	public synchronized long getSoftCleared() {
+		if (soft == null)
+			return 0;
+		soft.expunge();
+		return soft.cleared();
+	}
+
+	/**
+	 * 开启统计
+	 */
+	public void recordStats() {
+		recordStats(new CacheStats());
+	}
+
+	/**
+	 * 开启统计，统计记录到指定的对象中，多个缓存可以共享一份统计
+	 */
+	public synchronized void recordStats(CacheStats stats) {
+		if (stats == null)
+			throw new NullPointerException();
+		this.stats = stats;
+	}
+
+	/**
+	 * @return 统计快照，没有开启统计时返回 null
+	 */
+	public CacheStats.Snapshot getStats() {
+		CacheStats s = stats;
+		return s == null ? null : s.snapshot();
+	}
+
+	/**
+	 * 是否使用 W-TinyLFU 准入策略
+	 */
+	public boolean isAdmissionEnabled() {
+		return regions != null;
+	}
+
+	// 命中后调整节点的位置
+	private void touch(Node<K,V> n) {
+		if (regions != null) {
+			regions.touch((RegionNode<K,V>) n);
+			return;
+		}
+		removeNode(n);
+		pushHead(list, n);
+	}
+
+	// 摘除节点，并更新所在区域的大小
+	private void detach(Node<K,V> n) {
+		if (regions != null)
+			regions.detach((RegionNode<K,V>) n);
+		else
+			removeNode(n);
+	}
+
+	/**
+	 * W-TinyLFU 模式下，把超出窗口的数据交给准入策略，并淘汰超出主区域容量的数据
+	 *
+	 * @return 最后一个被丢弃的数据
+	 */
+	private V evict(long now) {
+		V ret = null;
+		RegionNode<K,V> victim;
+		while ((victim = regions.evict()) != null) {
+			map.remove(victim.key);
+			unschedule(victim);
+			recordEviction(victim, now);
+			ret = victim.value;
+		}
+		return ret;
+	}
+
+	private int weigh(K k, V v) {
+		int w = weigher.weigh(k, v);
+		if (w < 0)
+			throw new IllegalArgumentException("Negative weight " + w);
+		return w;
+	}
+
+	/**
+	 * 权重模式下，从最久未使用的数据开始淘汰，直到总权重和个数都不超过上限；
+	 * 单个数据的权重超过上限时，它自己也会被淘汰
+	 *
+	 * @return 最后一个被丢弃的数据
+	 */
+	private V evictByWeight(long now) {
+		V ret = null;
+		while ((totalWeight > maxWeight || map.size() > capacity) && list.pre != list) {
+			WeightedNode<K,V> n = (WeightedNode<K,V>) list.pre; // tail
+			removeNode(n);
+			map.remove(n.key);
+			totalWeight -= n.weight;
+			unschedule(n);
+			recordEviction(n, now);
+			ret = n.value;
+		}
+		return ret;
+	}
+
+	/**
+	 * 当前时间，纳秒
+	 */
+	long currentTimeNanos() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * 过期模式下推进时间轮，删除到期的数据
+	 *
+	 * @return 当前时间；未开启过期和统计时返回 0
+	 */
+	private long expireEntries() {
+		if (soft != null)
+			soft.expunge();
+		if (expiry == null)
+			return stats != null ? currentTimeNanos() : 0;
+		long now = currentTimeNanos();
+		TimerWheel.Timer t = expiry.advance(now);
+		while (t != null) {
+			TimerWheel.Timer next = t.timerNext;
+			t.timerNext = null;
+			@SuppressWarnings("unchecked")
+			TimedNode<K,V> n = (TimedNode<K,V>) ((ExpiryPolicy.NodeTimer) t).node;
+			removeExpired(n);
+			t = next;
+		}
+		return now;
+	}
+
+	private boolean isExpired(Node<K,V> n, long now) {
+		return expiry != null && expiry.isExpired((TimedNode<K,V>) n, now);
+	}
+
+	private void removeExpired(Node<K,V> n) {
+		map.remove(n.key);
+		detach(n);
+		if (weigher != null)
+			totalWeight -= ((WeightedNode<K,V>) n).weight;
+		expiry.deschedule((TimedNode<K,V>) n);
+		if (stats != null)
+			stats.expired();
+	}
+
+	// 记录写入时间，过期模式下重新计算到期时间
+	private void scheduleWrite(Node<K,V> n, long now) {
+		if (!(n instanceof TimedNode))
+			return;
+		TimedNode<K,V> tn = (TimedNode<K,V>) n;
+		tn.writeTime = now;
+		if (expiry != null)
+			expiry.scheduleWrite(tn, now);
+	}
+
+	// 读取后重新计算到期时间
+	private void scheduleAccess(Node<K,V> n, long now) {
+		if (expiry != null)
+			expiry.scheduleAccess((TimedNode<K,V>) n, now);
+	}
+
+	/**
+	 * 软引用层命中时，把数据提升回强引用层
+	 *
+	 * @return null 如果不在软引用层中或者已被 GC 回收
+	 */
+	private V promote(K k, long now) {
+		V v = soft.promote(k);
+		if (v != null)
+			insertLru(k, v, now);
+		return v;
+	}
+
+	private V removeSoft(K k) {
+		V v = soft.remove(k);
+		if (v != null && stats != null)
+			stats.removed();
+		return v;
+	}
+
+	// 记录淘汰及淘汰年龄，写入时还没有开启统计的数据年龄未知
+	private void recordEviction(Node<K,V> n, long now) {
+		CacheStats s = stats;
+		if (s == null)
+			return;
+		long writeTime = (n instanceof TimedNode ? ((TimedNode<K,V>) n).writeTime : 0);
+		s.evicted(writeTime != 0 ? now - writeTime : -1);
+	}
+
+	private void unschedule(Node<K,V> n) {
+		if (expiry != null)
+			expiry.deschedule((TimedNode<K,V>) n);
+	}
+
+	/**
+	 * 把快照中的一个数据放到对应区域的尾部
+	 *
+	 * @return 1 放入；0 key 已经存在；-1 缓存已满
+	 */
+	private synchronized int restore(K k, V v) {
+		if (k == null || v == null)
+			throw new NullPointerException();
+		long now = expireEntries();
+		if (map.containsKey(k))
+			return 0;
+
+		Node<K,V> n;
+		if (weigher != null) {
+			WeightedNode<K,V> wn = new WeightedNode<K,V>(k, v);
+			wn.weight = weigh(k, v);
+			if (map.size() >= capacity || totalWeight + wn.weight > maxWeight)
+				return -1;
+			totalWeight += wn.weight;
+			pushTail(list, wn);
+			n = wn;
+		} else if (regions != null) {
+			RegionNode<K,V> rn = new RegionNode<K,V>(k, v);
+			if (!regions.restore(rn))
+				return -1;
+			n = rn;
+		} else {
+			if (map.size() >= capacity)
+				return -1;
+			n = newNode(k, v);
+			pushTail(list, n);
+		}
+		map.put(k, n);
+		scheduleWrite(n, now);
+		return 1;
 	}
 
 	// 摘除节点
-	private void removeNode(Node<K,V> n) {
+	static <K,V> void removeNode(Node<K,V> n) {
 		n.pre.next = n.next;
 		n.next.pre = n.pre;
 	}
 
-	// 插入到链首
-	private void pushHead(Node<K,V> n) {
-		n.next = list.next;
-		n.pre = list;
-		list.next.pre = n;
-		list.next = n;
+	// 插入到指定链表的链首
+	static <K,V> void pushHead(Node<K,V> head, Node<K,V> n) {
+		n.next = head.next;
+		n.pre = head;
+		head.next.pre = n;
+		head.next = n;
+	}
+
+	// 插入到指定链表的链尾
+	static <K,V> void pushTail(Node<K,V> head, Node<K,V> n) {
+		n.pre = head.pre;
+		n.next = head;
+		head.pre.next = n;
+		head.pre = n;
 	}
 }
@@ -0,0 +1,119 @@
+package grape.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * {@link MRUCache} 强引用层之后的软引用层<br/>
+ * <br/>
+ * 从 LRU 端淘汰的数据移入这里，命中时再提升回强引用层；内存紧张时由 GC 回收其中的数据。
+ * 按照移入的先后顺序排列，满了时丢弃最早移入的数据<br/>
+ * <br/>
+ * 不是线程安全的，由使用者加锁
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+class SoftTier <K,V> {
+
+	private static class SoftEntry <K,V> extends SoftReference<V> {
+		final K key;
+
+		SoftEntry(K k, V v, ReferenceQueue<? super V> q) {
+			super(v, q);
+			key = k;
+		}
+	}
+
+	private final LinkedHashMap<K, SoftEntry<K,V> > entries = new LinkedHashMap<K, SoftEntry<K,V> >();
+	private final ReferenceQueue<V> queue = new ReferenceQueue<V>();
+	private final int capacity;
+	private long promotions = 0, cleared = 0;
+
+	SoftTier(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException();
+		this.capacity = capacity;
+	}
+
+	/**
+	 * 移入被淘汰出强引用层的数据
+	 *
+	 * @return 因为软引用层已满而完全离开缓存的数据
+	 */
+	V demote(K k, V v) {
+		entries.put(k, new SoftEntry<K,V>(k, v, queue));
+		if (entries.size() <= capacity)
+			return null;
+		Iterator<SoftEntry<K,V> > iter = entries.values().iterator();
+		SoftEntry<K,V> e = iter.next();
+		iter.remove();
+		V ret = e.get();
+		e.clear(); // 主动清除的引用不会进入引用队列
+		return ret;
+	}
+
+	/**
+	 * 取出数据以便提升回强引用层
+	 *
+	 * @return null 如果不在软引用层中或者已被 GC 回收
+	 */
+	V promote(K k) {
+		SoftEntry<K,V> e = entries.remove(k);
+		if (e == null)
+			return null;
+		V v = e.get();
+		if (v == null)
+			return null; // 已被 GC 回收，由 expunge() 计数
+		e.clear();
+		++promotions;
+		return v;
+	}
+
+	/**
+	 * @return 被删除的数据，不存在或者已被 GC 回收时返回 null
+	 */
+	V remove(K k) {
+		SoftEntry<K,V> e = entries.remove(k);
+		if (e == null)
+			return null;
+		V v = e.get();
+		e.clear();
+		return v;
+	}
+
+	/**
+	 * 清理被 GC 回收的软引用
+	 */
+	void expunge() {
+		Reference<? extends V> r;
+		while ((r = queue.poll()) != null) {
+			@SuppressWarnings("unchecked")
+			SoftEntry<K,V> e = (SoftEntry<K,V>) r;
+			if (entries.get(e.key) == e)
+				entries.remove(e.key);
+			++cleared;
+		}
+	}
+
+	void clear() {
+		for (SoftEntry<K,V> e : entries.values())
+			e.clear();
+		entries.clear();
+	}
+
+	int size() {
+		return entries.size();
+	}
+
+	long promotions() {
+		return promotions;
+	}
+
+	long cleared() {
+		return cleared;
+	}
+}
@@ -0,0 +1,181 @@
+package grape.util;
+
+/**
+ * 分层时间轮，用于缓存数据的过期<br/>
+ * <br/>
+ * 共 5 层，每层的一个格子分别跨越约 1.07 秒、1.14 分、1.22 小时、0.81 天和 6.5 天(均为 2 的幂纳秒)，
+ * 定时器按照到期时间与当前时间的距离放入对应的层中。时间推进时只检查走过的格子：
+ * 已到期的定时器被取出，未到期的(高层格子中较晚的定时器)重新放入更低的层。
+ * 调度、取消都是 O(1)，推进的代价分摊到每个定时器上也是 O(1)<br/>
+ * <br/>
+ * 不是线程安全的，由使用者加锁
+ *
+ * 参考资料：<br/>
+ * [1] Varghese, Lauck. Hashed and Hierarchical Timing Wheels. 1987<br/>
+ */
+class TimerWheel {
+
+	/**
+	 * 定时器，即时间轮中的节点
+	 */
+	static class Timer {
+		long time; // 到期时间，纳秒
+		Timer timerPre, timerNext; // 不在时间轮中时为 null
+	}
+
+	// 每层格子的个数
+	private static final int[] BUCKETS = { 64, 64, 32, 4, 1 };
+
+	// 每层一个格子跨越的纳秒数
+	private static final long[] SPANS = {
+		1L << 30, // 1.07s
+		1L << 36, // 1.14m
+		1L << 42, // 1.22h
+		1L << 46, // 0.81d
+		1L << 50, // 6.5d
+	};
+
+	private static final int[] SHIFTS = {
+		Long.numberOfTrailingZeros(SPANS[0]),
+		Long.numberOfTrailingZeros(SPANS[1]),
+		Long.numberOfTrailingZeros(SPANS[2]),
+		Long.numberOfTrailingZeros(SPANS[3]),
+		Long.numberOfTrailingZeros(SPANS[4]),
+	};
+
+	private final Timer[][] wheel; // 每个格子是一个带哨兵的环形链表
+	private long nanos; // 当前时间
+	private boolean started = false; // 第一次推进时才确定起始时间
+
+	TimerWheel() {
+		wheel = new Timer[BUCKETS.length][];
+		for (int i = 0; i < BUCKETS.length; ++i) {
+			wheel[i] = new Timer[BUCKETS[i]];
+			for (int j = 0; j < BUCKETS[i]; ++j) {
+				Timer sentinel = new Timer();
+				sentinel.timerPre = sentinel;
+				sentinel.timerNext = sentinel;
+				wheel[i][j] = sentinel;
+			}
+		}
+	}
+
+	/**
+	 * 加入定时器，定时器不能已经在时间轮中；第一次加入之前需要先调用 {@link #advance(long)}
+	 */
+	void schedule(Timer t) {
+		Timer sentinel = findBucket(t.time);
+		t.timerNext = sentinel;
+		t.timerPre = sentinel.timerPre;
+		sentinel.timerPre.timerNext = t;
+		sentinel.timerPre = t;
+	}
+
+	/**
+	 * 移除定时器，不在时间轮中时什么都不做
+	 */
+	void deschedule(Timer t) {
+		if (t.timerNext == null)
+			return;
+		t.timerPre.timerNext = t.timerNext;
+		t.timerNext.timerPre = t.timerPre;
+		t.timerPre = null;
+		t.timerNext = null;
+	}
+
+	/**
+	 * 修改到期时间后重新调度
+	 */
+	void reschedule(Timer t) {
+		deschedule(t);
+		schedule(t);
+	}
+
+	/**
+	 * 推进到当前时间
+	 *
+	 * @return 到期的定时器组成的单链表(用 timerNext 链接)，已经不在时间轮中；没有时返回 null
+	 */
+	Timer advance(long now) {
+		if (!started) {
+			started = true;
+			nanos = now;
+			return null;
+		}
+
+		long previous = nanos;
+		if (now - previous <= 0)
+			return null;
+		nanos = now;
+
+		Timer expired = null;
+		for (int i = 0; i < SHIFTS.length; ++i) {
+			long previousTicks = previous >> SHIFTS[i];
+			long currentTicks = now >> SHIFTS[i];
+			if (currentTicks - previousTicks <= 0)
+				break; // 更高的层也不会走过新的格子
+			expired = expire(i, previousTicks, currentTicks - previousTicks, expired);
+		}
+		return expired;
+	}
+
+	// 检查第 index 层中走过的格子
+	private Timer expire(int index, long previousTicks, long delta, Timer expired) {
+		Timer[] buckets = wheel[index];
+		int mask = buckets.length - 1;
+		int steps = (int) Math.min(delta + 1, buckets.length);
+		int start = (int) (previousTicks & mask);
+		for (int i = start, end = start + steps; i < end; ++i) {
+			Timer sentinel = buckets[i & mask];
+			Timer t = sentinel.timerNext;
+			sentinel.timerPre = sentinel;
+			sentinel.timerNext = sentinel;
+
+			while (t != sentinel) {
+				Timer next = t.timerNext;
+				t.timerPre = null;
+				t.timerNext = null;
+				if (t.time - nanos <= 0) {
+					t.timerNext = expired;
+					expired = t;
+				} else {
+					schedule(t); // 放入更低的层
+				}
+				t = next;
+			}
+		}
+		return expired;
+	}
+
+	// 按照到期时间与当前时间的距离找到所在的格子
+	private Timer findBucket(long time) {
+		long duration = time - nanos;
+		int last = BUCKETS.length - 1;
+		for (int i = 0; i < last; ++i) {
+			if (duration < SPANS[i + 1]) {
+				long ticks = time >> SHIFTS[i];
+				return wheel[i][(int) (ticks & (BUCKETS[i] - 1))];
+			}
+		}
+		return wheel[last][0];
+	}
+
+	/**
+	 * 移除所有定时器
+	 */
+	void clear() {
+		for (Timer[] buckets : wheel) {
+			for (Timer sentinel : buckets) {
+				Timer t = sentinel.timerNext;
+				while (t != sentinel) {
+					Timer next = t.timerNext;
+					t.timerPre = null;
+					t.timerNext = null;
+					t = next;
+				}
+				sentinel.timerPre = sentinel;
+				sentinel.timerNext = sentinel;
+			}
+		}
+	}
+}
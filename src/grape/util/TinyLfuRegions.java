@@ -0,0 +1,208 @@
+package grape.util;
+
+import grape.util.MRUCache.Node;
+import grape.util.MRUCache.RegionNode;
+
+/**
+ * {@link MRUCache} 的 W-TinyLFU 准入策略：窗口、probation 和 protected 三个区域<br/>
+ * <br/>
+ * 新数据先进入窗口；被挤出窗口的数据作为候选，只有估计的访问频率高于主区域的淘汰对象时才能进入主区域。
+ * 主区域中 probation 的数据再次命中后升级到 protected。
+ * 这里只负责在区域之间移动节点，从 map 中删除被淘汰的数据由缓存完成<br/>
+ * <br/>
+ * 不是线程安全的，由使用者加锁
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+class TinyLfuRegions <K,V> {
+
+	// 节点所在的区域
+	static final int WINDOW = 0, PROBATION = 1, PROTECTED = 2;
+
+	// protected 段占主区域的百分比
+	private static final int PROTECTED_PERCENT = 80;
+
+	private final FrequencySketch sketch;
+	final Node<K,V> window, probation, protectedList; // 各区域的链表，head 为 MRU
+	private final int windowPercent;
+	private int windowCap, mainCap, protectedCap;
+	private int windowSize = 0, probationSize = 0, protectedSize = 0;
+
+	/**
+	 * @param windowPercent 窗口占容量的百分比，范围 [1, 100]
+	 */
+	TinyLfuRegions(int capacity, int windowPercent) {
+		if (capacity < 1 || windowPercent < 1 || windowPercent > 100)
+			throw new IllegalArgumentException();
+		this.windowPercent = windowPercent;
+		sketch = new FrequencySketch(capacity);
+		window = MRUCache.newList();
+		probation = MRUCache.newList();
+		protectedList = MRUCache.newList();
+		computeRegionCapacity(capacity);
+	}
+
+	private void computeRegionCapacity(int capacity) {
+		windowCap = Math.max(1, (int) ((long) capacity * windowPercent / 100));
+		mainCap = capacity - windowCap;
+		protectedCap = (int) ((long) mainCap * PROTECTED_PERCENT / 100);
+	}
+
+	/**
+	 * 修改容量，超出的数据在下一次 {@link #evict()} 时淘汰
+	 */
+	void setCapacity(int capacity) {
+		computeRegionCapacity(capacity);
+		sketch.ensureCapacity(capacity);
+	}
+
+	/**
+	 * 记录一次访问，用于估计访问频率
+	 */
+	void recordAccess(Object k) {
+		sketch.increment(k);
+	}
+
+	/**
+	 * 新数据放入窗口
+	 */
+	void add(RegionNode<K,V> n) {
+		n.region = WINDOW;
+		MRUCache.pushHead(window, n);
+		++windowSize;
+	}
+
+	/**
+	 * 命中后调整节点的位置
+	 */
+	void touch(RegionNode<K,V> n) {
+		MRUCache.removeNode(n);
+		switch (n.region) {
+		case PROBATION:
+			// 再次命中，升级到 protected
+			--probationSize;
+			n.region = PROTECTED;
+			++protectedSize;
+			MRUCache.pushHead(protectedList, n);
+
+			// protected 超出容量时，把其中最久未使用的降级到 probation
+			while (protectedSize > protectedCap) {
+				@SuppressWarnings("unchecked")
+				RegionNode<K,V> d = (RegionNode<K,V>) protectedList.pre;
+				MRUCache.removeNode(d);
+				--protectedSize;
+				d.region = PROBATION;
+				++probationSize;
+				MRUCache.pushHead(probation, d);
+			}
+			break;
+
+		case PROTECTED:
+			MRUCache.pushHead(protectedList, n);
+			break;
+
+		default:
+			MRUCache.pushHead(window, n);
+		}
+	}
+
+	/**
+	 * 摘除节点，并更新所在区域的大小
+	 */
+	void detach(RegionNode<K,V> n) {
+		MRUCache.removeNode(n);
+		switch (n.region) {
+		case PROBATION:
+			--probationSize;
+			break;
+
+		case PROTECTED:
+			--protectedSize;
+			break;
+
+		default:
+			--windowSize;
+		}
+	}
+
+	/**
+	 * 把超出窗口的数据交给准入策略，并淘汰超出主区域容量的数据
+	 *
+	 * @return 下一个要淘汰的节点，已经从区域中摘除；没有超出容量时返回 null
+	 */
+	RegionNode<K,V> evict() {
+		while (windowSize > windowCap) {
+			@SuppressWarnings("unchecked")
+			RegionNode<K,V> candidate = (RegionNode<K,V>) window.pre;
+			detach(candidate);
+
+			if (probationSize + protectedSize < mainCap) {
+				// 主区域还有空间，直接进入
+				toProbation(candidate);
+				continue;
+			}
+
+			// 与主区域中最久未使用的数据比较访问频率
+			Node<K,V> victim = (probation.pre != probation ? probation.pre : protectedList.pre);
+			if (victim != protectedList &&
+					sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+				@SuppressWarnings("unchecked")
+				RegionNode<K,V> v = (RegionNode<K,V>) victim;
+				detach(v);
+				toProbation(candidate);
+				return v;
+			}
+			return candidate;
+		}
+
+		// 容量减小后，主区域可能超出容量
+		if (probationSize + protectedSize > mainCap) {
+			@SuppressWarnings("unchecked")
+			RegionNode<K,V> victim = (RegionNode<K,V>)
+					(probation.pre != probation ? probation.pre : protectedList.pre);
+			detach(victim);
+			return victim;
+		}
+		return null;
+	}
+
+	private void toProbation(RegionNode<K,V> n) {
+		n.region = PROBATION;
+		++probationSize;
+		MRUCache.pushHead(probation, n);
+	}
+
+	/**
+	 * 把快照中的一个数据放到区域的尾部：最热的数据放入 protected，其次是 probation，最后是窗口
+	 *
+	 * @return false 如果所有区域都已满
+	 */
+	boolean restore(RegionNode<K,V> n) {
+		if (protectedSize < protectedCap) {
+			n.region = PROTECTED;
+			++protectedSize;
+			MRUCache.pushTail(protectedList, n);
+		} else if (probationSize + protectedSize < mainCap) {
+			n.region = PROBATION;
+			++probationSize;
+			MRUCache.pushTail(probation, n);
+		} else if (windowSize < windowCap) {
+			n.region = WINDOW;
+			++windowSize;
+			MRUCache.pushTail(window, n);
+		} else {
+			return false;
+		}
+		sketch.increment(n.key);
+		return true;
+	}
+
+	void clear() {
+		window.pre = window.next = window;
+		probation.pre = probation.next = probation;
+		protectedList.pre = protectedList.next = protectedList;
+		windowSize = probationSize = protectedSize = 0;
+		sketch.clear();
+	}
+}
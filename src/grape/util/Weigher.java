@@ -0,0 +1,17 @@
+package grape.util;
+
+/**
+ * 计算缓存数据的权重，用于按总权重限制缓存的大小，见 {@link MRUCache}
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public interface Weigher <K,V> {
+
+	/**
+	 * 数据的权重，例如占用的字节数；数据在缓存中时权重不能改变
+	 *
+	 * @return 非负数
+	 */
+	int weigh(K key, V value);
+}
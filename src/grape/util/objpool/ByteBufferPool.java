@@ -0,0 +1,167 @@
+package grape.util.objpool;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 按大小分级的缓冲区池，复用 byte[] 和直接内存 ByteBuffer<br/>
+ * <br/>
+ * 缓冲区的大小按 2 的幂分级，申请时向上取整到所在级别，因此返回的缓冲区可能比申请的大；
+ * 超过 maxBufferSize 的申请直接分配，释放时也不会入池。
+ * 每个级别前面有按线程分条的 {@link MagazineCache}，大多数申请和释放不会访问共享的数据。
+ * 条带上装载中的 magazine 不计入 maxPooled，因此按级别限制条带数：
+ * 每个级别装载中的缓冲区总大小不超过 1MB(至少一个条带)，
+ * 小的级别条带多以减少竞争，大的级别只有一两个条带，不会囤积大量直接内存<br/>
+ * <br/>
+ * 释放语义：缓冲区通过 release() 归还之后，调用者不能再访问它，也不能重复归还；
+ * 不是从本池申请的缓冲区也可以归还，只要大小恰好是某个级别
+ */
+public class ByteBufferPool {
+
+	// 最小的级别：16 字节
+	private static final int MIN_SHIFT = 4;
+
+	private static final int DEFAULT_MAX_BUFFER_SIZE = 1 << 20;
+	private static final int DEFAULT_MAX_POOLED = 16;
+
+	// 每个 magazine 缓存的缓冲区个数
+	private static final int MAGAZINE_SIZE = 4;
+
+	// 每个级别中装载中的 magazine 所缓存的缓冲区的总大小上限
+	private static final int MAGAZINE_BYTES_PER_CLASS = 1 << 20;
+
+	private final int maxShift;
+	private final MagazineCache<byte[]>[] heapCaches;
+	private final MagazineCache<ByteBuffer>[] directCaches;
+
+	public ByteBufferPool() {
+		this(DEFAULT_MAX_BUFFER_SIZE, DEFAULT_MAX_POOLED);
+	}
+
+	/**
+	 * @param maxBufferSize 入池的缓冲区的最大大小，会被向上取整为 2 的幂
+	 * @param maxPooled 每个级别中 depot 最多缓存的缓冲区个数，不包括装载中的 magazine
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public ByteBufferPool(int maxBufferSize, int maxPooled) {
+		if (maxBufferSize < (1 << MIN_SHIFT) || maxBufferSize > (1 << 30))
+			throw new IllegalArgumentException("Illegal max buffer size " + maxBufferSize);
+		if (maxPooled <= 0)
+			throw new IllegalArgumentException("Illegal max pooled " + maxPooled);
+
+		maxShift = shift(maxBufferSize);
+		int classes = maxShift - MIN_SHIFT + 1;
+		heapCaches = (MagazineCache<byte[]>[]) new MagazineCache[classes];
+		directCaches = (MagazineCache<ByteBuffer>[]) new MagazineCache[classes];
+		for (int i = 0; i < classes; ++i) {
+			int stripes = maxStripes(i + MIN_SHIFT);
+			heapCaches[i] = new MagazineCache<byte[]>(MAGAZINE_SIZE, maxPooled, stripes);
+			directCaches[i] = new MagazineCache<ByteBuffer>(MAGAZINE_SIZE, maxPooled, stripes);
+		}
+	}
+
+	/**
+	 * 大小为 2^shift 的级别的最大条带数
+	 */
+	private static int maxStripes(int shift) {
+		long bytesPerStripe = (long) MAGAZINE_SIZE << shift;
+		return (int) Math.max(1, Math.min(Integer.MAX_VALUE, MAGAZINE_BYTES_PER_CLASS / bytesPerStripe));
+	}
+
+	/**
+	 * 不小于 size 的 2 的幂的指数
+	 */
+	private static int shift(int size) {
+		if (size <= (1 << MIN_SHIFT))
+			return MIN_SHIFT;
+		return 32 - Integer.numberOfLeadingZeros(size - 1);
+	}
+
+	/**
+	 * 恰好是某个级别的大小时返回级别，否则返回 -1
+	 */
+	private int classOf(int capacity) {
+		if (capacity < (1 << MIN_SHIFT) || Integer.bitCount(capacity) != 1)
+			return -1;
+		int s = Integer.numberOfTrailingZeros(capacity);
+		if (s > maxShift)
+			return -1;
+		return s - MIN_SHIFT;
+	}
+
+	/**
+	 * 申请 byte[]，内容是未定义的
+	 *
+	 * @return 长度不小于 minSize 的数组
+	 */
+	public byte[] allocate(int minSize) {
+		if (minSize < 0)
+			throw new IllegalArgumentException("Illegal size " + minSize);
+		int s = shift(minSize);
+		if (s > maxShift)
+			return new byte[minSize];
+
+		byte[] ret = heapCaches[s - MIN_SHIFT].get();
+		if (ret == null)
+			ret = new byte[1 << s];
+		return ret;
+	}
+
+	/**
+	 * 归还 byte[]，大小不是某个级别的数组直接丢弃
+	 */
+	public void release(byte[] buf) {
+		if (buf == null)
+			return;
+		int c = classOf(buf.length);
+		if (c >= 0)
+			heapCaches[c].put(buf);
+	}
+
+	/**
+	 * 申请直接内存 ByteBuffer，position 为 0，limit 为 minSize，内容是未定义的
+	 *
+	 * @return 容量不小于 minSize 的直接内存缓冲区
+	 */
+	public ByteBuffer allocateDirect(int minSize) {
+		if (minSize < 0)
+			throw new IllegalArgumentException("Illegal size " + minSize);
+		int s = shift(minSize);
+		if (s > maxShift)
+			return ByteBuffer.allocateDirect(minSize);
+
+		ByteBuffer ret = directCaches[s - MIN_SHIFT].get();
+		if (ret == null)
+			ret = ByteBuffer.allocateDirect(1 << s);
+		ret.clear();
+		ret.limit(minSize);
+		return ret;
+	}
+
+	/**
+	 * 归还直接内存 ByteBuffer，非直接内存或者容量不是某个级别的缓冲区直接丢弃
+	 */
+	public void release(ByteBuffer buf) {
+		if (buf == null || !buf.isDirect())
+			return;
+		int c = classOf(buf.capacity());
+		if (c >= 0)
+			directCaches[c].put(buf);
+	}
+
+	/**
+	 * 大小为 size 的级别的条带数，测试用
+	 */
+	int stripes(int size) {
+		return directCaches[shift(size) - MIN_SHIFT].stripes();
+	}
+
+	/**
+	 * 清空所有缓存的缓冲区
+	 */
+	public void clear() {
+		for (int i = 0; i < heapCaches.length; ++i) {
+			heapCaches[i].clear();
+			directCaches[i].clear();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package grape.util.objpool;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 自适应地调整对象池的空闲对象上限，并淘汰空闲超时的对象<br/>
+ * <br/>
+ * 以空闲超时时间为一个周期，记录周期内空闲对象数的最低水位：
+ * 低水位以下的对象在整个周期内都没有被借出过，即空闲超过了超时时间，在周期结束时淘汰。
+ * 因为池中的对象可以互相替代，只需要淘汰同样个数的对象，不必给每个对象记录时间戳<br/>
+ * <br/>
+ * 上限的调整依据这个周期内的借出情况：
+ * <ul>
+ * <li> 既有因池满丢弃的对象，又有新建的对象，说明上限偏小，增大上限</li>
+ * <li> 没有任何借出，上限减半</li>
+ * <li> 有对象因空闲超时被淘汰，上限减去淘汰的个数</li>
+ * </ul>
+ * 没有后台线程，由借还对象的线程顺带检查周期是否结束
+ */
+class IdleCapController {
+
+	private final int maxIdle;
+	private final long windowNanos;
+
+	private volatile int cap;
+	private final AtomicInteger lowWater;
+	private final AtomicLong nextRun;
+
+	// 上个周期结束时的计数，只由抢到 nextRun 的线程写入。
+	// 前后两个周期可能由不同的线程处理，而写入发生在 nextRun 的 CAS 之后，
+	// 不能借助 CAS 发布给下一个周期的线程，因此需要 volatile
+	private volatile long lastBorrows = 0, lastCreations = 0, lastDiscards = 0;
+
+	/**
+	 * @param maxIdle 空闲对象上限的最大值
+	 * @param idleTimeoutMillis 空闲超时时间，也是调整周期
+	 */
+	IdleCapController(int maxIdle, long idleTimeoutMillis) {
+		if (idleTimeoutMillis <= 0)
+			throw new IllegalArgumentException("Illegal idle timeout " + idleTimeoutMillis);
+		this.maxIdle = maxIdle;
+		this.windowNanos = idleTimeoutMillis * 1000000L;
+		cap = maxIdle;
+		lowWater = new AtomicInteger(0);
+		nextRun = new AtomicLong(System.nanoTime() + windowNanos);
+	}
+
+	/**
+	 * 当前的空闲对象上限
+	 */
+	int cap() {
+		return cap;
+	}
+
+	/**
+	 * 借出对象后记录空闲对象数，更新本周期的最低水位
+	 */
+	void observeIdle(int idle) {
+		int lw;
+		while (idle < (lw = lowWater.get())) {
+			if (lowWater.compareAndSet(lw, idle))
+				return;
+		}
+	}
+
+	/**
+	 * 如果周期已经结束，调整上限
+	 *
+	 * @param idle 当前的空闲对象数
+	 * @return 需要淘汰的对象个数，周期没有结束时返回 0
+	 */
+	int maintain(int idle, PoolStats stats) {
+		long now = System.nanoTime();
+		long next = nextRun.get();
+		if (now - next < 0 || !nextRun.compareAndSet(next, now + windowNanos))
+			return 0;
+
+		long borrows = stats.borrows(), creations = stats.creations(), discards = stats.discards();
+		long dBorrows = borrows - lastBorrows, dCreations = creations - lastCreations,
+				dDiscards = discards - lastDiscards;
+		lastBorrows = borrows;
+		lastCreations = creations;
+		lastDiscards = discards;
+
+		int evict = Math.max(0, Math.min(lowWater.get(), idle));
+		int c = cap;
+		if (dDiscards > 0 && dCreations > 0)
+			c = (int) Math.min(maxIdle, c + Math.max(1, Math.min(dDiscards, dCreations)));
+		else if (dBorrows == 0)
+			c = Math.max(1, c / 2);
+		else if (evict > 0)
+			c = Math.max(1, c - evict);
+		cap = c;
+
+		// 超出新上限的部分也一并淘汰
+		if (idle - evict > c)
+			evict = idle - c;
+		lowWater.set(idle - evict);
+		return evict;
+	}
+}
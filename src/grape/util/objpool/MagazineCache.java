@@ -0,0 +1,165 @@
+package grape.util.objpool;
+
+import grape.lockfree.ConcurrentArrayStack;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 对象池前面的 magazine 缓存层(Bonwick)<br/>
+ * <br/>
+ * 每个条带持有一个装载中的 magazine(一个小的对象数组)，线程按照线程号映射到条带上，
+ * 大多数 borrow/return 只访问自己条带上的 magazine，不会触及共享的池。
+ * magazine 空了或者满了时，才与 depot 交换一整个满的或空的 magazine，一次 CAS 交换一批对象<br/>
+ * <br/>
+ * 这里没有使用 ThreadLocal，也没有使用 synchronized：线程用 getAndSet 独占条带上的 magazine，
+ * 用完立即放回，条带正被别的线程占用时直接返回失败，由调用者回退到共享的池。
+ * 因此缓存的对象总数与线程数无关，线程挂起时也不会持有任何锁，
+ * 即使借还对象的是大量的虚拟线程也不会囤积对象或者钉住载体线程
+ *
+ * @param <T> 对象类型
+ */
+class MagazineCache <T> {
+
+	private static class Magazine {
+		final Object[] rounds;
+		int count = 0;
+
+		Magazine(int size) {
+			rounds = new Object[size];
+		}
+	}
+
+	// 最大条带数
+	private static final int MAX_STRIPES = 64;
+
+	// 每个条带上装载中的 magazine，为 null 表示正被某个线程占用
+	private final AtomicReferenceArray<Magazine> loaded;
+	private final int stripeMask;
+	private final int magazineSize;
+
+	// depot: 满的和空的 magazine
+	private final ConcurrentArrayStack<Magazine> fullMagazines;
+	private final ConcurrentArrayStack<Magazine> emptyMagazines;
+
+	/**
+	 * @param magazineSize 每个 magazine 容纳的对象数
+	 * @param maxPooled depot 中最多缓存的对象数
+	 */
+	MagazineCache(int magazineSize, int maxPooled) {
+		this(magazineSize, maxPooled, MAX_STRIPES);
+	}
+
+	/**
+	 * @param maxStripes 最大条带数；条带上装载中的 magazine 不计入 maxPooled，
+	 * 		对象占用内存较大时可以用它限制这部分缓存的对象数
+	 */
+	MagazineCache(int magazineSize, int maxPooled, int maxStripes) {
+		if (magazineSize <= 0)
+			throw new IllegalArgumentException("Illegal magazine size " + magazineSize);
+		if (maxStripes <= 0)
+			throw new IllegalArgumentException("Illegal max stripes " + maxStripes);
+		this.magazineSize = magazineSize;
+
+		int n = Runtime.getRuntime().availableProcessors() * 2;
+		int limit = Math.min(maxStripes, MAX_STRIPES);
+		int stripes = 1;
+		while (stripes < n && (stripes << 1) <= limit)
+			stripes <<= 1;
+		loaded = new AtomicReferenceArray<Magazine>(stripes);
+		for (int i = 0; i < stripes; ++i)
+			loaded.set(i, new Magazine(magazineSize));
+		stripeMask = stripes - 1;
+
+		int fulls = Math.max(1, maxPooled / magazineSize);
+		fullMagazines = new ConcurrentArrayStack<Magazine>(fulls);
+		emptyMagazines = new ConcurrentArrayStack<Magazine>(fulls + stripes);
+	}
+
+	/**
+	 * 条带数，即装载中的 magazine 个数
+	 */
+	int stripes() {
+		return stripeMask + 1;
+	}
+
+	private int stripe() {
+		long id = Thread.currentThread().getId();
+		int h = (int) (id ^ (id >>> 32));
+		h ^= (h >>> 16);
+		return h & stripeMask;
+	}
+
+	/**
+	 * @return null 如果没有缓存的对象，或者条带正被其他线程占用
+	 */
+	T get() {
+		int i = stripe();
+		Magazine m = loaded.getAndSet(i, null);
+		if (m == null)
+			return null;
+
+		if (m.count == 0) {
+			// 用空的 magazine 从 depot 换一个满的
+			Magazine full = fullMagazines.pop();
+			if (full != null) {
+				emptyMagazines.push(m); // depot 满则丢弃
+				m = full;
+			}
+		}
+
+		T ret = null;
+		if (m.count > 0) {
+			@SuppressWarnings("unchecked")
+			T e = (T) m.rounds[--m.count];
+			m.rounds[m.count] = null;
+			ret = e;
+		}
+		loaded.set(i, m);
+		return ret;
+	}
+
+	/**
+	 * @return false 如果缓存已满，或者条带正被其他线程占用
+	 */
+	boolean put(T obj) {
+		int i = stripe();
+		Magazine m = loaded.getAndSet(i, null);
+		if (m == null)
+			return false;
+
+		if (m.count == m.rounds.length) {
+			// 把满的 magazine 交给 depot，换一个空的
+			if (!fullMagazines.push(m)) {
+				loaded.set(i, m);
+				return false;
+			}
+			Magazine empty = emptyMagazines.pop();
+			m = (empty != null ? empty : new Magazine(magazineSize));
+		}
+
+		m.rounds[m.count++] = obj;
+		loaded.set(i, m);
+		return true;
+	}
+
+	/**
+	 * 清空所有缓存的对象；与 get()/put() 并发时，正被占用的条带不会被清空
+	 */
+	void clear() {
+		for (int i = 0, len = loaded.length(); i < len; ++i) {
+			Magazine m = loaded.getAndSet(i, null);
+			if (m == null)
+				continue;
+			while (m.count > 0)
+				m.rounds[--m.count] = null;
+			loaded.set(i, m);
+		}
+
+		Magazine m;
+		while ((m = fullMagazines.pop()) != null) {
+			while (m.count > 0)
+				m.rounds[--m.count] = null;
+			emptyMagazines.push(m);
+		}
+	}
+}
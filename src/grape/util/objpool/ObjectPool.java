@@ -1,6 +1,8 @@
 package grape.util.objpool;
 
-import grape.lockfree.ConcurrentLinkedQueue;
+import grape.lockfree.ConcurrentArrayStack;
+
+import java.util.Arrays;
 
 /**
  * 对象池，用于对象复用，减少系统垃圾回收的压力
@@ -17,22 +19,44 @@ import grape.lockfree.ConcurrentLinkedQueue;
  */
 public class ObjectPool <T> {
 
-	// 对象池
-	private final ConcurrentLinkedQueue<T> pool = new ConcurrentLinkedQueue<T>();
+	// 对象池，使用预分配的数组栈，入池出池都不会产生垃圾；后进先出也更有利于缓存
+	private final ConcurrentArrayStack<T> pool;
 	// 对象工厂
 	private final PoolableObjectFactory<T> factory;
+	// 按线程分条的 magazine 缓存，为 null 表示没有开启
+	private final MagazineCache<T> magazines;
+	// 统计，为 null 表示没有开启
+	private final PoolStats stats;
+	// 自适应的空闲对象上限，为 null 表示没有开启
+	private final IdleCapController idleCap;
 
 	public ObjectPool(PoolableObjectFactory<T> factory) {
 		this.factory = factory;
+		this.pool = new ConcurrentArrayStack<T>(factory.maxPooled());
+		this.magazines = (factory.magazineSize() > 0 ?
+				new MagazineCache<T>(factory.magazineSize(), factory.maxPooled()) : null);
+		this.idleCap = (factory.idleTimeoutMillis() > 0 ?
+				new IdleCapController(factory.maxPooled(), factory.idleTimeoutMillis()) : null);
+		this.stats = (factory.recordStats() || idleCap != null ? new PoolStats() : null);
 	}
 
 	public T borrowObject() {
+		T ret = null;
+
+		// 先从 magazine 中取
+		if (magazines != null)
+			ret = magazines.get();
+
 		// 进入同步代码之前，预先判断一下
-		if (pool.size() == 0)
-			return factory.newObject();
+		if (ret == null && pool.size() > 0)
+			ret = pool.pop(); // 从池中取对象
 
-		// 从池中取对象
-		T ret = pool.tryPop(); // 同步代码
+		if (idleCap != null) {
+			idleCap.observeIdle(pool.size());
+			maintain();
+		}
+		if (stats != null)
+			stats.borrowed(ret != null);
 
 		if (ret == null)
 			return factory.newObject();
@@ -50,19 +74,122 @@ public class ObjectPool <T> {
 	 * @return 一定是 null
 	 */
 	public T returnObject(T obj) {
-		if (obj == null || pool.size() >= factory.maxPooled())
+		if (obj == null)
 			return null;
+		int cap = (idleCap != null ? idleCap.cap() : factory.maxPooled());
+		if (magazines == null && pool.size() >= cap) {
+			if (stats != null)
+				stats.discarded();
+			return null;
+		}
 
 		// 清理对象
 		factory.passivateObject(obj);
 
-		// 对象入池
-		pool.tryPush(obj);
+		// 先放入 magazine
+		if (magazines != null && magazines.put(obj))
+			return null;
+
+		// 对象入池，池满则丢弃
+		if (pool.size() < cap && pool.push(obj)) {
+			if (stats != null)
+				stats.observeIdle(pool.size());
+		} else if (stats != null) {
+			stats.discarded();
+		}
 
+		if (idleCap != null)
+			maintain();
 		return null;
 	}
 
+	/**
+	 * 批量借出 n 个对象，放入 dst[0, n)：先用一次同步操作从池中取出一批，不足的部分由工厂新建
+	 */
+	public void borrowObjects(T[] dst, int n) {
+		if (n < 0 || n > dst.length)
+			throw new IndexOutOfBoundsException("Illegal count " + n);
+
+		int got = pool.popAll(dst, 0, n);
+		if (magazines != null) {
+			T obj;
+			while (got < n && (obj = magazines.get()) != null)
+				dst[got++] = obj;
+		}
+
+		if (idleCap != null) {
+			idleCap.observeIdle(pool.size());
+			maintain();
+		}
+		if (stats != null)
+			stats.borrowed(got, n - got);
+
+		for (int i = got; i < n; ++i)
+			dst[i] = factory.newObject();
+	}
+
+	/**
+	 * 批量归还 src[0, n) 中的对象：批量清理之后，用一次同步操作放回池中，池满则丢弃；
+	 * 返回后 src[0, n) 都被置为 null，其中的 null 元素会被忽略
+	 */
+	public void returnObjects(T[] src, int n) {
+		if (n < 0 || n > src.length)
+			throw new IndexOutOfBoundsException("Illegal count " + n);
+
+		// 去掉 null 元素，把对象移到前面
+		int m = 0;
+		for (int i = 0; i < n; ++i) {
+			if (src[i] != null)
+				src[m++] = src[i];
+		}
+
+		// 池中剩余的空间；有 magazine 时多出的对象还可以放入 magazine
+		int cap = (idleCap != null ? idleCap.cap() : factory.maxPooled());
+		int room = Math.max(0, Math.min(m, cap - pool.size()));
+		int keep = (magazines != null ? m : room);
+
+		// 清理对象
+		factory.passivateObjects(src, keep);
+
+		int kept = (room > 0 ? pool.pushAll(src, 0, room) : 0);
+		if (stats != null && kept > 0)
+			stats.observeIdle(pool.size());
+		if (magazines != null) {
+			while (kept < keep && magazines.put(src[kept]))
+				++kept;
+		}
+		if (stats != null && m > kept)
+			stats.discarded(m - kept);
+
+		Arrays.fill(src, 0, n, null);
+
+		if (idleCap != null)
+			maintain();
+	}
+
+	// 自适应模式下，周期结束时淘汰空闲超时的对象
+	private void maintain() {
+		int evict = idleCap.maintain(pool.size(), stats);
+		int n = 0;
+		while (n < evict && pool.pop() != null)
+			++n;
+		if (n > 0)
+			stats.evicted(n);
+	}
+
+	/**
+	 * @return 统计快照，没有开启统计时返回 null
+	 * @see PoolableObjectFactory#recordStats()
+	 */
+	public PoolStats.Snapshot getStats() {
+		if (stats == null)
+			return null;
+		return stats.snapshot(pool.size(), idleCap != null ? idleCap.cap() : factory.maxPooled());
+	}
+
 	public void clear() {
+		if (magazines != null)
+			magazines.clear();
 		pool.clear();
 	}
 }
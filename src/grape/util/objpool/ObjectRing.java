@@ -2,6 +2,8 @@ package grape.util.objpool;
 
 import grape.lockfree.ConcurrentArrayQueue;
 
+import java.util.Arrays;
+
 /**
  * 对象池
  * 在某些情况下，需要避免大量的 new 操作，故此对象池内部也需要避免 new 操作
@@ -13,14 +15,37 @@ public class ObjectRing <T> {
 	// XXX 使用数组而不是链表，是为了避免反复的 new 节点
 	private final ConcurrentArrayQueue<T> ring;
 	private final PoolableObjectFactory<T> factory;
+	// 按线程分条的 magazine 缓存，为 null 表示没有开启
+	private final MagazineCache<T> magazines;
+	// 统计，为 null 表示没有开启
+	private final PoolStats stats;
+	// 自适应的空闲对象上限，为 null 表示没有开启
+	private final IdleCapController idleCap;
 
 	public ObjectRing(PoolableObjectFactory<T> factory) {
 		this.factory = factory;
 		this.ring = new ConcurrentArrayQueue<T>(factory.maxPooled());
+		this.magazines = (factory.magazineSize() > 0 ?
+				new MagazineCache<T>(factory.magazineSize(), factory.maxPooled()) : null);
+		this.idleCap = (factory.idleTimeoutMillis() > 0 ?
+				new IdleCapController(factory.maxPooled(), factory.idleTimeoutMillis()) : null);
+		this.stats = (factory.recordStats() || idleCap != null ? new PoolStats() : null);
 	}
 
 	public T borrowObject() {
-		T ret = ring.tryPop();
+		T ret = null;
+		if (magazines != null)
+			ret = magazines.get();
+		if (ret == null)
+			ret = ring.tryPop();
+
+		if (idleCap != null) {
+			idleCap.observeIdle(ring.size());
+			maintain();
+		}
+		if (stats != null)
+			stats.borrowed(ret != null);
+
 		if (ret == null)
 			ret = factory.newObject();
 		return ret;
@@ -33,14 +58,111 @@ public class ObjectRing <T> {
 		// 清理对象
 		factory.passivateObject(obj);
 
-		// 对象入池
-		ring.tryPush(obj);
+		// 先放入 magazine，再尝试入池
+		if (magazines != null && magazines.put(obj))
+			return null;
+		int cap = (idleCap != null ? idleCap.cap() : factory.maxPooled());
+		if (ring.size() < cap && ring.tryPush(obj)) {
+			if (stats != null)
+				stats.observeIdle(ring.size());
+		} else if (stats != null) {
+			stats.discarded();
+		}
+
+		if (idleCap != null)
+			maintain();
 
 		// 丢弃对象
 		return null;
 	}
 
+	/**
+	 * 批量借出 n 个对象，放入 dst[0, n)：先用一次同步操作从池中取出一批，不足的部分由工厂新建
+	 */
+	public void borrowObjects(T[] dst, int n) {
+		if (n < 0 || n > dst.length)
+			throw new IndexOutOfBoundsException("Illegal count " + n);
+
+		int got = ring.drainTo(dst, 0, n);
+		if (magazines != null) {
+			T obj;
+			while (got < n && (obj = magazines.get()) != null)
+				dst[got++] = obj;
+		}
+
+		if (idleCap != null) {
+			idleCap.observeIdle(ring.size());
+			maintain();
+		}
+		if (stats != null)
+			stats.borrowed(got, n - got);
+
+		for (int i = got; i < n; ++i)
+			dst[i] = factory.newObject();
+	}
+
+	/**
+	 * 批量归还 src[0, n) 中的对象：批量清理之后，用一次同步操作放回池中，池满则丢弃；
+	 * 返回后 src[0, n) 都被置为 null，其中的 null 元素会被忽略
+	 */
+	public void returnObjects(T[] src, int n) {
+		if (n < 0 || n > src.length)
+			throw new IndexOutOfBoundsException("Illegal count " + n);
+
+		// 去掉 null 元素，把对象移到前面
+		int m = 0;
+		for (int i = 0; i < n; ++i) {
+			if (src[i] != null)
+				src[m++] = src[i];
+		}
+
+		// 池中剩余的空间；有 magazine 时多出的对象还可以放入 magazine
+		int cap = (idleCap != null ? idleCap.cap() : factory.maxPooled());
+		int room = Math.max(0, Math.min(m, cap - ring.size()));
+		int keep = (magazines != null ? m : room);
+
+		// 清理对象
+		factory.passivateObjects(src, keep);
+
+		int kept = (room > 0 ? ring.pushAll(src, 0, room) : 0);
+		if (stats != null && kept > 0)
+			stats.observeIdle(ring.size());
+		if (magazines != null) {
+			while (kept < keep && magazines.put(src[kept]))
+				++kept;
+		}
+		if (stats != null && m > kept)
+			stats.discarded(m - kept);
+
+		Arrays.fill(src, 0, n, null);
+
+		if (idleCap != null)
+			maintain();
+	}
+
+	// 自适应模式下，周期结束时淘汰空闲超时的对象
+	private void maintain() {
+		int evict = idleCap.maintain(ring.size(), stats);
+		int n = 0;
+		while (n < evict && ring.tryPop() != null)
+			++n;
+		if (n > 0)
+			stats.evicted(n);
+	}
+
+	/**
+	 * @return 统计快照，没有开启统计时返回 null
+	 * @see PoolableObjectFactory#recordStats()
+	 */
+	public PoolStats.Snapshot getStats() {
+		if (stats == null)
+			return null;
+		return stats.snapshot(ring.size(), idleCap != null ? idleCap.cap() : factory.maxPooled());
+	}
+
 	public void clear() {
+		if (magazines != null)
+			magazines.clear();
 		ring.clear();
 	}
 }
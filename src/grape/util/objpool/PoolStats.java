@@ -0,0 +1,162 @@
+package grape.util.objpool;
+
+import grape.lockfree.StripedCounters;
+
+/**
+ * 对象池的统计<br/>
+ * <br/>
+ * 计数器按线程分条存放(见 {@link StripedCounters})，借还对象时不会在计数器上互相竞争；
+ * 读取时汇总为一个不可变的 {@link Snapshot}
+ */
+public class PoolStats {
+
+	/**
+	 * 统计快照
+	 */
+	public static class Snapshot {
+
+		private final long borrows, hits, creations, discards, evictions;
+		private final int idle, peakIdle, idleCap;
+
+		Snapshot(long borrows, long hits, long creations, long discards, long evictions,
+				int idle, int peakIdle, int idleCap) {
+			this.borrows = borrows;
+			this.hits = hits;
+			this.creations = creations;
+			this.discards = discards;
+			this.evictions = evictions;
+			this.idle = idle;
+			this.peakIdle = peakIdle;
+			this.idleCap = idleCap;
+		}
+
+		/**
+		 * 借出的对象数
+		 */
+		public long getBorrows() {
+			return borrows;
+		}
+
+		/**
+		 * 从池中(包括 magazine)取到对象的次数
+		 */
+		public long getHits() {
+			return hits;
+		}
+
+		/**
+		 * 池中没有对象，由工厂新建对象的次数
+		 */
+		public long getCreations() {
+			return creations;
+		}
+
+		/**
+		 * 归还时因为池满而丢弃的对象数
+		 */
+		public long getDiscards() {
+			return discards;
+		}
+
+		/**
+		 * 自适应模式下，因为空闲超时而淘汰的对象数
+		 */
+		public long getEvictions() {
+			return evictions;
+		}
+
+		/**
+		 * 取快照时共享池中的空闲对象数，不包括 magazine 中的对象
+		 */
+		public int getIdle() {
+			return idle;
+		}
+
+		/**
+		 * 观察到的共享池中空闲对象数的峰值
+		 */
+		public int getPeakIdle() {
+			return peakIdle;
+		}
+
+		/**
+		 * 取快照时的空闲对象上限
+		 */
+		public int getIdleCap() {
+			return idleCap;
+		}
+
+		/**
+		 * 命中率，没有借出过对象时返回 0
+		 */
+		public double getHitRatio() {
+			return borrows == 0 ? 0 : (double) hits / borrows;
+		}
+
+		@Override
+		public String toString() {
+			return "borrows=" + borrows + ", hits=" + hits + ", creations=" + creations +
+					", discards=" + discards + ", evictions=" + evictions + ", idle=" + idle +
+					", peakIdle=" + peakIdle + ", idleCap=" + idleCap;
+		}
+	}
+
+	// 每个条带中各计数器的位置
+	private static final int BORROWS = 0, HITS = 1, CREATIONS = 2, DISCARDS = 3,
+			EVICTIONS = 4, PEAK_IDLE = 5;
+
+	private final StripedCounters counters = new StripedCounters(PEAK_IDLE + 1);
+
+	PoolStats() {
+	}
+
+	void borrowed(boolean hit) {
+		int stripe = counters.stripe();
+		counters.add(stripe, BORROWS, 1);
+		counters.add(stripe, hit ? HITS : CREATIONS, 1);
+	}
+
+	void borrowed(int hits, int creations) {
+		int stripe = counters.stripe();
+		counters.add(stripe, BORROWS, hits + creations);
+		counters.add(stripe, HITS, hits);
+		counters.add(stripe, CREATIONS, creations);
+	}
+
+	void discarded() {
+		counters.increment(DISCARDS);
+	}
+
+	void discarded(int n) {
+		counters.add(DISCARDS, n);
+	}
+
+	void evicted(int n) {
+		counters.add(EVICTIONS, n);
+	}
+
+	/**
+	 * 记录观察到的空闲对象数，更新本条带的峰值
+	 */
+	void observeIdle(int idle) {
+		counters.updateMax(PEAK_IDLE, idle);
+	}
+
+	long borrows() {
+		return counters.sum(BORROWS);
+	}
+
+	long creations() {
+		return counters.sum(CREATIONS);
+	}
+
+	long discards() {
+		return counters.sum(DISCARDS);
+	}
+
+	Snapshot snapshot(int idle, int idleCap) {
+		return new Snapshot(counters.sum(BORROWS), counters.sum(HITS), counters.sum(CREATIONS),
+				counters.sum(DISCARDS), counters.sum(EVICTIONS), idle, (int) counters.max(PEAK_IDLE),
+				idleCap);
+	}
+}
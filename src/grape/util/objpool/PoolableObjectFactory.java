@@ -17,10 +17,46 @@ public abstract class PoolableObjectFactory <T> {
 	 */
 	public abstract void passivateObject(T obj);
 
+	/**
+	 * 批量还原对象状态，默认逐个调用 {@link #passivateObject(Object)}
+	 */
+	public void passivateObjects(T[] objs, int n) {
+		for (int i = 0; i < n; ++i)
+			passivateObject(objs[i]);
+	}
+
 	/**
 	 * 最多缓存的对象数
 	 */
 	public int maxPooled() {
 		return 10;
 	}
+
+	/**
+	 * 每个 magazine 缓存的对象数，0 表示不使用 magazine 层<br/>
+	 * <br/>
+	 * 开启后，对象池前面会有按线程分条的 magazine 缓存，
+	 * 大多数借还操作不再访问共享的池；相应地，缓存的对象总数会超过 {@link #maxPooled()}
+	 */
+	public int magazineSize() {
+		return 0;
+	}
+
+	/**
+	 * 是否记录统计，见 {@link ObjectPool#getStats()}
+	 */
+	public boolean recordStats() {
+		return false;
+	}
+
+	/**
+	 * 空闲超时时间(毫秒)，0 表示不淘汰空闲对象<br/>
+	 * <br/>
+	 * 大于 0 时开启自适应模式：每隔这段时间，淘汰在这段时间内一直空闲的对象，
+	 * 并根据借出和新建的情况在 [1, {@link #maxPooled()}] 范围内调整空闲对象上限；
+	 * 自适应模式总是记录统计
+	 */
+	public long idleTimeoutMillis() {
+		return 0;
+	}
 }
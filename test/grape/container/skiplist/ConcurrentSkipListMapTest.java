@@ -0,0 +1,124 @@
+package grape.container.skiplist;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ConcurrentSkipListMapTest {
+
+	@Test
+	public void test() {
+		ConcurrentSkipListMap<Integer, String> sl = new ConcurrentSkipListMap<Integer, String>();
+		assertTrue(sl.isEmpty());
+		assertEquals(null, sl.put(2, "2"));
+		sl.put(4, "4");
+		sl.put(3, "3");
+		sl.put(6, "6");
+		sl.put(5, "5");
+		assertEquals(5, sl.size());
+		assertTrue(sl.containsKey(2));
+		assertEquals("3", sl.get(3));
+		assertEquals(null, sl.get(7));
+
+		assertEquals("2", sl.put(2, "two"));
+		assertEquals("two", sl.putIfAbsent(2, "2"));
+		assertEquals(null, sl.putIfAbsent(1, "1"));
+		assertTrue(sl.replace(1, "1", "one"));
+		assertFalse(sl.replace(1, "1", "one"));
+		assertEquals("one", sl.replace(1, "1"));
+
+		assertEquals("4", sl.remove(4));
+		assertEquals(null, sl.remove(4));
+		assertFalse(sl.remove(5, "x"));
+		assertTrue(sl.remove(5, "5"));
+		assertEquals(4, sl.size());
+
+		// 有序遍历
+		int last = Integer.MIN_VALUE;
+		Iterator<Map.Entry<Integer, String> > iter = sl.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry<Integer, String> e = iter.next();
+			assertTrue(e.getKey() > last);
+			last = e.getKey();
+			if (e.getKey() == 3)
+				iter.remove();
+		}
+		assertEquals(3, sl.size());
+		assertFalse(sl.containsKey(3));
+
+		sl.clear();
+		assertTrue(sl.isEmpty());
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		final ConcurrentSkipListMap<Integer, Integer> sl = new ConcurrentSkipListMap<Integer, Integer>();
+		final int count = 20000;
+		final AtomicInteger errors = new AtomicInteger(0);
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; ++i) {
+			final int id = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					// 每个线程插入自己的 key，然后删除其中的偶数
+					for (int j = id; j < count; j += 4)
+						sl.put(j, j);
+					for (int j = id; j < count; j += 4) {
+						if (j % 2 == 0 && !Integer.valueOf(j).equals(sl.remove(j)))
+							errors.incrementAndGet();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread t : threads)
+			t.join();
+
+		assertEquals(0, errors.get());
+		assertEquals(count / 2, sl.size());
+		for (int i = 0; i < count; ++i)
+			assertEquals(i % 2 == 0 ? null : Integer.valueOf(i), sl.get(i));
+	}
+
+	// 对比性能测试
+	@Test
+	public void testThroughput() throws InterruptedException {
+		int count = 50000;
+		long start = System.currentTimeMillis();
+		run(Collections.synchronizedMap(new SkipListMap<Integer, Integer>()), count);
+		long time1 = System.currentTimeMillis();
+		run(new ConcurrentSkipListMap<Integer, Integer>(), count);
+		long end = System.currentTimeMillis();
+		System.out.println("synchronized SkipListMap: " + (time1 - start));
+		System.out.println("ConcurrentSkipListMap: " + (end - time1));
+	}
+
+	// 4 个线程，读写比 4:1
+	private static void run(final Map<Integer, Integer> m, final int count) throws InterruptedException {
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; ++i) {
+			final int id = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < count; ++j) {
+						int k = (j * 31 + id) % 4096;
+						if (j % 5 == 0)
+							m.put(k, j);
+						else
+							m.get(k);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread t : threads)
+			t.join();
+	}
+}
@@ -0,0 +1,51 @@
+package grape.dataio.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ByteArrayInputOutputTest {
+
+	@Test
+	public void testWriteThenRead() {
+		ByteArrayInputOutput io = new ByteArrayInputOutput();
+		io.writeInt(0x12345678);
+		io.writeLong(-2L);
+		io.writeByte(7);
+		assertEquals(13, io.length());
+		assertEquals(13, io.toArray().length);
+
+		io.seek(0);
+		assertEquals(13, io.available());
+		assertEquals(0x12345678, io.readInt());
+		assertEquals(-2L, io.readLong());
+		assertEquals(7, io.readByte());
+		assertEquals(0, io.available());
+	}
+
+	// 覆盖写不会改变长度
+	@Test
+	public void testOverwrite() {
+		ByteArrayInputOutput io = new ByteArrayInputOutput();
+		io.writeInt(1);
+		io.writeInt(2);
+		io.seek(0);
+		io.writeInt(3);
+		assertEquals(8, io.length());
+		io.seek(0);
+		assertEquals(3, io.readInt());
+		assertEquals(2, io.readInt());
+	}
+
+	// 扩容后之前写入的数据仍然可以读回
+	@Test
+	public void testGrow() {
+		ByteArrayInputOutput io = new ByteArrayInputOutput(4);
+		for (int i = 0; i < 1000; ++i)
+			io.writeInt(i);
+		assertEquals(4000, io.length());
+		io.seek(0);
+		for (int i = 0; i < 1000; ++i)
+			assertEquals(i, io.readInt());
+	}
+}
@@ -0,0 +1,345 @@
+package grape.lockfree;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class BlockingArrayQueueTest {
+
+	@Test
+	public void testSmoke() throws InterruptedException {
+		BlockingArrayQueue<Integer> q = new BlockingArrayQueue<Integer>(2);
+		assertTrue(q.isEmpty());
+		assertEquals(2, q.remainingCapacity());
+		assertNull(q.poll());
+		assertNull(q.poll(10, TimeUnit.MILLISECONDS));
+
+		assertTrue(q.offer(1));
+		q.put(2);
+		assertFalse(q.offer(3));
+		assertFalse(q.offer(3, 10, TimeUnit.MILLISECONDS));
+		assertEquals(2, q.size());
+		assertEquals(0, q.remainingCapacity());
+
+		assertEquals(Integer.valueOf(1), q.take());
+		assertEquals(Integer.valueOf(2), q.poll(10, TimeUnit.MILLISECONDS));
+
+		try {
+			q.offer(null);
+			fail();
+		} catch (NullPointerException e) {
+		}
+
+		q.add(4);
+		q.add(5);
+		List<Integer> l = new ArrayList<Integer>();
+		assertEquals(1, q.drainTo(l, 1));
+		assertEquals(1, q.drainTo(l));
+		assertEquals(2, l.size());
+		assertEquals(Integer.valueOf(4), l.get(0));
+		assertEquals(Integer.valueOf(5), l.get(1));
+		assertTrue(q.isEmpty());
+	}
+
+	@Test
+	public void testBlocking() throws InterruptedException {
+		final BlockingArrayQueue<Integer> q = new BlockingArrayQueue<Integer>(
+				new ConcurrentArrayQueue<Integer>(1));
+		q.put(1);
+
+		// 生产者挂起在满队列上，直到消费者取走元素
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					q.put(2);
+				} catch (InterruptedException e) {
+				}
+			}
+		};
+		producer.start();
+		Thread.sleep(50);
+		assertTrue(producer.isAlive());
+		assertEquals(Integer.valueOf(1), q.take());
+		producer.join(5000);
+		assertFalse(producer.isAlive());
+		assertEquals(Integer.valueOf(2), q.take());
+
+		// 消费者挂起在空队列上，直到生产者放入元素
+		final AtomicLong got = new AtomicLong(0);
+		Thread consumer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					got.set(q.take());
+				} catch (InterruptedException e) {
+				}
+			}
+		};
+		consumer.start();
+		Thread.sleep(50);
+		assertTrue(consumer.isAlive());
+		q.put(7);
+		consumer.join(5000);
+		assertFalse(consumer.isAlive());
+		assertEquals(7, got.get());
+
+		// 挂起时响应中断
+		consumer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					q.take();
+				} catch (InterruptedException e) {
+					got.set(-1);
+				}
+			}
+		};
+		consumer.start();
+		Thread.sleep(50);
+		consumer.interrupt();
+		consumer.join(5000);
+		assertEquals(-1, got.get());
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		BlockingArrayQueue<Integer> q = new BlockingArrayQueue<Integer>(4);
+		assertEquals(MpmcArrayQueueTest.expectedSum(4, 20000), run(q, 4, 4, 20000));
+		assertTrue(q.isEmpty());
+	}
+
+	@Test
+	public void testExecutor() throws InterruptedException {
+		final int count = 10000;
+		final CountDownLatch done = new CountDownLatch(count);
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(4, 4, 1, TimeUnit.SECONDS,
+				new BlockingArrayQueue<Runnable>(count));
+		for (int i = 0; i < count; ++i) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					done.countDown();
+				}
+			});
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testPeekAndIterate() {
+		BlockingArrayQueue<Integer> q = new BlockingArrayQueue<Integer>(8);
+		assertNull(q.peek());
+		assertFalse(q.iterator().hasNext());
+		for (int i = 0; i < 5; ++i)
+			q.add(i);
+		assertEquals(Integer.valueOf(0), q.peek());
+		assertEquals(Integer.valueOf(0), q.element());
+		assertTrue(q.contains(3));
+		assertFalse(q.contains(5));
+		assertEquals(Arrays.asList(0, 1, 2, 3, 4), Arrays.asList(q.toArray()));
+
+		// 删除的元素不再可见，出队时被跳过
+		assertTrue(q.remove(Integer.valueOf(2)));
+		assertFalse(q.remove(Integer.valueOf(2)));
+		assertEquals(4, q.size());
+		assertFalse(q.contains(2));
+		Iterator<Integer> it = q.iterator();
+		assertEquals(Integer.valueOf(0), it.next());
+		it.remove();
+		assertEquals(Integer.valueOf(1), q.peek());
+		assertEquals(Arrays.asList(1, 3, 4), new ArrayList<Integer>(q));
+		assertEquals(Integer.valueOf(1), q.poll());
+		assertEquals(Integer.valueOf(3), q.poll());
+		assertEquals(Integer.valueOf(4), q.poll());
+		assertNull(q.poll());
+		assertTrue(q.isEmpty());
+
+		// 同一个对象多次入队，只删除其中一次
+		BlockingArrayQueue<Object> q2 = new BlockingArrayQueue<Object>(
+				new ConcurrentArrayQueue<Object>(8));
+		Object a = new Object(), b = new Object();
+		q2.add(a);
+		q2.add(b);
+		q2.add(a);
+		assertTrue(q2.remove(a));
+		assertEquals(2, q2.size());
+		assertEquals(Arrays.asList(b, a), Arrays.asList(q2.toArray()));
+		assertSame(b, q2.poll());
+		assertSame(a, q2.poll());
+		assertNull(q2.poll());
+	}
+
+	@Test
+	public void testConcurrentRemove() throws InterruptedException {
+		// 每个元素要么被消费者取走，要么被删除，不会两者都发生或者都不发生
+		final BlockingArrayQueue<Integer> q = new BlockingArrayQueue<Integer>(64);
+		final int count = 100000;
+		final AtomicLong sum = new AtomicLong(0), removedSum = new AtomicLong(0);
+		final AtomicLong consumed = new AtomicLong(0);
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < count; ++i)
+						q.put(i);
+				} catch (InterruptedException e) {
+				}
+			}
+		};
+		Thread remover = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < count; i += 7) {
+					if (q.remove(Integer.valueOf(i))) {
+						removedSum.addAndGet(i);
+						consumed.incrementAndGet();
+					}
+				}
+			}
+		};
+		Thread[] consumers = new Thread[2];
+		for (int i = 0; i < consumers.length; ++i) {
+			consumers[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						long s = 0;
+						while (consumed.get() < count) {
+							Integer v = q.poll(1, TimeUnit.MILLISECONDS);
+							if (v == null)
+								continue;
+							s += v;
+							consumed.incrementAndGet();
+						}
+						sum.addAndGet(s);
+					} catch (InterruptedException e) {
+					}
+				}
+			};
+		}
+		producer.start();
+		remover.start();
+		for (Thread t : consumers)
+			t.start();
+		producer.join();
+		remover.join();
+		for (Thread t : consumers)
+			t.join();
+		assertEquals((long) count * (count - 1) / 2, sum.get() + removedSum.get());
+		assertTrue(q.isEmpty());
+	}
+
+	@Test
+	public void testExecutorRemove() throws InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+				new BlockingArrayQueue<Runnable>(16));
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		final AtomicLong ran = new AtomicLong(0);
+		Runnable[] tasks = new Runnable[4];
+		for (int i = 0; i < tasks.length; ++i) {
+			tasks[i] = new Runnable() {
+				@Override
+				public void run() {
+					ran.incrementAndGet();
+				}
+			};
+			executor.execute(tasks[i]);
+		}
+		Future<?> cancelled = executor.submit(tasks[0]);
+		assertEquals(5, executor.getQueue().size());
+
+		assertTrue(executor.remove(tasks[1]));
+		assertTrue(cancelled.cancel(false));
+		executor.purge();
+		assertEquals(3, executor.getQueue().size());
+
+		List<Runnable> rest = executor.shutdownNow();
+		assertEquals(3, rest.size());
+		assertTrue(rest.contains(tasks[0]));
+		assertFalse(rest.contains(tasks[1]));
+		release.countDown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		assertEquals(0, ran.get());
+	}
+
+	// 对比性能测试
+	@Test
+	public void testThroughput() throws InterruptedException {
+		int count = 200000;
+		long start = System.currentTimeMillis();
+		run(new ArrayBlockingQueue<Integer>(1024), 2, 2, count);
+		long time1 = System.currentTimeMillis();
+		run(new BlockingArrayQueue<Integer>(1024), 2, 2, count);
+		long end = System.currentTimeMillis();
+		System.out.println("ArrayBlockingQueue 2P2C: " + (time1 - start));
+		System.out.println("BlockingArrayQueue 2P2C: " + (end - time1));
+	}
+
+	/**
+	 * 每个生产者 put [0, count)，消费者 take 直到取完，返回取得的元素之和
+	 */
+	static long run(final BlockingQueue<Integer> q, int producers, final int consumers,
+			final int count) throws InterruptedException {
+		final long total = (long) producers * count;
+		final AtomicLong sum = new AtomicLong(0);
+		Thread[] threads = new Thread[producers + consumers];
+		for (int i = 0; i < producers; ++i) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < count; ++j)
+							q.put(j);
+					} catch (InterruptedException e) {
+					}
+				}
+			};
+		}
+		for (int i = producers; i < threads.length; ++i) {
+			final int id = i - producers;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					// 每个消费者取固定个数，最后一个消费者取余数
+					long n = total / consumers + (id == consumers - 1 ? total % consumers : 0);
+					long s = 0;
+					try {
+						for (long j = 0; j < n; ++j)
+							s += q.take();
+					} catch (InterruptedException e) {
+					}
+					sum.addAndGet(s);
+				}
+			};
+		}
+		for (Thread t : threads)
+			t.start();
+		for (Thread t : threads)
+			t.join();
+		return sum.get();
+	}
+}
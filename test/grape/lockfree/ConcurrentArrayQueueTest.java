@@ -0,0 +1,172 @@
+package grape.lockfree;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ConcurrentArrayQueueTest {
+
+	@Test
+	public void testSmoke() {
+		ConcurrentArrayQueue<Integer> q = new ConcurrentArrayQueue<Integer>(2);
+		assertEquals(2, q.capacity());
+		assertTrue(q.isEmpty());
+
+		assertTrue(q.push(1));
+		assertTrue(q.push(2));
+		assertFalse(q.push(3));
+		assertEquals(2, q.size());
+
+		assertEquals(Integer.valueOf(1), q.pop());
+		assertEquals(Integer.valueOf(2), q.pop());
+		assertEquals(null, q.pop());
+	}
+
+	@Test
+	public void testBatch() {
+		ConcurrentArrayQueue<Integer> q = new ConcurrentArrayQueue<Integer>(5);
+		Integer[] src = {0, 1, 2, 3, 4, 5, 6};
+		assertEquals(2, q.pushAll(src, 0, 2));
+		assertEquals(3, q.pushAll(src, 2, 7));
+		assertEquals(0, q.pushAll(src, 5, 7));
+		assertEquals(5, q.size());
+
+		List<Integer> out = new ArrayList<Integer>();
+		assertEquals(3, q.drainTo(out, 3));
+		assertEquals(2, q.size());
+
+		final List<Integer> rest = new ArrayList<Integer>();
+		assertEquals(2, q.drain(new Consumer<Integer>() {
+			@Override
+			public void accept(Integer e) {
+				rest.add(e);
+			}
+		}, 10));
+		out.addAll(rest);
+		for (int i = 0; i < 5; ++i)
+			assertEquals(Integer.valueOf(i), out.get(i));
+		assertEquals(0, q.drainTo(out, 10));
+		assertTrue(q.isEmpty());
+
+		// 跨越环尾的批量操作
+		assertEquals(4, q.pushAll(src, 0, 4));
+		out.clear();
+		assertEquals(4, q.drainTo(out, 4));
+		assertEquals(Integer.valueOf(3), out.get(3));
+
+		// 出队到数组
+		Integer[] dst = new Integer[6];
+		assertEquals(5, q.pushAll(src, 2, 7));
+		assertEquals(3, q.drainTo(dst, 1, 4));
+		assertArrayEquals(new Integer[] {null, 2, 3, 4, null, null}, dst);
+		assertEquals(2, q.drainTo(dst, 0, 6));
+		assertEquals(Integer.valueOf(6), dst[1]);
+		assertEquals(0, q.drainTo(dst, 0, 6));
+	}
+
+	@Test(timeout = 20000)
+	public void testConcurrentDrainToArray() throws InterruptedException {
+		final int producers = 2, consumers = 4, perProducer = 100000;
+		final ConcurrentArrayQueue<Integer> q = new ConcurrentArrayQueue<Integer>(64);
+		final AtomicInteger received = new AtomicInteger(0), errors = new AtomicInteger(0);
+		final boolean[] seen = new boolean[producers * perProducer];
+		Thread[] threads = new Thread[producers + consumers];
+		for (int i = 0; i < producers; ++i) {
+			final int base = i * perProducer;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < perProducer; ++j) {
+						while (!q.push(base + j))
+							Thread.yield();
+					}
+				}
+			};
+		}
+		for (int i = 0; i < consumers; ++i) {
+			threads[producers + i] = new Thread() {
+				@Override
+				public void run() {
+					Integer[] dst = new Integer[8];
+					while (received.get() < producers * perProducer) {
+						int n = q.drainTo(dst, 1, 8);
+						for (int j = 1; j < 1 + n; ++j) {
+							synchronized (seen) {
+								if (seen[dst[j]])
+									errors.incrementAndGet();
+								seen[dst[j]] = true;
+							}
+						}
+						// 取走的元素之后不能留下属于其他消费者的元素
+						for (int j = 1 + n; j < 8; ++j) {
+							if (dst[j] != null)
+								errors.incrementAndGet();
+						}
+						if (dst[0] != null)
+							errors.incrementAndGet();
+						received.addAndGet(n);
+						Arrays.fill(dst, null);
+					}
+				}
+			};
+		}
+		for (Thread t : threads)
+			t.start();
+		for (Thread t : threads)
+			t.join();
+		assertEquals(0, errors.get());
+		assertEquals(producers * perProducer, received.get());
+	}
+
+	@Test
+	public void testBlocking() throws InterruptedException {
+		WaitStrategy[] strategies = {
+				WaitStrategy.busySpin(),
+				WaitStrategy.spinThenYield(100),
+				WaitStrategy.spinThenPark(100, 10, 1000),
+				WaitStrategy.timedPark(1000, 1000000)
+		};
+		for (WaitStrategy ws : strategies) {
+			final ConcurrentArrayQueue<Integer> q = new ConcurrentArrayQueue<Integer>(1, ws);
+			assertEquals(null, q.take(1, TimeUnit.MILLISECONDS));
+			q.put(0);
+			assertFalse(q.put(1, 1, TimeUnit.MILLISECONDS));
+
+			Thread producer = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 1; i < 100; ++i)
+							q.put(i);
+					} catch (InterruptedException e) {
+						fail();
+					}
+				}
+			};
+			producer.start();
+			for (int i = 0; i < 100; ++i)
+				assertEquals(Integer.valueOf(i), q.take());
+			producer.join();
+			assertTrue(q.isEmpty());
+		}
+	}
+
+	@Test
+	public void testTakeInterrupted() {
+		ConcurrentArrayQueue<Integer> q = new ConcurrentArrayQueue<Integer>(1,
+				WaitStrategy.timedPark(1000, 1000000));
+		Thread.currentThread().interrupt();
+		try {
+			q.take();
+			fail();
+		} catch (InterruptedException e) {
+			assertFalse(Thread.currentThread().isInterrupted());
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package grape.lockfree;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class ConcurrentArrayStackTest {
+
+	@Test
+	public void testSmoke() {
+		ConcurrentArrayStack<Integer> q = new ConcurrentArrayStack<Integer>(2);
+		assertEquals(2, q.capacity());
+		assertEquals(0, q.size());
+		assertTrue(q.isEmpty());
+
+		assertTrue(q.push(1));
+		assertTrue(q.push(2));
+		assertFalse(q.push(3));
+		assertEquals(2, q.size());
+		assertEquals(Integer.valueOf(2), q.top());
+
+		assertEquals(Integer.valueOf(2), q.pop());
+		assertEquals(1, q.size());
+		assertTrue(q.push(3));
+		assertEquals(Integer.valueOf(3), q.pop());
+		assertEquals(Integer.valueOf(1), q.pop());
+		assertEquals(0, q.size());
+		assertEquals(null, q.pop());
+		assertEquals(null, q.top());
+
+		ConcurrentArrayStack<Integer> empty = new ConcurrentArrayStack<Integer>(0);
+		assertFalse(empty.push(1));
+		assertEquals(null, empty.pop());
+	}
+
+	@Test
+	public void testBatch() {
+		ConcurrentArrayStack<Integer> q = new ConcurrentArrayStack<Integer>(5);
+		Integer[] src = {0, 1, 2, 3, 4, 5, 6};
+		assertEquals(3, q.pushAll(src, 0, 3));
+		assertEquals(Integer.valueOf(2), q.top());
+		assertEquals(2, q.pushAll(src, 3, 7));
+		assertEquals(0, q.pushAll(src, 5, 7));
+		assertEquals(5, q.size());
+		assertEquals(Integer.valueOf(4), q.top());
+
+		// 弹出的顺序与逐个 pop() 相同
+		Integer[] dst = new Integer[7];
+		assertEquals(2, q.popAll(dst, 1, 3));
+		assertArrayEquals(new Integer[] {null, 4, 3, null, null, null, null}, dst);
+		assertTrue(q.push(9));
+		assertEquals(4, q.popAll(dst, 0, 7));
+		assertArrayEquals(new Integer[] {9, 2, 1, 0, null, null, null}, dst);
+		assertEquals(0, q.popAll(dst, 0, 7));
+		assertTrue(q.isEmpty());
+
+		// 节点全部回到空闲栈
+		assertEquals(5, q.pushAll(src, 0, 7));
+		assertFalse(q.push(7));
+	}
+
+	@Test
+	public void testBatchConcurrent() throws InterruptedException {
+		final ConcurrentArrayStack<Integer> q = new ConcurrentArrayStack<Integer>(64);
+		final int threads = 4, rounds = 20000, batch = 8;
+		final AtomicLong sum = new AtomicLong(0);
+		Thread[] ts = new Thread[threads];
+		for (int i = 0; i < threads; ++i) {
+			ts[i] = new Thread() {
+				@Override
+				public void run() {
+					Integer[] buf = new Integer[batch];
+					long s = 0;
+					for (int r = 0; r < rounds; ++r) {
+						for (int j = 0; j < batch; ++j)
+							buf[j] = j;
+						int pushed = q.pushAll(buf, 0, batch);
+						for (int j = 0; j < pushed; ++j)
+							s += j;
+						int popped = q.popAll(buf, 0, batch);
+						for (int j = 0; j < popped; ++j)
+							s -= buf[j];
+					}
+					sum.addAndGet(s);
+				}
+			};
+			ts[i].start();
+		}
+		for (Thread t : ts)
+			t.join();
+
+		// 剩余在栈中的元素之和等于压入减去弹出
+		Integer e;
+		long rest = 0;
+		while ((e = q.pop()) != null)
+			rest += e;
+		assertEquals(sum.get(), rest);
+		assertEquals(64, q.pushAll(new Integer[100], 0, 100));
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		final ConcurrentArrayStack<Integer> q = new ConcurrentArrayStack<Integer>(8);
+		final int count = 50000;
+		final AtomicLong sum = new AtomicLong(0);
+		Thread[] ts = new Thread[4];
+		for (int i = 0; i < ts.length; ++i) {
+			ts[i] = new Thread() {
+				@Override
+				public void run() {
+					long s = 0;
+					for (int j = 0; j < count; ++j) {
+						while (!q.push(j)) {
+							Integer v = q.pop();
+							if (v != null)
+								s += v;
+						}
+						Integer v = q.pop();
+						if (v != null)
+							s += v;
+					}
+					sum.addAndGet(s);
+				}
+			};
+			ts[i].start();
+		}
+		for (Thread t : ts)
+			t.join();
+		for (Integer v = q.pop(); v != null; v = q.pop())
+			sum.addAndGet(v);
+		assertEquals(4L * count * (count - 1) / 2, sum.get());
+		assertEquals(0, q.size());
+	}
+}
@@ -0,0 +1,174 @@
+package grape.lockfree;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class ConcurrentLinkedArrayQueueTest {
+
+	@Test
+	public void testSmoke() {
+		ConcurrentLinkedArrayQueue<Integer> q = new ConcurrentLinkedArrayQueue<Integer>(4);
+		assertEquals(0, q.size());
+		assertTrue(q.isEmpty());
+		assertEquals(null, q.pop());
+
+		for (int i = 0; i < 10; ++i)
+			q.push(i);
+		assertEquals(10, q.size());
+		assertEquals(Integer.valueOf(0), q.top());
+
+		for (int i = 0; i < 10; ++i) {
+			assertEquals(Integer.valueOf(i), q.top());
+			assertEquals(Integer.valueOf(i), q.pop());
+		}
+		assertEquals(0, q.size());
+		assertEquals(null, q.pop());
+		assertEquals(null, q.top());
+
+		q.push(null);
+		assertTrue(q.tryPush(1));
+		assertEquals(2, q.size());
+		assertEquals(null, q.tryPop());
+		assertEquals(Integer.valueOf(1), q.tryPop());
+		assertTrue(q.isEmpty());
+	}
+
+	@Test
+	public void testBatch() {
+		ConcurrentLinkedArrayQueue<Integer> q = new ConcurrentLinkedArrayQueue<Integer>(4);
+		q.pushAll(new Integer[] {0, 1, 2, 3, 4, 5, 6}, 0, 7);
+		assertEquals(7, q.size());
+
+		List<Integer> out = new ArrayList<Integer>();
+		assertEquals(3, q.drainTo(out, 3));
+		assertEquals(1, q.drainTo(out, 3)); // 一次只取一个段内的元素
+		assertEquals(3, q.drainTo(out, 10));
+		assertEquals(0, q.drainTo(out, 10));
+		for (int i = 0; i < 7; ++i)
+			assertEquals(Integer.valueOf(i), out.get(i));
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		ConcurrentLinkedArrayQueue<Integer> q = new ConcurrentLinkedArrayQueue<Integer>(16);
+		assertEquals(4L * 20000 * 19999 / 2, run(q, 4, 4, 20000));
+		assertTrue(q.isEmpty());
+	}
+
+	@Test
+	public void testStaleConsumerIndex() throws InterruptedException {
+		// 段很短，消费者频繁回收数组，持有过时 consumerIndex 的消费者会读到被清空的槽位
+		for (int round = 0; round < 20; ++round) {
+			final ConcurrentLinkedArrayQueue<Integer> q = new ConcurrentLinkedArrayQueue<Integer>(2);
+			final int n = 20000;
+			for (int i = 0; i < n; ++i)
+				q.push(i);
+			final AtomicLong consumed = new AtomicLong(0);
+			Thread[] threads = new Thread[4];
+			for (int i = 0; i < threads.length; ++i) {
+				final int id = i;
+				threads[i] = new Thread() {
+					@Override
+					public void run() {
+						List<Integer> batch = new ArrayList<Integer>();
+						while (true) {
+							if (id % 2 == 0) {
+								if (q.pop() == null)
+									break;
+								consumed.incrementAndGet();
+							} else {
+								batch.clear();
+								int k = q.drainTo(batch, 3);
+								if (k == 0)
+									break;
+								consumed.addAndGet(k);
+							}
+						}
+					}
+				};
+			}
+			for (Thread t : threads)
+				t.start();
+			for (Thread t : threads)
+				t.join();
+			// 每个消费者都只在确认队列为空时才退出
+			assertEquals(n, consumed.get());
+			assertTrue(q.isEmpty());
+		}
+	}
+
+	// 对比性能测试
+	@Test
+	public void testThroughput() throws InterruptedException {
+		int count = 200000;
+		long start = System.currentTimeMillis();
+		run(new ConcurrentLinkedQueue<Integer>(), 2, 2, count);
+		long time1 = System.currentTimeMillis();
+		run(new ConcurrentLinkedArrayQueue<Integer>(), 2, 2, count);
+		long end = System.currentTimeMillis();
+		System.out.println("ConcurrentLinkedQueue 2P2C: " + (time1 - start));
+		System.out.println("ConcurrentLinkedArrayQueue 2P2C: " + (end - time1));
+	}
+
+	/**
+	 * 每个生产者推入 [0, count)，返回消费者取得的元素之和
+	 */
+	private static long run(final Object q, int producers, int consumers,
+			final int count) throws InterruptedException {
+		final long total = (long) producers * count;
+		final AtomicLong consumed = new AtomicLong(0), sum = new AtomicLong(0);
+		Thread[] threads = new Thread[producers + consumers];
+		for (int i = 0; i < producers; ++i) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < count; ++j)
+						push(q, j);
+				}
+			};
+		}
+		for (int i = producers; i < threads.length; ++i) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					long s = 0;
+					while (consumed.get() < total) {
+						Integer v = pop(q);
+						if (v == null) {
+							Thread.yield();
+							continue;
+						}
+						s += v;
+						consumed.incrementAndGet();
+					}
+					sum.addAndGet(s);
+				}
+			};
+		}
+		for (Thread t : threads)
+			t.start();
+		for (Thread t : threads)
+			t.join();
+		return sum.get();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void push(Object q, int v) {
+		if (q instanceof ConcurrentLinkedQueue)
+			((ConcurrentLinkedQueue<Integer>) q).push(v);
+		else
+			((ConcurrentLinkedArrayQueue<Integer>) q).push(v);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Integer pop(Object q) {
+		if (q instanceof ConcurrentLinkedQueue)
+			return ((ConcurrentLinkedQueue<Integer>) q).pop();
+		return ((ConcurrentLinkedArrayQueue<Integer>) q).pop();
+	}
+}
@@ -3,6 +3,9 @@ package grape.lockfree;
 import static org.junit.Assert.*;
 import grape.lockfree.ConcurrentLinkedQueue;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 
 public class ConcurrentLinkedQueueTest {
@@ -25,4 +28,26 @@ public class ConcurrentLinkedQueueTest {
 		assertEquals(0, q.size());
 		assertEquals(null, q.pop());
 	}
+
+	@Test
+	public void testBatch() {
+		ConcurrentLinkedQueue<Integer> q = new ConcurrentLinkedQueue<Integer>();
+		q.push(0);
+		q.pushAll(new Integer[] {1, 2, 3, 4}, 0, 4);
+		q.push(5);
+		assertEquals(6, q.size());
+
+		List<Integer> out = new ArrayList<Integer>();
+		assertEquals(4, q.drainTo(out, 4));
+		assertEquals(2, q.size());
+		assertEquals(Integer.valueOf(4), q.top());
+		assertEquals(2, q.drainTo(out, 10));
+		assertTrue(q.isEmpty());
+		assertEquals(0, q.drainTo(out, 10));
+		for (int i = 0; i < 6; ++i)
+			assertEquals(Integer.valueOf(i), out.get(i));
+
+		q.push(6);
+		assertEquals(Integer.valueOf(6), q.pop());
+	}
 }
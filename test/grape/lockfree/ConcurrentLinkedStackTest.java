@@ -5,6 +5,7 @@ import static org.junit.Assert.*;
 import grape.lockfree.ConcurrentLinkedStack;
 
 import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Test;
 
@@ -29,6 +30,66 @@ public class ConcurrentLinkedStackTest {
 		assertEquals(null, q.pop());
 	}
 
+	@Test
+	public void testElimination() throws InterruptedException {
+		ConcurrentLinkedStack<Integer> q = new ConcurrentLinkedStack<Integer>(4);
+		q.push(1);
+		q.push(2);
+		assertEquals(Integer.valueOf(2), q.pop());
+		assertEquals(Integer.valueOf(1), q.pop());
+		assertEquals(null, q.pop());
+
+		assertEquals(4L * 50000 * 49999 / 2, run(q, 4, 50000));
+		assertTrue(q.isEmpty());
+	}
+
+	// 对比性能测试
+	@Test
+	public void testThroughput() throws InterruptedException {
+		int count = 200000;
+		long start = System.currentTimeMillis();
+		run(new ConcurrentLinkedStack<Integer>(), 4, count);
+		long time1 = System.currentTimeMillis();
+		run(new ConcurrentLinkedStack<Integer>(2), 4, count);
+		long end = System.currentTimeMillis();
+		System.out.println("ConcurrentLinkedStack: " + (time1 - start));
+		System.out.println("ConcurrentLinkedStack(elimination): " + (end - time1));
+	}
+
+	/**
+	 * 每个线程交替 push [0, count) 和 pop，返回 pop 得到的元素之和
+	 */
+	private static long run(final ConcurrentLinkedStack<Integer> q, int threads,
+			final int count) throws InterruptedException {
+		final AtomicLong sum = new AtomicLong(0);
+		Thread[] ts = new Thread[threads];
+		for (int i = 0; i < threads; ++i) {
+			ts[i] = new Thread() {
+				@Override
+				public void run() {
+					long s = 0;
+					for (int j = 0; j < count; ++j) {
+						q.push(j);
+						Integer v = q.pop();
+						if (v != null)
+							s += v;
+					}
+					sum.addAndGet(s);
+				}
+			};
+		}
+		for (Thread t : ts)
+			t.start();
+		for (Thread t : ts)
+			t.join();
+
+		// 剩余的元素
+		long s = 0;
+		for (Integer v = q.pop(); v != null; v = q.pop())
+			s += v;
+		return sum.get() + s;
+	}
+
 	// 对比性能测试
 	@Test
 	public void testSample() {
@@ -0,0 +1,135 @@
+package grape.lockfree;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ContentionStatsTest {
+
+	@Test
+	public void testDisabled() {
+		assertNull(new ConcurrentArrayQueue<Integer>(4).getStats());
+		assertNull(new ConcurrentLinkedQueue<Integer>().getStats());
+		assertNull(new ConcurrentLinkedStack<Integer>().getStats());
+	}
+
+	@Test
+	public void testArrayQueue() {
+		ConcurrentArrayQueue<Integer> q = new ConcurrentArrayQueue<Integer>(2,
+				WaitStrategy.busySpin(), true);
+		ContentionStats stats = q.getStats();
+		assertNotNull(stats);
+
+		assertNull(q.pop());
+		assertTrue(q.push(1));
+		assertTrue(q.push(2));
+		assertFalse(q.push(3));
+		assertFalse(q.tryPush(3));
+		assertEquals(Integer.valueOf(1), q.pop());
+		assertEquals(Integer.valueOf(2), q.pop());
+		assertNull(q.tryPop());
+
+		ContentionStats.Snapshot s = stats.snapshot();
+		assertEquals(2, s.getFullRejections());
+		assertEquals(2, s.getEmptyRejections());
+		assertEquals(2, s.getPeakSize());
+		assertEquals(0, s.getCasFailures()); // 单线程不会有 CAS 失败
+
+		stats.reset();
+		s = stats.snapshot();
+		assertEquals(0, s.getFullRejections());
+		assertEquals(0, s.getPeakSize());
+	}
+
+	@Test
+	public void testLinked() {
+		ConcurrentLinkedQueue<Integer> q = new ConcurrentLinkedQueue<Integer>(true);
+		for (int i = 0; i < 5; ++i)
+			q.push(i);
+		q.pushAll(new Integer[] {5, 6, 7}, 0, 3);
+		while (q.pop() != null) {}
+		assertEquals(0, q.drain(new Consumer<Integer>() {
+			@Override
+			public void accept(Integer e) {}
+		}, 10));
+		ContentionStats.Snapshot s = q.getStats().snapshot();
+		assertEquals(8, s.getPeakSize());
+		assertEquals(2, s.getEmptyRejections());
+		assertEquals(0, s.getFullRejections());
+
+		ConcurrentLinkedStack<Integer> st = new ConcurrentLinkedStack<Integer>(0, true);
+		st.push(1);
+		st.push(2);
+		st.pop();
+		st.push(3);
+		st.pop();
+		st.pop();
+		assertNull(st.pop());
+		s = st.getStats().snapshot();
+		assertEquals(2, s.getPeakSize());
+		assertEquals(1, s.getEmptyRejections());
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		final ContentionStats stats = new ContentionStats();
+		final int threads = 4, count = 100000;
+		Thread[] ts = new Thread[threads];
+		for (int i = 0; i < threads; ++i) {
+			final int id = i;
+			ts[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < count; ++j) {
+						stats.casFailure();
+						stats.waited();
+					}
+					stats.observeSize(id * 10);
+				}
+			};
+			ts[i].start();
+		}
+		for (int i = 0; i < threads; ++i)
+			ts[i].join();
+
+		ContentionStats.Snapshot s = stats.snapshot();
+		assertEquals(threads * count, s.getCasFailures());
+		assertEquals(threads * count, s.getWaits());
+		assertEquals(0, s.getRetries());
+		assertEquals((threads - 1) * 10, s.getPeakSize());
+	}
+
+	// 对比性能测试
+	@Test
+	public void testOverhead() throws InterruptedException {
+		final int count = 2000000;
+		for (int round = 0; round < 2; ++round) {
+			for (int k = 0; k < 2; ++k) {
+				boolean record = (k == 1);
+				final ConcurrentArrayQueue<Integer> q = new ConcurrentArrayQueue<Integer>(1024,
+						WaitStrategy.spinThenYield(0), record);
+				Thread producer = new Thread() {
+					@Override
+					public void run() {
+						Integer v = 1;
+						for (int i = 0; i < count; ++i) {
+							while (!q.push(v))
+								Thread.yield();
+						}
+					}
+				};
+				long start = System.nanoTime();
+				producer.start();
+				for (int i = 0; i < count; ) {
+					if (q.pop() != null)
+						++i;
+				}
+				producer.join();
+				long ms = (System.nanoTime() - start) / 1000000;
+				if (round == 1)
+					System.out.println("ConcurrentArrayQueue stats " + (record ? "on" : "off") + ": " + ms + "ms" +
+							(record ? " (" + q.getStats().snapshot() + ")" : ""));
+			}
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package grape.lockfree;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class IntConcurrentArrayQueueTest {
+
+	@Test
+	public void testSmoke() {
+		IntConcurrentArrayQueue q = new IntConcurrentArrayQueue(3);
+		assertEquals(4, q.capacity());
+		assertTrue(q.isEmpty());
+		assertEquals(-1, q.pop(-1));
+
+		for (int i = 0; i < 4; ++i)
+			assertTrue(q.push(i));
+		assertFalse(q.push(4));
+		assertFalse(q.tryPush(4));
+		assertEquals(4, q.size());
+
+		assertEquals(0, q.pop(-1));
+		assertEquals(1, q.tryPop(-1));
+		assertTrue(q.push(4));
+		assertEquals(3, q.size());
+
+		int[] buf = new int[5];
+		assertEquals(3, q.drain(buf, 1, 5));
+		assertArrayEquals(new int[] {0, 2, 3, 4, 0}, buf);
+		assertEquals(0, q.drain(buf, 0, 1));
+
+		// 哨兵值与元素相同时仍可通过 drain 区分
+		q.push(-1);
+		assertEquals(1, q.drain(buf, 0, 1));
+		assertEquals(-1, buf[0]);
+
+		q.push(7);
+		q.clear();
+		assertTrue(q.isEmpty());
+		assertEquals(-1, q.pop(-1));
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		IntConcurrentArrayQueue q = new IntConcurrentArrayQueue(64);
+		assertEquals(MpmcArrayQueueTest.expectedSum(4, 20000), run(q, 4, 4, 20000));
+		assertTrue(q.isEmpty());
+	}
+
+	// 对比性能测试
+	@Test
+	public void testThroughput() throws InterruptedException {
+		int count = 200000;
+		long start = System.currentTimeMillis();
+		MpmcArrayQueueTest.run(new MpmcArrayQueue<Integer>(1024), 2, 2, count);
+		long time1 = System.currentTimeMillis();
+		run(new IntConcurrentArrayQueue(1024), 2, 2, count);
+		long end = System.currentTimeMillis();
+		System.out.println("MpmcArrayQueue<Integer> 2P2C: " + (time1 - start));
+		System.out.println("IntConcurrentArrayQueue 2P2C: " + (end - time1));
+	}
+
+	/**
+	 * 每个生产者推入 [0, count)，返回消费者取得的元素之和
+	 */
+	static long run(final IntConcurrentArrayQueue q, int producers, int consumers,
+			final int count) throws InterruptedException {
+		final long total = (long) producers * count;
+		final AtomicLong consumed = new AtomicLong(0), sum = new AtomicLong(0);
+		Thread[] threads = new Thread[producers + consumers];
+		for (int i = 0; i < producers; ++i) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < count; ++j) {
+						while (!q.push(j))
+							Thread.yield();
+					}
+				}
+			};
+		}
+		for (int i = producers; i < threads.length; ++i) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					int[] buf = new int[16];
+					long s = 0;
+					while (consumed.get() < total) {
+						int n = q.drain(buf, 0, buf.length);
+						if (n == 0) {
+							Thread.yield();
+							continue;
+						}
+						for (int k = 0; k < n; ++k)
+							s += buf[k];
+						consumed.addAndGet(n);
+					}
+					sum.addAndGet(s);
+				}
+			};
+		}
+		for (Thread t : threads)
+			t.start();
+		for (Thread t : threads)
+			t.join();
+		return sum.get();
+	}
+}
@@ -0,0 +1,101 @@
+package grape.lockfree;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class MpmcArrayQueueTest {
+
+	@Test
+	public void testSmoke() {
+		MpmcArrayQueue<Integer> q = new MpmcArrayQueue<Integer>(3);
+		assertEquals(4, q.capacity());
+		assertTrue(q.isEmpty());
+		assertEquals(null, q.pop());
+
+		for (int i = 0; i < 4; ++i)
+			assertTrue(q.push(i));
+		assertFalse(q.push(4));
+		assertFalse(q.tryPush(4));
+		assertEquals(4, q.size());
+
+		assertEquals(Integer.valueOf(0), q.pop());
+		assertEquals(Integer.valueOf(1), q.tryPop());
+		assertTrue(q.push(4));
+		assertEquals(3, q.size());
+
+		q.clear();
+		assertTrue(q.isEmpty());
+		assertEquals(null, q.pop());
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		final MpmcArrayQueue<Integer> q = new MpmcArrayQueue<Integer>(64);
+		assertEquals(expectedSum(4, 20000), run(q, 4, 4, 20000));
+		assertTrue(q.isEmpty());
+	}
+
+	// 对比性能测试
+	@Test
+	public void testThroughput() throws InterruptedException {
+		int count = 200000;
+		long start = System.currentTimeMillis();
+		run(new ConcurrentArrayQueue<Integer>(1024), 2, 2, count);
+		long time1 = System.currentTimeMillis();
+		run(new MpmcArrayQueue<Integer>(1024), 2, 2, count);
+		long end = System.currentTimeMillis();
+		System.out.println("ConcurrentArrayQueue 2P2C: " + (time1 - start));
+		System.out.println("MpmcArrayQueue 2P2C: " + (end - time1));
+	}
+
+	static long expectedSum(int producers, int count) {
+		return (long) producers * count * (count - 1) / 2;
+	}
+
+	/**
+	 * 每个生产者推入 [0, count)，返回消费者取得的元素之和
+	 */
+	static long run(final BoundedQueue<Integer> q, int producers, int consumers,
+			final int count) throws InterruptedException {
+		final long total = (long) producers * count;
+		final AtomicLong consumed = new AtomicLong(0), sum = new AtomicLong(0);
+		Thread[] threads = new Thread[producers + consumers];
+		for (int i = 0; i < producers; ++i) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < count; ++j) {
+						while (!q.push(j))
+							Thread.yield();
+					}
+				}
+			};
+		}
+		for (int i = producers; i < threads.length; ++i) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					long s = 0;
+					while (consumed.get() < total) {
+						Integer v = q.pop();
+						if (v == null) {
+							Thread.yield();
+							continue;
+						}
+						s += v;
+						consumed.incrementAndGet();
+					}
+					sum.addAndGet(s);
+				}
+			};
+		}
+		for (Thread t : threads)
+			t.start();
+		for (Thread t : threads)
+			t.join();
+		return sum.get();
+	}
+}
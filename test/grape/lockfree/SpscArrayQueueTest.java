@@ -0,0 +1,42 @@
+package grape.lockfree;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SpscArrayQueueTest {
+
+	@Test
+	public void testSmoke() {
+		SpscArrayQueue<Integer> q = new SpscArrayQueue<Integer>(2);
+		assertEquals(2, q.capacity());
+		assertTrue(q.push(1));
+		assertTrue(q.tryPush(2));
+		assertFalse(q.push(3));
+		assertEquals(Integer.valueOf(1), q.pop());
+		assertEquals(Integer.valueOf(2), q.tryPop());
+		assertEquals(null, q.pop());
+		assertTrue(q.isEmpty());
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		SpscArrayQueue<Integer> q = new SpscArrayQueue<Integer>(64);
+		assertEquals(MpmcArrayQueueTest.expectedSum(1, 20000),
+				MpmcArrayQueueTest.run(q, 1, 1, 20000));
+		assertTrue(q.isEmpty());
+	}
+
+	// 对比性能测试
+	@Test
+	public void testThroughput() throws InterruptedException {
+		int count = 200000;
+		long start = System.currentTimeMillis();
+		MpmcArrayQueueTest.run(new ConcurrentArrayQueue<Integer>(1024), 1, 1, count);
+		long time1 = System.currentTimeMillis();
+		MpmcArrayQueueTest.run(new SpscArrayQueue<Integer>(1024), 1, 1, count);
+		long end = System.currentTimeMillis();
+		System.out.println("ConcurrentArrayQueue 1P1C: " + (time1 - start));
+		System.out.println("SpscArrayQueue 1P1C: " + (end - time1));
+	}
+}
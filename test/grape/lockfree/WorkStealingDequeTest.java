@@ -0,0 +1,84 @@
+package grape.lockfree;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class WorkStealingDequeTest {
+
+	@Test
+	public void testSmoke() {
+		WorkStealingDeque<Integer> d = new WorkStealingDeque<Integer>(2);
+		assertTrue(d.isEmpty());
+		assertEquals(null, d.pop());
+		assertEquals(null, d.steal());
+
+		for (int i = 0; i < 10; ++i)
+			d.push(i); // 会扩容
+		assertEquals(10, d.size());
+
+		assertEquals(Integer.valueOf(9), d.pop());
+		assertEquals(Integer.valueOf(0), d.steal());
+		assertEquals(Integer.valueOf(1), d.steal());
+		assertEquals(Integer.valueOf(8), d.pop());
+		assertEquals(6, d.size());
+
+		for (int i = 7; i >= 2; --i)
+			assertEquals(Integer.valueOf(i), d.pop());
+		assertEquals(null, d.pop());
+		assertEquals(null, d.steal());
+		assertTrue(d.isEmpty());
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		final WorkStealingDeque<Integer> d = new WorkStealingDeque<Integer>(4);
+		final int count = 100000;
+		final AtomicLong sum = new AtomicLong(0), taken = new AtomicLong(0);
+
+		Thread[] thieves = new Thread[3];
+		for (int i = 0; i < thieves.length; ++i) {
+			thieves[i] = new Thread() {
+				@Override
+				public void run() {
+					long s = 0;
+					while (taken.get() < count) {
+						Integer v = d.steal();
+						if (v == null) {
+							Thread.yield();
+							continue;
+						}
+						s += v;
+						taken.incrementAndGet();
+					}
+					sum.addAndGet(s);
+				}
+			};
+			thieves[i].start();
+		}
+
+		// 拥有者
+		long s = 0;
+		for (int i = 0; i < count; ++i) {
+			d.push(i);
+			if (i % 3 == 0) {
+				Integer v = d.pop();
+				if (v != null) {
+					s += v;
+					taken.incrementAndGet();
+				}
+			}
+		}
+		for (Integer v = d.pop(); v != null; v = d.pop()) {
+			s += v;
+			taken.incrementAndGet();
+		}
+		sum.addAndGet(s);
+
+		for (Thread t : thieves)
+			t.join();
+		assertEquals((long) count * (count - 1) / 2, sum.get());
+	}
+}
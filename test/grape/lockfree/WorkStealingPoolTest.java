@@ -0,0 +1,112 @@
+package grape.lockfree;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.junit.Test;
+
+public class WorkStealingPoolTest {
+
+	static class Fib extends WorkStealingPool.Task {
+		final int n;
+		int result;
+
+		Fib(int n) {
+			this.n = n;
+		}
+
+		@Override
+		protected void compute() {
+			if (n < 2) {
+				result = n;
+				return;
+			}
+			Fib f1 = new Fib(n - 1), f2 = new Fib(n - 2);
+			f1.fork();
+			f2.compute();
+			f1.join();
+			result = f1.result + f2.result;
+		}
+	}
+
+	@SuppressWarnings("serial")
+	static class FjFib extends RecursiveTask<Integer> {
+		final int n;
+
+		FjFib(int n) {
+			this.n = n;
+		}
+
+		@Override
+		protected Integer compute() {
+			if (n < 2)
+				return n;
+			FjFib f1 = new FjFib(n - 1), f2 = new FjFib(n - 2);
+			f1.fork();
+			return f2.compute() + f1.join();
+		}
+	}
+
+	@Test
+	public void testFib() {
+		WorkStealingPool pool = new WorkStealingPool(4);
+		Fib f = new Fib(20);
+		pool.invoke(f);
+		assertTrue(f.isDone());
+		assertEquals(6765, f.result);
+		pool.shutdown();
+	}
+
+	@Test
+	public void testExecute() throws InterruptedException {
+		WorkStealingPool pool = new WorkStealingPool(2);
+		final CountDownLatch latch = new CountDownLatch(100);
+		for (int i = 0; i < 100; ++i) {
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					latch.countDown();
+				}
+			});
+		}
+		latch.await();
+		pool.shutdown();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testException() {
+		WorkStealingPool pool = new WorkStealingPool(2);
+		try {
+			pool.invoke(new WorkStealingPool.Task() {
+				@Override
+				protected void compute() {
+					throw new IllegalArgumentException();
+				}
+			});
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	// 对比性能测试
+	@Test
+	public void testThroughput() {
+		int n = 25, parallelism = Runtime.getRuntime().availableProcessors();
+		long start = System.currentTimeMillis();
+		ForkJoinPool fj = new ForkJoinPool(parallelism);
+		int r1 = fj.invoke(new FjFib(n));
+		fj.shutdown();
+		long time1 = System.currentTimeMillis();
+		WorkStealingPool pool = new WorkStealingPool(parallelism);
+		Fib f = new Fib(n);
+		pool.invoke(f);
+		pool.shutdown();
+		long end = System.currentTimeMillis();
+		assertEquals(r1, f.result);
+		System.out.println("ForkJoinPool: " + (time1 - start));
+		System.out.println("WorkStealingPool: " + (end - time1));
+	}
+}
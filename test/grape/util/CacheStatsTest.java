@@ -0,0 +1,119 @@
+package grape.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.Test;
+
+public class CacheStatsTest {
+
+	@Test
+	public void testBuckets() {
+		assertEquals(0, CacheStats.bucketLowerBound(0));
+		assertEquals(1024, CacheStats.bucketUpperBound(0));
+		for (int i = 1; i < CacheStats.HISTOGRAM_BUCKETS; ++i) {
+			assertEquals(CacheStats.bucketUpperBound(i - 1), CacheStats.bucketLowerBound(i));
+			if (i < CacheStats.HISTOGRAM_BUCKETS - 1)
+				assertEquals(CacheStats.bucketLowerBound(i) * 4, CacheStats.bucketUpperBound(i));
+		}
+		assertEquals(Long.MAX_VALUE, CacheStats.bucketUpperBound(CacheStats.HISTOGRAM_BUCKETS - 1));
+	}
+
+	@Test
+	public void testMRUCache() throws ExecutionException {
+		final long[] now = { 1 };
+		MRUCache<Integer, String> c = new MRUCache<Integer, String>(2) {
+			@Override
+			long currentTimeNanos() {
+				return now[0];
+			}
+		};
+		assertNull(c.getStats());
+		c.recordStats();
+
+		c.put(1, "a");
+		c.put(2, "b");
+		now[0] += 5000;
+		assertEquals("a", c.get(1));
+		assertNull(c.get(3));
+		c.put(3, "c"); // 淘汰 2，年龄 5000 纳秒
+		assertEquals("a", c.remove(1));
+		assertNull(c.remove(1));
+
+		CacheStats.Snapshot s = c.getStats();
+		assertEquals(1, s.getHits());
+		assertEquals(1, s.getMisses());
+		assertEquals(0.5, s.getHitRatio(), 1e-9);
+		assertEquals(3, s.getPuts());
+		assertEquals(1, s.getEvictions());
+		assertEquals(1, s.getRemoves());
+		assertEquals(5000, s.getAverageEvictionAge(), 1e-9);
+		long[] h = s.getEvictionAgeHistogram();
+		assertEquals(1, h[2]); // [4096, 16384)
+
+		// 加载
+		CacheLoader<Integer, String> loader = new CacheLoader<Integer, String>() {
+			@Override
+			public String load(Integer key) {
+				now[0] += 100000;
+				return "v" + key;
+			}
+		};
+		assertEquals("v5", c.get(5, loader));
+		CacheStats.Snapshot t = c.getStats();
+		assertEquals(1, t.getLoadSuccesses());
+		assertEquals(0, t.getLoadFailures());
+		assertEquals(100000, t.getTotalLoadTime());
+		assertEquals(1, t.getLoadTimeHistogram()[4]); // [65536, 262144)
+
+		// 窗口内的统计
+		CacheStats.Snapshot d = t.minus(s);
+		assertEquals(0, d.getHits());
+		assertEquals(1, d.getMisses());
+		assertEquals(0.0, t.hitRatioSince(s), 1e-9);
+		assertEquals(1, d.getLoadSuccesses());
+	}
+
+	// 开启统计之前写入的数据，淘汰年龄未知
+	@Test
+	public void testUnknownAge() {
+		MRUCache<Integer, String> c = new MRUCache<Integer, String>(1);
+		c.put(1, "a");
+		c.recordStats();
+		c.put(2, "b");
+		CacheStats.Snapshot s = c.getStats();
+		assertEquals(1, s.getEvictions());
+		assertEquals(0, s.getAverageEvictionAge(), 1e-9);
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		final ConcurrentMRUCache<Integer, Integer> c = new ConcurrentMRUCache<Integer, Integer>(100, 8);
+		c.recordStats();
+		final int threads = 4, ops = 20000;
+		Thread[] ts = new Thread[threads];
+		for (int i = 0; i < threads; ++i) {
+			ts[i] = new Thread() {
+				@Override
+				public void run() {
+					ThreadLocalRandom r = ThreadLocalRandom.current();
+					for (int j = 0; j < ops; ++j) {
+						int k = r.nextInt(200);
+						if (c.get(k) == null)
+							c.put(k, k);
+					}
+				}
+			};
+			ts[i].start();
+		}
+		for (Thread t : ts)
+			t.join();
+
+		CacheStats.Snapshot s = c.getStats();
+		assertEquals(threads * ops, s.getRequests());
+		assertEquals(s.getMisses(), s.getPuts());
+		assertTrue(s.getEvictions() <= s.getPuts() - c.size()); // 并发未命中同一个 key 时，后一次 put 是更新
+	}
+}
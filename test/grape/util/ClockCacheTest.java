@@ -0,0 +1,191 @@
+package grape.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class ClockCacheTest {
+
+	@Test
+	public void testSmoke() {
+		ClockCache<Integer, String> c = new ClockCache<Integer, String>(3);
+		assertNull(c.put(1, "a"));
+		assertNull(c.put(2, "b"));
+		assertNull(c.put(3, "c"));
+		assertEquals("a", c.get(1));
+		assertEquals("a", c.get(1));
+
+		// 1 有访问标记，得到第二次机会；淘汰 2
+		assertEquals("b", c.put(4, "d"));
+		assertNull(c.get(2));
+		assertEquals("a", c.get(1));
+		assertEquals(3, c.size());
+
+		assertEquals("a", c.put(1, "A"));
+		assertEquals("A", c.remove(1));
+		assertNull(c.remove(1));
+		assertEquals(2, c.size());
+
+		// 删除后空出的槽位被直接使用
+		assertNull(c.put(5, "e"));
+		assertEquals(3, c.size());
+		assertNull(c.put(6, null)); // null 值等于删除
+
+		c.clear();
+		assertEquals(0, c.size());
+		for (int i = 0; i < 3; ++i)
+			assertNull(c.put(i, "v" + i));
+		assertEquals(3, c.getCapacity());
+	}
+
+	// 所有数据都有访问标记时，转一圈后淘汰指针所在的数据
+	@Test
+	public void testAllReferenced() {
+		ClockCache<Integer, Integer> c = new ClockCache<Integer, Integer>(4);
+		for (int i = 0; i < 4; ++i)
+			c.put(i, i);
+		for (int i = 0; i < 4; ++i)
+			c.get(i);
+		assertEquals(Integer.valueOf(0), c.put(4, 4));
+		assertEquals(Integer.valueOf(1), c.put(5, 5));
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		final ClockCache<Integer, Integer> c = new ClockCache<Integer, Integer>(100);
+		final AtomicInteger errors = new AtomicInteger(0);
+		Thread[] ts = new Thread[4];
+		for (int i = 0; i < ts.length; ++i) {
+			ts[i] = new Thread() {
+				@Override
+				public void run() {
+					ThreadLocalRandom r = ThreadLocalRandom.current();
+					for (int j = 0; j < 100000; ++j) {
+						int k = r.nextInt(300);
+						Integer v = c.get(k);
+						if (v == null)
+							c.put(k, k);
+						else if (v.intValue() != k)
+							errors.incrementAndGet();
+						if (r.nextInt(100) == 0)
+							c.remove(k);
+					}
+				}
+			};
+			ts[i].start();
+		}
+		for (Thread t : ts)
+			t.join();
+		assertEquals(0, errors.get());
+		assertTrue(c.size() <= 100);
+	}
+
+	// 对比性能测试：读多写少时与 MRUCache 对比
+	@Test
+	public void testUpdateRacingEviction() throws InterruptedException {
+		// 每个写入的值最终要么被某次 put()/remove() 返回，要么仍在缓存中，不会丢失也不会重复
+		final ClockCache<Integer, Integer> c = new ClockCache<Integer, Integer>(4);
+		final int keys = 8, perThread = 50000;
+		final AtomicLong puts = new AtomicLong(0), putSum = new AtomicLong(0);
+		final AtomicLong returned = new AtomicLong(0), returnedSum = new AtomicLong(0);
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; ++i) {
+			final int id = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					ThreadLocalRandom rnd = ThreadLocalRandom.current();
+					for (int j = 1; j <= perThread; ++j) {
+						int k = rnd.nextInt(keys);
+						Integer old;
+						if (rnd.nextInt(16) == 0) {
+							old = c.remove(k);
+						} else {
+							int v = id * perThread + j;
+							puts.incrementAndGet();
+							putSum.addAndGet(v);
+							old = c.put(k, v);
+						}
+						if (old != null) {
+							returned.incrementAndGet();
+							returnedSum.addAndGet(old);
+						}
+					}
+				}
+			};
+		}
+		for (Thread t : threads)
+			t.start();
+		for (Thread t : threads)
+			t.join();
+		long remaining = 0, remainingSum = 0;
+		for (int k = 0; k < keys; ++k) {
+			Integer v = c.remove(k);
+			if (v != null) {
+				++remaining;
+				remainingSum += v;
+			}
+		}
+		assertEquals(0, c.size());
+		assertEquals(puts.get(), returned.get() + remaining);
+		assertEquals(putSum.get(), returnedSum.get() + remainingSum);
+	}
+
+	@Test
+	public void testPerformance() throws InterruptedException {
+		final int threads = 4, ops = 500000, cap = 10000;
+		for (int round = 0; round < 2; ++round) {
+			final ClockCache<Integer, Integer> c = new ClockCache<Integer, Integer>(cap);
+			final MRUCache<Integer, Integer> m = new MRUCache<Integer, Integer>(cap);
+			for (int i = 0; i < cap; ++i) {
+				c.put(i, i);
+				m.put(i, i);
+			}
+
+			long start = System.currentTimeMillis();
+			Thread[] ts = new Thread[threads];
+			for (int i = 0; i < threads; ++i) {
+				ts[i] = new Thread() {
+					@Override
+					public void run() {
+						ThreadLocalRandom r = ThreadLocalRandom.current();
+						for (int j = 0; j < ops; ++j) {
+							int k = r.nextInt(cap + cap / 20);
+							if (c.get(k) == null)
+								c.put(k, k);
+						}
+					}
+				};
+				ts[i].start();
+			}
+			for (Thread t : ts)
+				t.join();
+			long t1 = System.currentTimeMillis() - start;
+
+			start = System.currentTimeMillis();
+			for (int i = 0; i < threads; ++i) {
+				ts[i] = new Thread() {
+					@Override
+					public void run() {
+						ThreadLocalRandom r = ThreadLocalRandom.current();
+						for (int j = 0; j < ops; ++j) {
+							int k = r.nextInt(cap + cap / 20);
+							if (m.get(k) == null)
+								m.put(k, k);
+						}
+					}
+				};
+				ts[i].start();
+			}
+			for (Thread t : ts)
+				t.join();
+			long t2 = System.currentTimeMillis() - start;
+			if (round == 1)
+				System.out.println("ClockCache: " + t1 + "ms, MRUCache: " + t2 + "ms");
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package grape.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ConcurrentMRUCacheTest {
+
+	@Test
+	public void testSmoke() {
+		// 单个段时与 MRUCache 的行为完全一致
+		ConcurrentMRUCache<Integer, String> c = new ConcurrentMRUCache<Integer, String>(2, 1);
+		assertEquals(1, c.getSegmentCount());
+		assertNull(c.put(1, "a"));
+		assertNull(c.put(2, "b"));
+		assertEquals("a", c.get(1));
+		assertEquals("b", c.put(3, "c")); // 淘汰最久未使用的 2
+		assertNull(c.get(2));
+		assertEquals("a", c.put(1, "A")); // 替换
+		assertEquals(2, c.size());
+		assertEquals("A", c.remove(1));
+		assertNull(c.remove(1));
+		c.clear();
+		assertEquals(0, c.size());
+	}
+
+	@Test
+	public void testSegments() {
+		ConcurrentMRUCache<Integer, Integer> c = new ConcurrentMRUCache<Integer, Integer>(100, 8);
+		assertEquals(8, c.getSegmentCount());
+		for (int i = 0; i < 1000; ++i)
+			c.put(i, i);
+		assertTrue(c.size() <= 100);
+		assertTrue(c.size() > 50);
+
+		// 最近放入的数据都在缓存中
+		for (int i = 990; i < 1000; ++i)
+			assertEquals(Integer.valueOf(i), c.get(i));
+
+		// 段数不超过容量
+		assertEquals(2, new ConcurrentMRUCache<Integer, Integer>(3, 64).getSegmentCount());
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		final ConcurrentMRUCache<Integer, Integer> c = new ConcurrentMRUCache<Integer, Integer>(1000, 16);
+		final AtomicInteger errors = new AtomicInteger(0);
+		Thread[] ts = new Thread[4];
+		for (int i = 0; i < ts.length; ++i) {
+			ts[i] = new Thread() {
+				@Override
+				public void run() {
+					ThreadLocalRandom r = ThreadLocalRandom.current();
+					for (int j = 0; j < 100000; ++j) {
+						int k = r.nextInt(2000);
+						Integer v = c.get(k);
+						if (v != null && v.intValue() != k)
+							errors.incrementAndGet();
+						else if (v == null)
+							c.put(k, k);
+					}
+				}
+			};
+			ts[i].start();
+		}
+		for (Thread t : ts)
+			t.join();
+		assertEquals(0, errors.get());
+		assertTrue(c.size() <= 1000);
+	}
+
+	// 对比性能测试
+	@Test
+	public void testThroughput() throws InterruptedException {
+		final int threads = 4, count = 200000, keys = 20000;
+		final MRUCache<Integer, Integer> single = new MRUCache<Integer, Integer>(keys);
+		final ConcurrentMRUCache<Integer, Integer> striped = new ConcurrentMRUCache<Integer, Integer>(keys);
+		for (int i = 0; i < keys; ++i) {
+			single.put(i, i);
+			striped.put(i, i);
+		}
+		for (int k = 0; k < 2; ++k) {
+			final boolean useStriped = (k == 1);
+			Thread[] ts = new Thread[threads];
+			for (int i = 0; i < threads; ++i) {
+				ts[i] = new Thread() {
+					@Override
+					public void run() {
+						ThreadLocalRandom r = ThreadLocalRandom.current();
+						for (int j = 0; j < count; ++j) {
+							int key = r.nextInt(keys);
+							if (useStriped)
+								striped.get(key);
+							else
+								single.get(key);
+						}
+					}
+				};
+			}
+			long start = System.currentTimeMillis();
+			for (Thread t : ts)
+				t.start();
+			for (Thread t : ts)
+				t.join();
+			System.out.println((useStriped ? "ConcurrentMRUCache" : "MRUCache") + " " + threads +
+					" threads get: " + (System.currentTimeMillis() - start));
+		}
+	}
+
+	@Test
+	public void testLoader() throws ExecutionException {
+		ConcurrentMRUCache<Integer, String> c = new ConcurrentMRUCache<Integer, String>(64, 8);
+		final AtomicInteger loads = new AtomicInteger(0);
+		CacheLoader<Integer, String> loader = new CacheLoader<Integer, String>() {
+			@Override
+			public String load(Integer key) {
+				loads.incrementAndGet();
+				return "v" + key;
+			}
+		};
+		for (int i = 0; i < 32; ++i)
+			assertEquals("v" + i, c.get(i, loader));
+		for (int i = 0; i < 32; ++i)
+			assertEquals("v" + i, c.get(i, loader));
+		assertEquals(32, loads.get());
+	}
+}
@@ -0,0 +1,92 @@
+package grape.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IntLruCacheTest {
+
+	@Test
+	public void testSmoke() {
+		IntLruCache<String> c = new IntLruCache<String>(2);
+		assertNull(c.put(1, "a"));
+		assertNull(c.put(2, "b"));
+		assertEquals("a", c.get(1));
+		assertEquals("b", c.put(3, "c")); // 淘汰最久未使用的 2
+		assertNull(c.get(2));
+		assertFalse(c.containsKey(2));
+		assertEquals("a", c.put(1, "A"));
+		assertEquals(2, c.size());
+		assertEquals("A", c.remove(1));
+		assertNull(c.remove(1));
+		assertEquals(1, c.size());
+		c.clear();
+		assertEquals(0, c.size());
+		assertNull(c.get(3));
+		assertEquals(2, c.getCapacity());
+	}
+
+	// 与 MRUCache 随机对比，覆盖索引删除时的元素移动
+	@Test
+	public void testAgainstMRUCache() {
+		Random r = new Random(3);
+		for (int cap : new int[] { 1, 7, 64, 1000 }) {
+			IntLruCache<Integer> c = new IntLruCache<Integer>(cap);
+			LongLruCache<Integer> l = new LongLruCache<Integer>(cap);
+			MRUCache<Integer, Integer> m = new MRUCache<Integer, Integer>(cap);
+			for (int i = 0; i < 200000; ++i) {
+				// 小范围的 key 制造冲突，偶尔用负数
+				int k = r.nextInt(cap * 3) * (r.nextInt(8) == 0 ? -65536 : 1);
+				int op = r.nextInt(10);
+				if (op < 5) {
+					assertEquals(m.get(k), c.get(k));
+					assertEquals(m.get(k), l.get(k + (1L << 40)));
+				} else if (op < 9) {
+					Integer v = Integer.valueOf(i);
+					assertEquals(m.put(k, v), c.put(k, v));
+					l.put(k + (1L << 40), v);
+				} else {
+					assertEquals(m.remove(k), c.remove(k));
+					l.remove(k + (1L << 40));
+				}
+				assertEquals(m.size(), c.size());
+				assertEquals(m.size(), l.size());
+			}
+		}
+	}
+
+	// 对比性能测试
+	@Test
+	public void testPerformance() {
+		final int cap = 100000, ops = 2000000;
+		Integer[] values = new Integer[1024];
+		for (int i = 0; i < values.length; ++i)
+			values[i] = Integer.valueOf(i);
+
+		IntLruCache<Integer> c = new IntLruCache<Integer>(cap);
+		MRUCache<Integer, Integer> m = new MRUCache<Integer, Integer>(cap);
+		for (int round = 0; round < 2; ++round) {
+			Random r = new Random(5);
+			long start = System.currentTimeMillis();
+			for (int i = 0; i < ops; ++i) {
+				int k = r.nextInt(cap * 2);
+				if (c.get(k) == null)
+					c.put(k, values[k & 1023]);
+			}
+			long t1 = System.currentTimeMillis() - start;
+
+			r = new Random(5);
+			start = System.currentTimeMillis();
+			for (int i = 0; i < ops; ++i) {
+				int k = r.nextInt(cap * 2);
+				if (m.get(k) == null)
+					m.put(k, values[k & 1023]);
+			}
+			long t2 = System.currentTimeMillis() - start;
+			if (round == 1)
+				System.out.println("IntLruCache: " + t1 + "ms, MRUCache<Integer,V>: " + t2 + "ms");
+		}
+	}
+}
@@ -0,0 +1,636 @@
+package grape.util;
+
+import static org.junit.Assert.*;
+import grape.dataio.Codec;
+import grape.dataio.Input;
+import grape.dataio.Output;
+import grape.dataio.util.ByteArrayInputOutput;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class MRUCacheTest {
+
+	@Test
+	public void testLru() {
+		MRUCache<Integer, String> c = new MRUCache<Integer, String>(2);
+		assertFalse(c.isAdmissionEnabled());
+		assertNull(c.put(1, "a"));
+		assertNull(c.put(2, "b"));
+		assertEquals("a", c.get(1));
+		assertEquals("b", c.put(3, "c"));
+		assertNull(c.get(2));
+		assertEquals("a", c.put(1, "A"));
+		assertEquals("A", c.remove(1));
+		assertEquals(1, c.size());
+		c.clear();
+		assertEquals(0, c.size());
+	}
+
+	@Test
+	public void testAdmission() {
+		MRUCache<Integer, String> c = new MRUCache<Integer, String>(10, true, 10);
+		assertTrue(c.isAdmissionEnabled());
+
+		// 未满时全部接受
+		for (int i = 0; i < 10; ++i)
+			assertNull(c.put(i, "v" + i));
+		assertEquals(10, c.size());
+
+		// 让 0..8 变热
+		for (int round = 0; round < 5; ++round) {
+			for (int i = 0; i < 9; ++i)
+				assertEquals("v" + i, c.get(i));
+		}
+
+		// 访问频率低的新数据无法挤掉热点数据，被挤出窗口后直接丢弃
+		for (int i = 100; i < 200; ++i)
+			c.put(i, "v" + i);
+		assertEquals(10, c.size());
+		for (int i = 0; i < 9; ++i)
+			assertEquals("v" + i, c.get(i));
+
+		assertEquals("v0", c.remove(0));
+		assertEquals(9, c.size());
+		c.clear();
+		assertEquals(0, c.size());
+		assertNull(c.get(1));
+
+		// 容量为 1 时只有窗口
+		MRUCache<Integer, String> one = new MRUCache<Integer, String>(1, true);
+		assertNull(one.put(1, "a"));
+		assertEquals("a", one.put(2, "b"));
+		assertEquals("b", one.get(2));
+	}
+
+	@Test
+	public void testSketch() {
+		FrequencySketch s = new FrequencySketch(64);
+		assertEquals(0, s.frequency("a"));
+		for (int i = 0; i < 5; ++i)
+			s.increment("a");
+		assertEquals(5, s.frequency("a"));
+		for (int i = 0; i < 20; ++i)
+			s.increment("a");
+		assertEquals(15, s.frequency("a")); // 计数上限
+
+		// 累计 10 倍容量的计数后老化减半
+		for (int i = 0; i < 640; ++i)
+			s.increment(Integer.valueOf(i));
+		assertTrue(s.frequency("a") <= 7);
+		s.clear();
+		assertEquals(0, s.frequency("a"));
+	}
+
+	@Test
+	public void testSetCapacity() {
+		MRUCache<Integer, Integer> c = new MRUCache<Integer, Integer>(100, true);
+		for (int i = 0; i < 100; ++i)
+			c.put(i, i);
+		c.setCapacity(10);
+		c.put(1000, 1000);
+		assertTrue(c.size() <= 10);
+	}
+
+	@Test
+	public void testWeight() {
+		Weigher<Integer, byte[]> w = new Weigher<Integer, byte[]>() {
+			@Override
+			public int weigh(Integer key, byte[] value) {
+				return value.length;
+			}
+		};
+		MRUCache<Integer, byte[]> c = new MRUCache<Integer, byte[]>(1000, w);
+		assertTrue(c.isWeighted());
+		assertFalse(new MRUCache<Integer, byte[]>(10).isWeighted());
+
+		for (int i = 0; i < 10; ++i)
+			assertNull(c.put(i, new byte[100]));
+		assertEquals(1000, c.getWeight());
+		assertEquals(10, c.size());
+
+		// 一个大数据挤掉多个最久未使用的小数据
+		c.get(0);
+		byte[] evicted = c.put(100, new byte[350]);
+		assertNotNull(evicted);
+		assertEquals(7, c.size());
+		assertEquals(950, c.getWeight());
+		assertNotNull(c.get(0));
+		assertNull(c.get(1));
+		assertNull(c.get(4));
+		assertNotNull(c.get(5));
+
+		// 更新时权重变化
+		c.put(100, new byte[50]);
+		assertEquals(650, c.getWeight());
+		c.remove(100);
+		assertEquals(600, c.getWeight());
+
+		// 超过上限的单个数据不会留在缓存中
+		byte[] huge = new byte[2000];
+		c.put(200, huge);
+		assertNull(c.get(200));
+		assertEquals(0, c.getWeight());
+
+		for (int i = 0; i < 10; ++i)
+			c.put(i, new byte[100]);
+		c.setMaxWeight(300);
+		assertEquals(300, c.getWeight());
+		assertEquals(3, c.size());
+		c.setCapacity(2);
+		c.put(20, new byte[10]);
+		assertEquals(2, c.size());
+		assertEquals(110, c.getWeight());
+		c.clear();
+		assertEquals(0, c.getWeight());
+	}
+
+	// 时间由测试控制的缓存
+	private static class ManualClockCache <K,V> extends MRUCache<K,V> {
+		long now = 1000;
+
+		ManualClockCache(int cap, boolean admission, long expireAfterWrite, long expireAfterAccess) {
+			super(cap, admission, expireAfterWrite, expireAfterAccess, TimeUnit.SECONDS);
+		}
+
+		@Override
+		long currentTimeNanos() {
+			return now;
+		}
+
+		void sleep(long seconds) {
+			now += TimeUnit.SECONDS.toNanos(seconds);
+		}
+	}
+
+	@Test
+	public void testExpireAfterWrite() {
+		for (int k = 0; k < 2; ++k) {
+			ManualClockCache<Integer, String> c = new ManualClockCache<Integer, String>(10, k == 1, 10, 0);
+			assertTrue(c.isExpiring());
+			c.put(1, "a");
+			c.sleep(5);
+			c.put(2, "b");
+			assertEquals("a", c.get(1)); // 读取不会推迟写入过期
+			c.sleep(6);
+			assertNull(c.get(1));
+			assertEquals("b", c.get(2));
+			c.put(2, "B"); // 重新写入
+			c.sleep(9);
+			assertEquals("B", c.get(2));
+			c.sleep(2);
+			assertNull(c.get(2));
+			assertEquals(0, c.size());
+		}
+		assertFalse(new MRUCache<Integer, String>(10).isExpiring());
+	}
+
+	@Test
+	public void testExpireAfterAccess() {
+		ManualClockCache<Integer, String> c = new ManualClockCache<Integer, String>(10, false, 0, 10);
+		c.put(1, "a");
+		c.put(2, "b");
+		for (int i = 0; i < 5; ++i) {
+			c.sleep(8);
+			assertEquals("a", c.get(1));
+		}
+		assertNull(c.get(2));
+		assertEquals(1, c.size());
+
+		// 同时按写入时间过期
+		ManualClockCache<Integer, String> d = new ManualClockCache<Integer, String>(10, false, 30, 10);
+		d.put(1, "a");
+		for (int i = 0; i < 3; ++i) {
+			d.sleep(8);
+			assertEquals("a", d.get(1));
+		}
+		d.sleep(8);
+		assertNull(d.get(1));
+	}
+
+	// 过期的数据被时间轮删除，不再占用容量
+	@Test
+	public void testExpiredReleaseCapacity() {
+		ManualClockCache<Integer, String> c = new ManualClockCache<Integer, String>(100, false, 60, 0);
+		for (int i = 0; i < 100; ++i)
+			c.put(i, "v" + i);
+		c.sleep(30);
+		c.put(1000, "x");
+		assertEquals(100, c.size());
+		c.sleep(40);
+		c.cleanUp();
+		assertEquals(1, c.size());
+		assertEquals("x", c.get(1000));
+
+		// 没有过期的数据按 LRU 淘汰
+		for (int i = 0; i < 99; ++i)
+			assertNull(c.put(i, "v" + i));
+		assertEquals("x", c.put(500, "y"));
+		assertEquals(100, c.size());
+		assertNull(c.get(1000));
+		c.clear();
+		c.sleep(3600);
+		assertEquals(0, c.size());
+	}
+
+	// 并发未命中只加载一次
+	@Test
+	public void testLoaderSingleFlight() throws Exception {
+		final MRUCache<Integer, String> c = new MRUCache<Integer, String>(10);
+		final AtomicInteger loads = new AtomicInteger(0);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CacheLoader<Integer, String> loader = new CacheLoader<Integer, String>() {
+			@Override
+			public String load(Integer key) throws Exception {
+				loads.incrementAndGet();
+				release.await();
+				return "v" + key;
+			}
+		};
+
+		final int threads = 16;
+		final AtomicInteger ok = new AtomicInteger(0);
+		Thread[] ts = new Thread[threads];
+		for (int i = 0; i < threads; ++i) {
+			ts[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						if ("v1".equals(c.get(1, loader)))
+							ok.incrementAndGet();
+					} catch (ExecutionException e) {
+						e.printStackTrace();
+					}
+				}
+			};
+			ts[i].start();
+		}
+		Thread.sleep(100);
+		assertTrue(c.get(2) == null); // 加载时不持有缓存的锁
+		release.countDown();
+		for (Thread t : ts)
+			t.join();
+		assertEquals(threads, ok.get());
+		assertEquals(1, loads.get());
+		assertEquals("v1", c.get(1));
+		assertEquals("v1", c.get(1, loader));
+		assertEquals(1, loads.get());
+	}
+
+	// 加载失败时异常传给调用者，并且不会被缓存
+	@Test
+	public void testLoaderFailure() throws Exception {
+		MRUCache<Integer, String> c = new MRUCache<Integer, String>(10);
+		final AtomicInteger loads = new AtomicInteger(0);
+		CacheLoader<Integer, String> loader = new CacheLoader<Integer, String>() {
+			@Override
+			public String load(Integer key) throws Exception {
+				if (loads.incrementAndGet() == 1)
+					throw new java.io.IOException("backend down");
+				return "v" + key;
+			}
+		};
+		try {
+			c.get(1, loader);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof java.io.IOException);
+		}
+		assertNull(c.get(1));
+		assertEquals("v1", c.get(1, loader));
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void testLoaderAsync() throws Exception {
+		MRUCache<Integer, String> c = new MRUCache<Integer, String>(10);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger loads = new AtomicInteger(0);
+		CacheLoader<Integer, String> loader = new CacheLoader<Integer, String>() {
+			@Override
+			public String load(Integer key) throws Exception {
+				loads.incrementAndGet();
+				release.await();
+				return "v" + key;
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<String> f1 = c.getAsync(1, loader, executor);
+			Future<String> f2 = c.getAsync(1, loader, executor);
+			assertSame(f1, f2);
+			assertFalse(f1.isDone());
+			release.countDown();
+			assertEquals("v1", f1.get());
+			Future<String> f3 = c.getAsync(1, loader, executor);
+			assertTrue(f3.isDone());
+			assertEquals("v1", f3.get());
+			assertEquals(1, loads.get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	// 加载期间被 put()/remove() 的 key，加载结果不会覆盖缓存
+	@Test
+	public void testLoaderRacingWrite() throws Exception {
+		final MRUCache<Integer, String> c = new MRUCache<Integer, String>(10);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CacheLoader<Integer, String> loader = new CacheLoader<Integer, String>() {
+			@Override
+			public String load(Integer key) throws Exception {
+				started.countDown();
+				release.await();
+				return "v" + key;
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<String> f = c.getAsync(1, loader, executor);
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			c.put(1, "x");
+			release.countDown();
+			assertEquals("v1", f.get()); // 等待者仍然得到加载的结果
+			assertEquals("x", c.get(1));
+
+			final CountDownLatch started2 = new CountDownLatch(1);
+			final CountDownLatch release2 = new CountDownLatch(1);
+			CacheLoader<Integer, String> loader2 = new CacheLoader<Integer, String>() {
+				@Override
+				public String load(Integer key) throws Exception {
+					started2.countDown();
+					release2.await();
+					return "w" + key;
+				}
+			};
+			f = c.getAsync(2, loader2, executor);
+			assertTrue(started2.await(5, TimeUnit.SECONDS));
+			assertNull(c.remove(2));
+			release2.countDown();
+			assertEquals("w2", f.get());
+			assertNull(c.get(2));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testLoadedValueRejected() throws Exception {
+		MRUCache<Integer, String> c = new MRUCache<Integer, String>(100, new Weigher<Integer, String>() {
+			@Override
+			public int weigh(Integer key, String value) {
+				return value.equals("bad") ? -1 : value.length();
+			}
+		});
+		CacheLoader<Integer, String> bad = new CacheLoader<Integer, String>() {
+			@Override
+			public String load(Integer key) {
+				return "bad";
+			}
+		};
+		try {
+			c.get(1, bad);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+		assertEquals(0, c.size());
+		assertEquals(0, c.getWeight());
+
+		// 失败的加载已经注销，后续的加载不会被挂起
+		assertEquals("good", c.get(1, new CacheLoader<Integer, String>() {
+			@Override
+			public String load(Integer key) {
+				return "good";
+			}
+		}));
+		assertEquals(4, c.getWeight());
+	}
+
+	// 加载结果挤出的数据交给 loader，与 put() 的返回值相同
+	@Test
+	public void testLoaderEvicted() throws Exception {
+		MRUCache<Integer, String> c = new MRUCache<Integer, String>(1);
+		c.put(0, "a");
+		final StringBuilder evicted = new StringBuilder();
+		CacheLoader<Integer, String> loader = new CacheLoader<Integer, String>() {
+			@Override
+			public String load(Integer key) throws Exception {
+				return "v" + key;
+			}
+
+			@Override
+			public void evicted(String value) {
+				evicted.append(value);
+			}
+		};
+		assertEquals("v1", c.get(1, loader));
+		assertEquals("a", evicted.toString());
+		assertNull(c.get(0));
+	}
+
+	// 在 loader 中递归地加载同一个 key 会抛出异常，而不是死锁
+	@Test
+	public void testLoaderRecursive() throws Exception {
+		final MRUCache<Integer, String> c = new MRUCache<Integer, String>(10);
+		CacheLoader<Integer, String> loader = new CacheLoader<Integer, String>() {
+			@Override
+			public String load(Integer key) throws Exception {
+				return c.get(key, this);
+			}
+		};
+		try {
+			c.get(1, loader);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		assertNull(c.get(1));
+	}
+
+	private static final Codec<Integer> INT_CODEC = new Codec<Integer>() {
+		@Override
+		public void write(Output out, Integer value) {
+			out.writeInt(value);
+		}
+
+		@Override
+		public Integer read(Input in) {
+			return in.readInt();
+		}
+	};
+
+	private static final Codec<String> STRING_CODEC = new Codec<String>() {
+		@Override
+		public void write(Output out, String value) {
+			byte[] b = value.getBytes();
+			out.writeInt(b.length);
+			out.write(b);
+		}
+
+		@Override
+		public String read(Input in) {
+			byte[] b = new byte[in.readInt()];
+			in.readFully(b);
+			return new String(b);
+		}
+	};
+
+	@Test
+	public void testSnapshot() {
+		MRUCache<Integer, String> c = new MRUCache<Integer, String>(5);
+		for (int i = 0; i < 5; ++i)
+			c.put(i, "v" + i);
+		c.get(0); // 最近使用顺序：0 4 3 2 1
+
+		ByteArrayInputOutput buf = new ByteArrayInputOutput();
+		assertEquals(5, c.writeTo(buf, INT_CODEC, STRING_CODEC));
+
+		// 恢复到一个容量较小的缓存中：只恢复最热的数据，顺序不变
+		buf.seek(0);
+		MRUCache<Integer, String> d = new MRUCache<Integer, String>(3);
+		assertEquals(3, d.readFrom(buf, INT_CODEC, STRING_CODEC));
+		assertEquals(3, d.size());
+		assertEquals("v0", d.get(0));
+		assertNull(d.get(1));
+		// LRU 的是 3
+		assertEquals("v3", d.put(9, "v9"));
+
+		// 已经存在的 key 保留现有的值
+		buf.seek(0);
+		MRUCache<Integer, String> e = new MRUCache<Integer, String>(10);
+		e.put(4, "new");
+		assertEquals(4, e.readFrom(buf, INT_CODEC, STRING_CODEC));
+		assertEquals("new", e.get(4));
+		assertEquals(5, e.size());
+		// 读入的数据在已有数据之后，按原来的顺序淘汰
+		for (int i = 0; i < 5; ++i)
+			e.put(100 + i, "x");
+		assertEquals(10, e.size());
+		assertEquals("v1", e.put(200, "y"));
+	}
+
+	@Test
+	public void testSnapshotAdmission() throws Exception {
+		MRUCache<Integer, String> c = new MRUCache<Integer, String>(100, true);
+		for (int i = 0; i < 100; ++i)
+			c.put(i, "v" + i);
+		for (int round = 0; round < 3; ++round) {
+			for (int i = 0; i < 50; ++i)
+				c.get(i);
+		}
+		ByteArrayInputOutput buf = new ByteArrayInputOutput();
+		int n = c.writeTo(buf, INT_CODEC, STRING_CODEC);
+		assertEquals(100, n);
+
+		buf.seek(0);
+		MRUCache<Integer, String> d = new MRUCache<Integer, String>(100, true);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			assertEquals(Integer.valueOf(100), d.readFromAsync(buf, INT_CODEC, STRING_CODEC, executor).get());
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(100, d.size());
+		for (int i = 0; i < 100; ++i)
+			assertEquals("v" + i, d.get(i));
+
+		// 格式错误
+		ByteArrayInputOutput bad = new ByteArrayInputOutput();
+		bad.writeInt(0);
+		bad.seek(0);
+		try {
+			d.readFrom(bad, INT_CODEC, STRING_CODEC);
+			fail();
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testSoftTier() {
+		MRUCache<Integer, String> c = new MRUCache<Integer, String>(2, 2);
+		assertEquals(0, new MRUCache<Integer, String>(2).softSize());
+
+		assertNull(c.put(1, "a"));
+		assertNull(c.put(2, "b"));
+		assertNull(c.put(3, "c")); // 1 移入软引用层，没有离开缓存
+		assertEquals(2, c.size());
+		assertEquals(1, c.softSize());
+		assertNull(c.put(4, "d")); // 2 移入软引用层
+		assertEquals(2, c.softSize());
+		assertEquals("a", c.put(5, "e")); // 软引用层满了，丢弃最早移入的 1
+
+		// 命中软引用层时提升回强引用层
+		assertEquals("b", c.get(2));
+		assertEquals(1, c.getSoftPromotions());
+		assertEquals(2, c.size());
+		assertEquals(2, c.softSize()); // 3, 4
+		assertNull(c.get(1));
+
+		// 删除、替换软引用层中的数据
+		assertEquals("c", c.remove(3));
+		assertEquals(1, c.softSize());
+		c.put(4, "D");
+		assertEquals("D", c.get(4));
+
+		c.clear();
+		assertEquals(0, c.size());
+		assertEquals(0, c.softSize());
+		assertEquals(0, c.getSoftCleared());
+	}
+
+	@Test
+	public void testSoftTierStats() {
+		MRUCache<Integer, String> c = new MRUCache<Integer, String>(1, 1);
+		c.recordStats();
+		c.put(1, "a");
+		c.put(2, "b"); // 1 移入软引用层，不算淘汰
+		assertEquals(0, c.getStats().getEvictions());
+		assertEquals("a", c.put(3, "c")); // 软引用层丢弃 1
+		assertEquals(1, c.getStats().getEvictions());
+		assertEquals("b", c.get(2)); // 提升回强引用层，3 移入软引用层
+		assertEquals(1, c.getStats().getEvictions());
+	}
+
+	// 对比性能测试：热点数据 + 周期性全表扫描下的命中率
+	@Test
+	public void testScanResistance() {
+		for (int k = 0; k < 2; ++k) {
+			boolean admission = (k == 1);
+			MRUCache<Integer, Integer> c = new MRUCache<Integer, Integer>(1000, admission);
+			Random r = new Random(1);
+			int hits = 0, gets = 0;
+			for (int round = 0; round < 20; ++round) {
+				// 热点访问：1000 个热点中的随机访问
+				for (int i = 0; i < 20000; ++i) {
+					int key = r.nextInt(1000);
+					++gets;
+					if (c.get(key) != null)
+						++hits;
+					else
+						c.put(key, key);
+				}
+				// 全表扫描
+				for (int i = 0; i < 5000; ++i) {
+					int key = 100000 + i;
+					if (c.get(key) == null)
+						c.put(key, key);
+				}
+			}
+			double ratio = (double) hits / gets;
+			System.out.println("MRUCache " + (admission ? "W-TinyLFU" : "LRU") + " hot hit ratio: " + ratio);
+			if (admission)
+				assertTrue(ratio > 0.9);
+		}
+	}
+}
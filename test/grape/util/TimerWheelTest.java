@@ -0,0 +1,82 @@
+package grape.util;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TimerWheelTest {
+
+	private static final long SECOND = 1000000000L;
+
+	private static int count(TimerWheel.Timer t) {
+		int ret = 0;
+		for (; t != null; t = t.timerNext)
+			++ret;
+		return ret;
+	}
+
+	@Test
+	public void testSmoke() {
+		TimerWheel w = new TimerWheel();
+		long base = 123456789L;
+		assertNull(w.advance(base));
+
+		TimerWheel.Timer a = new TimerWheel.Timer(), b = new TimerWheel.Timer(), c = new TimerWheel.Timer();
+		a.time = base + 2 * SECOND;
+		b.time = base + 10 * 60 * SECOND;
+		c.time = base + 3 * SECOND;
+		w.schedule(a);
+		w.schedule(b);
+		w.schedule(c);
+		w.deschedule(c);
+		assertNull(c.timerNext);
+
+		assertNull(w.advance(base + SECOND));
+		TimerWheel.Timer e = w.advance(base + 4 * SECOND);
+		assertSame(a, e);
+		assertNull(e.timerNext);
+
+		assertNull(w.advance(base + 9 * 60 * SECOND));
+		assertSame(b, w.advance(base + 11 * 60 * SECOND));
+
+		w.schedule(c);
+		w.clear();
+		assertNull(c.timerNext);
+		assertNull(w.advance(base + 3600 * SECOND));
+	}
+
+	// 随机的到期时间，每个定时器都在到期后、且不晚于一个格子之后被取出
+	@Test
+	public void testRandom() {
+		TimerWheel w = new TimerWheel();
+		Random r = new Random(7);
+		long now = -5 * SECOND; // nanoTime 可能为负数
+		w.advance(now);
+
+		Set<TimerWheel.Timer> pending = new HashSet<TimerWheel.Timer>();
+		for (int i = 0; i < 2000; ++i) {
+			TimerWheel.Timer t = new TimerWheel.Timer();
+			t.time = now + 1 + (long) (r.nextDouble() * 3 * 24 * 3600 * SECOND);
+			w.schedule(t);
+			pending.add(t);
+		}
+
+		int expired = 0;
+		while (!pending.isEmpty()) {
+			now += (long) (r.nextDouble() * 600 * SECOND);
+			for (TimerWheel.Timer t = w.advance(now); t != null; t = t.timerNext) {
+				assertTrue(t.time <= now);
+				assertTrue(pending.remove(t));
+				++expired;
+			}
+			for (TimerWheel.Timer t : pending)
+				assertTrue(t.time > now - (1L << 30));
+		}
+		assertEquals(2000, expired);
+		assertEquals(0, count(w.advance(now + 30L * 24 * 3600 * SECOND)));
+	}
+}
@@ -0,0 +1,125 @@
+package grape.util.objpool;
+
+import static org.junit.Assert.*;
+
+import grape.dataio.util.ByteArrayInputOutput;
+import grape.dataio.util.FixedByteArrayOutput;
+import grape.dataio.util.LittleEndian;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class ByteBufferPoolTest {
+
+	@Test
+	public void testHeap() {
+		ByteBufferPool pool = new ByteBufferPool(1024, 4);
+		assertEquals(16, pool.allocate(0).length);
+		assertEquals(16, pool.allocate(16).length);
+		assertEquals(32, pool.allocate(17).length);
+		assertEquals(2000, pool.allocate(2000).length); // 超过最大级别，直接分配
+
+		byte[] b = pool.allocate(100);
+		assertEquals(128, b.length);
+		pool.release(b);
+		assertSame(b, pool.allocate(65));
+
+		// 大小不是某个级别的数组不会入池
+		pool.release(new byte[100]);
+		assertEquals(128, pool.allocate(100).length);
+
+		pool.release(b);
+		pool.clear();
+		assertNotSame(b, pool.allocate(128));
+	}
+
+	@Test
+	public void testDirect() {
+		ByteBufferPool pool = new ByteBufferPool();
+		ByteBuffer b = pool.allocateDirect(100);
+		assertTrue(b.isDirect());
+		assertEquals(128, b.capacity());
+		assertEquals(0, b.position());
+		assertEquals(100, b.limit());
+
+		b.putInt(7);
+		pool.release(b);
+		ByteBuffer c = pool.allocateDirect(10);
+		assertEquals(16, c.capacity()); // 不同级别
+		ByteBuffer d = pool.allocateDirect(128);
+		assertSame(b, d);
+		assertEquals(0, d.position());
+		assertEquals(128, d.limit());
+
+		pool.release(ByteBuffer.allocate(128)); // 堆内缓冲区不入池
+		assertTrue(pool.allocateDirect(128).isDirect());
+	}
+
+	@Test
+	public void testStripesPerClass() {
+		// 装载中的 magazine 不计入 maxPooled，大的级别只有很少的条带
+		ByteBufferPool pool = new ByteBufferPool(1 << 20, 16);
+		assertEquals(1, pool.stripes(1 << 20));
+		assertEquals(1, pool.stripes(1 << 18));
+		assertTrue(pool.stripes(1 << 16) <= 4);
+		assertTrue(pool.stripes(16) >= 1);
+		for (int s = 4; s <= 20; ++s)
+			assertTrue((long) pool.stripes(1 << s) * 4 * (1 << s) <= Math.max(1 << 20, 4 << s));
+	}
+
+	@Test
+	public void testDataIO() {
+		ByteBufferPool pool = new ByteBufferPool();
+		ByteArrayInputOutput io = new ByteArrayInputOutput(pool);
+		for (int i = 0; i < 100; ++i)
+			io.writeInt(i);
+		assertEquals(400, io.tell());
+		assertEquals(512, io.buffer().length);
+		io.seek(0);
+		byte[] buf = io.buffer();
+		for (int i = 0; i < 100; ++i)
+			assertEquals(i, LittleEndian.getInt(buf, i * 4));
+		io.release();
+
+		// 扩容时归还的缓冲区被再次使用
+		byte[] reused = pool.allocate(256);
+		assertEquals(256, reused.length);
+		pool.release(reused);
+
+		FixedByteArrayOutput out = new FixedByteArrayOutput(pool, 8);
+		assertSame(reused, pool.allocate(256));
+		out.writeLong(42);
+		assertEquals(42, LittleEndian.getLong(out.buffer(), 0));
+		byte[] b = out.buffer();
+		out.release();
+		assertSame(b, pool.allocate(8));
+	}
+
+	// 对比性能测试
+	@Test
+	public void testThroughput() {
+		int count = 100000;
+		ByteBufferPool pool = new ByteBufferPool();
+		for (int round = 0; round < 2; ++round) {
+			long start = System.currentTimeMillis();
+			for (int i = 0; i < count; ++i) {
+				ByteArrayInputOutput io = new ByteArrayInputOutput();
+				for (int j = 0; j < 64; ++j)
+					io.writeLong(j);
+			}
+			long time1 = System.currentTimeMillis();
+			for (int i = 0; i < count; ++i) {
+				ByteArrayInputOutput io = new ByteArrayInputOutput(pool);
+				for (int j = 0; j < 64; ++j)
+					io.writeLong(j);
+				io.release();
+			}
+			long end = System.currentTimeMillis();
+			if (round == 1) {
+				System.out.println("ByteArrayInputOutput new: " + (time1 - start));
+				System.out.println("ByteArrayInputOutput pooled: " + (end - time1));
+			}
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package grape.util.objpool;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class MagazineCacheTest {
+
+	@Test
+	public void testSmoke() {
+		MagazineCache<Object> c = new MagazineCache<Object>(2, 4);
+		assertNull(c.get());
+
+		// 同一线程总是映射到同一个条带；装满当前 magazine 后换入 depot
+		Object[] objs = new Object[6];
+		for (int i = 0; i < objs.length; ++i) {
+			objs[i] = new Object();
+			assertTrue(c.put(objs[i]));
+		}
+		// 装载中的 magazine 和 depot 中的 2 个 magazine 都满了
+		assertFalse(c.put(new Object()));
+
+		// 后进先出
+		for (int i = objs.length - 1; i >= 0; --i)
+			assertSame(objs[i], c.get());
+		assertNull(c.get());
+
+		c.put(new Object());
+		c.clear();
+		assertNull(c.get());
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		final int threads = 8, count = 20000;
+		final AtomicInteger created = new AtomicInteger(0);
+		final ObjectPool<Object> pool = new ObjectPool<Object>(new PoolableObjectFactory<Object>() {
+			@Override
+			public Object newObject() {
+				created.incrementAndGet();
+				return new Object();
+			}
+
+			@Override
+			public void passivateObject(Object obj) {
+			}
+
+			@Override
+			public int magazineSize() {
+				return 4;
+			}
+		});
+
+		// 同一个对象不能同时借给两个线程
+		final Set<Object> borrowed = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		final AtomicInteger errors = new AtomicInteger(0);
+		Thread[] ts = new Thread[threads];
+		for (int i = 0; i < threads; ++i) {
+			ts[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < count; ++j) {
+						Object o = pool.borrowObject();
+						synchronized (borrowed) {
+							if (!borrowed.add(o))
+								errors.incrementAndGet();
+						}
+						synchronized (borrowed) {
+							borrowed.remove(o);
+						}
+						o = pool.returnObject(o);
+					}
+				}
+			};
+			ts[i].start();
+		}
+		for (Thread t : ts)
+			t.join();
+		assertEquals(0, errors.get());
+		assertTrue(created.get() < threads * count);
+	}
+
+	// 对比性能测试
+	@Test
+	public void testThroughput() throws InterruptedException {
+		final int threads = 4, count = 500000;
+		for (int k = 0; k < 2; ++k) {
+			final int magazineSize = (k == 0 ? 0 : 16);
+			final ObjectPool<Object> pool = new ObjectPool<Object>(new PoolableObjectFactory<Object>() {
+				@Override
+				public Object newObject() {
+					return new Object();
+				}
+
+				@Override
+				public void passivateObject(Object obj) {
+				}
+
+				@Override
+				public int maxPooled() {
+					return 64;
+				}
+
+				@Override
+				public int magazineSize() {
+					return magazineSize;
+				}
+			});
+			Thread[] ts = new Thread[threads];
+			for (int i = 0; i < threads; ++i) {
+				ts[i] = new Thread() {
+					@Override
+					public void run() {
+						for (int j = 0; j < count; ++j) {
+							Object o = pool.borrowObject();
+							o = pool.returnObject(o);
+						}
+					}
+				};
+			}
+			long start = System.currentTimeMillis();
+			for (Thread t : ts)
+				t.start();
+			for (Thread t : ts)
+				t.join();
+			System.out.println("ObjectPool magazineSize=" + magazineSize + ": " +
+					(System.currentTimeMillis() - start));
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package grape.util.objpool;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ObjectPoolTest {
+
+	static class Scratch {
+		int value;
+	}
+
+	static class ScratchFactory extends PoolableObjectFactory<Scratch> {
+		final AtomicInteger created = new AtomicInteger(0);
+		final AtomicInteger passivated = new AtomicInteger(0);
+		final AtomicInteger bulkPassivations = new AtomicInteger(0);
+
+		@Override
+		public Scratch newObject() {
+			created.incrementAndGet();
+			return new Scratch();
+		}
+
+		@Override
+		public void passivateObject(Scratch obj) {
+			obj.value = 0;
+			passivated.incrementAndGet();
+		}
+
+		@Override
+		public void passivateObjects(Scratch[] objs, int n) {
+			bulkPassivations.incrementAndGet();
+			super.passivateObjects(objs, n);
+		}
+
+		@Override
+		public int maxPooled() {
+			return 8;
+		}
+
+		@Override
+		public boolean recordStats() {
+			return true;
+		}
+	}
+
+	@Test
+	public void testBulk() {
+		ScratchFactory factory = new ScratchFactory();
+		ObjectPool<Scratch> pool = new ObjectPool<Scratch>(factory);
+
+		Scratch[] batch = new Scratch[12];
+		pool.borrowObjects(batch, 12);
+		assertEquals(12, factory.created.get());
+		for (int i = 0; i < 12; ++i) {
+			assertNotNull(batch[i]);
+			batch[i].value = i + 1;
+		}
+
+		// 池只能容纳 8 个，其余丢弃；null 元素被忽略
+		batch[3] = null;
+		pool.returnObjects(batch, 12);
+		assertEquals(1, factory.bulkPassivations.get());
+		assertEquals(8, factory.passivated.get());
+		for (int i = 0; i < 12; ++i)
+			assertNull(batch[i]);
+
+		PoolStats.Snapshot s = pool.getStats();
+		assertEquals(8, s.getIdle());
+		assertEquals(3, s.getDiscards());
+
+		pool.borrowObjects(batch, 10);
+		for (int i = 0; i < 10; ++i)
+			assertEquals(0, batch[i].value);
+		assertEquals(14, factory.created.get());
+		s = pool.getStats();
+		assertEquals(22, s.getBorrows());
+		assertEquals(8, s.getHits());
+		assertEquals(0, s.getIdle());
+	}
+
+	@Test
+	public void testBulkRing() {
+		ScratchFactory factory = new ScratchFactory();
+		ObjectRing<Scratch> ring = new ObjectRing<Scratch>(factory);
+
+		Scratch[] batch = new Scratch[10];
+		ring.borrowObjects(batch, 10);
+		ring.returnObjects(batch, 10);
+		assertEquals(8, ring.getStats().getIdle());
+		assertEquals(2, ring.getStats().getDiscards());
+
+		ring.borrowObjects(batch, 5);
+		assertEquals(10, factory.created.get());
+		assertEquals(3, ring.getStats().getIdle());
+	}
+
+	// 对比性能测试
+	@Test
+	public void testBulkThroughput() {
+		final int n = 256, rounds = 20000;
+		ObjectPool<Scratch> pool = new ObjectPool<Scratch>(new PoolableObjectFactory<Scratch>() {
+			@Override
+			public Scratch newObject() {
+				return new Scratch();
+			}
+
+			@Override
+			public void passivateObject(Scratch obj) {
+				obj.value = 0;
+			}
+
+			@Override
+			public int maxPooled() {
+				return n;
+			}
+		});
+		Scratch[] batch = new Scratch[n];
+		for (int k = 0; k < 2; ++k) {
+			long start = System.currentTimeMillis();
+			for (int r = 0; r < rounds; ++r) {
+				for (int i = 0; i < n; ++i)
+					batch[i] = pool.borrowObject();
+				for (int i = 0; i < n; ++i)
+					batch[i] = pool.returnObject(batch[i]);
+			}
+			long time1 = System.currentTimeMillis();
+			for (int r = 0; r < rounds; ++r) {
+				pool.borrowObjects(batch, n);
+				pool.returnObjects(batch, n);
+			}
+			long end = System.currentTimeMillis();
+			if (k == 1) {
+				System.out.println("ObjectPool single x" + n + ": " + (time1 - start));
+				System.out.println("ObjectPool bulk x" + n + ": " + (end - time1));
+			}
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package grape.util.objpool;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class PoolStatsTest {
+
+	static PoolableObjectFactory<Object> factory(final int maxPooled, final long idleTimeoutMillis) {
+		return new PoolableObjectFactory<Object>() {
+			@Override
+			public Object newObject() {
+				return new Object();
+			}
+
+			@Override
+			public void passivateObject(Object obj) {
+			}
+
+			@Override
+			public int maxPooled() {
+				return maxPooled;
+			}
+
+			@Override
+			public boolean recordStats() {
+				return true;
+			}
+
+			@Override
+			public long idleTimeoutMillis() {
+				return idleTimeoutMillis;
+			}
+		};
+	}
+
+	@Test
+	public void testStats() {
+		ObjectPool<Object> pool = new ObjectPool<Object>(factory(2, 0));
+		Object a = pool.borrowObject(), b = pool.borrowObject(), c = pool.borrowObject();
+		pool.returnObject(a);
+		pool.returnObject(b);
+		pool.returnObject(c); // 池满，丢弃
+		assertSame(b, pool.borrowObject());
+
+		PoolStats.Snapshot s = pool.getStats();
+		assertEquals(4, s.getBorrows());
+		assertEquals(1, s.getHits());
+		assertEquals(3, s.getCreations());
+		assertEquals(1, s.getDiscards());
+		assertEquals(0, s.getEvictions());
+		assertEquals(1, s.getIdle());
+		assertEquals(2, s.getPeakIdle());
+		assertEquals(2, s.getIdleCap());
+		assertEquals(0.25, s.getHitRatio(), 1e-9);
+
+		ObjectRing<Object> ring = new ObjectRing<Object>(factory(2, 0));
+		ring.returnObject(ring.borrowObject());
+		ring.borrowObject();
+		s = ring.getStats();
+		assertEquals(2, s.getBorrows());
+		assertEquals(1, s.getHits());
+		assertEquals(1, s.getPeakIdle());
+
+		assertNull(new ObjectPool<Object>(new PoolableObjectFactory<Object>() {
+			@Override
+			public Object newObject() {
+				return new Object();
+			}
+
+			@Override
+			public void passivateObject(Object obj) {
+			}
+		}).getStats());
+	}
+
+	@Test
+	public void testIdleEviction() throws InterruptedException {
+		ObjectPool<Object> pool = new ObjectPool<Object>(factory(8, 20));
+		Object[] objs = new Object[8];
+		for (int i = 0; i < objs.length; ++i)
+			objs[i] = pool.borrowObject();
+		for (int i = 0; i < objs.length; ++i)
+			pool.returnObject(objs[i]);
+		assertEquals(8, pool.getStats().getIdle());
+
+		// 第一个周期只建立低水位，之后一直空闲的对象会在下一个周期结束时被淘汰
+		for (int round = 0; round < 3; ++round) {
+			Thread.sleep(30);
+			pool.returnObject(pool.borrowObject());
+		}
+		PoolStats.Snapshot s = pool.getStats();
+		assertTrue(s.toString(), s.getEvictions() > 0);
+		assertTrue(s.toString(), s.getIdle() < 8);
+		assertTrue(s.toString(), s.getIdleCap() < 8);
+	}
+
+	@Test
+	public void testIdleCapGrows() throws InterruptedException {
+		ObjectPool<Object> pool = new ObjectPool<Object>(factory(16, 20));
+
+		// 先让上限因为没有借出而缩小
+		Thread.sleep(30);
+		pool.returnObject(pool.borrowObject());
+		Thread.sleep(30);
+		pool.returnObject(new Object());
+		int shrunk = pool.getStats().getIdleCap();
+		assertTrue(shrunk < 16);
+
+		// 每个周期同时借出比上限更多的对象，既有新建又有丢弃，上限增大
+		for (int round = 0; round < 4; ++round) {
+			Object[] objs = new Object[16];
+			for (int i = 0; i < objs.length; ++i)
+				objs[i] = pool.borrowObject();
+			for (int i = 0; i < objs.length; ++i)
+				pool.returnObject(objs[i]);
+			Thread.sleep(30);
+		}
+		pool.returnObject(pool.borrowObject());
+		assertTrue(pool.getStats().toString(), pool.getStats().getIdleCap() > shrunk);
+	}
+}